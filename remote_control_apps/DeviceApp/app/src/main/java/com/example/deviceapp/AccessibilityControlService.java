@@ -2,13 +2,22 @@ package com.example.deviceapp;
 
 import android.accessibilityservice.AccessibilityService;
 import android.accessibilityservice.GestureDescription;
+import android.content.Intent;
 import android.graphics.Path;
+import android.os.Bundle;
 import android.util.Log;
 import android.view.accessibility.AccessibilityEvent;
+import android.view.accessibility.AccessibilityNodeInfo;
 
 public class AccessibilityControlService extends AccessibilityService {
     private static final String TAG = "AccessibilityControl";
     
+    private static volatile AccessibilityControlService instance;
+    
+    public static AccessibilityControlService getInstance() {
+        return instance;
+    }
+    
     @Override
     public void onAccessibilityEvent(AccessibilityEvent event) {
         // Handle accessibility events if needed
@@ -23,6 +32,16 @@ public class AccessibilityControlService extends AccessibilityService {
     protected void onServiceConnected() {
         super.onServiceConnected();
         Log.d(TAG, "Accessibility service connected");
+        instance = this;
+        InputInjectors.onAccessibilityServiceConnected();
+    }
+    
+    @Override
+    public boolean onUnbind(Intent intent) {
+        Log.d(TAG, "Accessibility service unbound");
+        instance = null;
+        InputInjectors.onAccessibilityServiceDisconnected();
+        return super.onUnbind(intent);
     }
     
     public void performClick(float x, float y) {
@@ -79,5 +98,54 @@ public class AccessibilityControlService extends AccessibilityService {
             Log.d(TAG, "Swipe dispatched: " + result);
         }
     }
+    
+    // Returns whether the gesture was accepted; the callback runs on the main thread
+    public boolean performGesture(GestureDescription gesture, GestureResultCallback callback) {
+        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.N) {
+            return dispatchGesture(gesture, callback, null);
+        }
+        return false;
+    }
+    
+    public void performGesture(GestureDescription gesture) {
+        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.N) {
+            boolean result = dispatchGesture(gesture, new GestureResultCallback() {
+                @Override
+                public void onCancelled(GestureDescription gestureDescription) {
+                    Log.d(TAG, "Gesture cancelled");
+                }
+            }, null);
+            Log.d(TAG, "Gesture dispatched: " + result);
+        }
+    }
+    
+    /**
+     * Edit the focused input field in one ACTION_SET_TEXT: drop deleteCount characters from
+     * its end, then append insert. Returns false if no editable field has input focus.
+     */
+    public boolean editFocusedText(CharSequence insert, int deleteCount) {
+        AccessibilityNodeInfo node = findFocus(AccessibilityNodeInfo.FOCUS_INPUT);
+        if (node == null) {
+            return false;
+        }
+        try {
+            if (!node.isEditable()) {
+                return false;
+            }
+            CharSequence current = node.getText();
+            if (current == null || (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O
+                    && node.isShowingHintText())) {
+                current = "";
+            }
+            StringBuilder text = new StringBuilder(current);
+            text.setLength(Math.max(0, text.length() - deleteCount));
+            text.append(insert);
+            
+            Bundle arguments = new Bundle();
+            arguments.putCharSequence(AccessibilityNodeInfo.ACTION_ARGUMENT_SET_TEXT_CHARSEQUENCE, text);
+            return node.performAction(AccessibilityNodeInfo.ACTION_SET_TEXT, arguments);
+        } finally {
+            node.recycle();
+        }
+    }
 }
-
@@ -0,0 +1,436 @@
+package com.example.deviceapp;
+
+import android.accessibilityservice.AccessibilityService;
+import android.accessibilityservice.GestureDescription;
+import android.graphics.Path;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.KeyEvent;
+import android.view.MotionEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Backend that dispatches gestures through AccessibilityControlService.
+ * Needs no special signature, only the user enabling the accessibility service.
+ *
+ * On API 26+ streamed touches are injected live: the down is dispatched at once as a stroke
+ * that will continue, and each time a segment completes the movement gathered meanwhile is
+ * sent as the next segment with StrokeDescription.continueStroke. Older releases collect the
+ * whole gesture and replay it when the last pointer lifts.
+ */
+public class AccessibilityInputInjector implements InputInjector {
+    private static final String TAG = "AccessibilityInjector";
+
+    // Streamed touches are collected into one stroke per pointer and dispatched as a single
+    // multi-stroke gesture when the last pointer lifts
+    private static class Stroke {
+        final int pointerId;
+        final Path path = new Path();
+        final long startOffsetMs;
+        long endOffsetMs = -1;
+
+        Stroke(int pointerId, float x, float y, long startOffsetMs) {
+            this.pointerId = pointerId;
+            this.startOffsetMs = startOffsetMs;
+            path.moveTo(x, y);
+        }
+    }
+
+    private final List<Stroke> strokes = new ArrayList<>();
+
+    // Live stroke of one pointer for the streaming (continueStroke) path
+    private static class LiveStroke {
+        final int pointerId;
+        // Last dispatched segment, null until the stroke is first sent
+        GestureDescription.StrokeDescription segment;
+        // Movement since the last segment, starting where that segment ended
+        Path pending = new Path();
+        float x;
+        float y;
+        boolean dirty = true;
+        boolean ended;
+
+        LiveStroke(int pointerId, float x, float y) {
+            this.pointerId = pointerId;
+            this.x = x;
+            this.y = y;
+            pending.moveTo(x, y);
+        }
+    }
+
+    // The next segment is only sent when this one completes, so its duration bounds how far
+    // the injected pointer can trail the controller; one 60Hz frame
+    static final long MAX_SEGMENT_MS = 16;
+
+    /**
+     * How long the movement for the next segment took to arrive, from its first sample to its
+     * last, capped at MAX_SEGMENT_MS. Each segment completes a callback delay after its
+     * duration, so a segment played back at arrival speed would be slower than the stream and
+     * the lag would keep growing; the cap makes a backed-up drag catch up instead.
+     */
+    static final class PendingSpan {
+        private long firstMs = -1;
+        private long lastMs;
+
+        void onSample(long uptimeMs) {
+            if (firstMs < 0) {
+                firstMs = uptimeMs;
+            }
+            lastMs = uptimeMs;
+        }
+
+        /** Duration for the segment carrying the movement so far; starts a new span. */
+        long takeDurationMs() {
+            long durationMs = firstMs < 0 ? 1 : Math.max(1, Math.min(lastMs - firstMs, MAX_SEGMENT_MS));
+            firstMs = -1;
+            return durationMs;
+        }
+
+        void reset() {
+            firstMs = -1;
+        }
+    }
+
+    private final List<LiveStroke> liveStrokes = new ArrayList<>();
+    private boolean segmentInFlight;
+    private final PendingSpan pendingSpan = new PendingSpan();
+    // Bumped for every new gesture so callbacks of a replaced gesture are ignored
+    private int gestureGeneration;
+
+    @Override
+    public String getName() {
+        return "accessibility";
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+                && AccessibilityControlService.getInstance() != null;
+    }
+
+    @Override
+    public void tap(float x, float y) {
+        AccessibilityControlService service = AccessibilityControlService.getInstance();
+        if (service != null) {
+            service.performClick(x, y);
+        } else {
+            Log.w(TAG, "Accessibility service not connected, dropping tap");
+        }
+    }
+
+    @Override
+    public void longPress(float x, float y, long durationMs) {
+        AccessibilityControlService service = AccessibilityControlService.getInstance();
+        if (service != null) {
+            service.performSwipe(x, y, x, y, durationMs);
+        } else {
+            Log.w(TAG, "Accessibility service not connected, dropping long press");
+        }
+    }
+
+    @Override
+    public void swipe(float startX, float startY, float endX, float endY, long durationMs) {
+        AccessibilityControlService service = AccessibilityControlService.getInstance();
+        if (service != null) {
+            service.performSwipe(startX, startY, endX, endY, durationMs);
+        } else {
+            Log.w(TAG, "Accessibility service not connected, dropping swipe");
+        }
+    }
+
+    @Override
+    public void keyEvent(int keyCode) {
+        AccessibilityControlService service = AccessibilityControlService.getInstance();
+        if (service == null) {
+            Log.w(TAG, "Accessibility service not connected, dropping key " + keyCode);
+            return;
+        }
+
+        // Accessibility cannot inject arbitrary key codes, only global actions
+        switch (keyCode) {
+            case KeyEvent.KEYCODE_BACK:
+                service.performGlobalAction(AccessibilityService.GLOBAL_ACTION_BACK);
+                break;
+            case KeyEvent.KEYCODE_HOME:
+                service.performGlobalAction(AccessibilityService.GLOBAL_ACTION_HOME);
+                break;
+            case KeyEvent.KEYCODE_MENU:
+            case KeyEvent.KEYCODE_APP_SWITCH:
+                service.performGlobalAction(AccessibilityService.GLOBAL_ACTION_RECENTS);
+                break;
+            default:
+                Log.w(TAG, "Key " + keyCode + " not supported by accessibility backend");
+        }
+    }
+
+    @Override
+    public void text(String text) {
+        AccessibilityControlService service = AccessibilityControlService.getInstance();
+        if (service == null) {
+            Log.w(TAG, "Accessibility service not connected, dropping text");
+            return;
+        }
+        if (!service.editFocusedText(text, 0)) {
+            Log.w(TAG, "No focused input field, dropping text");
+        }
+    }
+
+    @Override
+    public void keys(int[] keyCodes, int metaState) {
+        AccessibilityControlService service = AccessibilityControlService.getInstance();
+        if (service == null) {
+            Log.w(TAG, "Accessibility service not connected, dropping " + keyCodes.length + " keys");
+            return;
+        }
+        // Backspaces are folded into one text edit; other keys map to global actions
+        int deletes = 0;
+        for (int keyCode : keyCodes) {
+            if (keyCode == KeyEvent.KEYCODE_DEL) {
+                deletes++;
+                continue;
+            }
+            if (deletes > 0) {
+                service.editFocusedText("", deletes);
+                deletes = 0;
+            }
+            keyEvent(keyCode);
+        }
+        if (deletes > 0) {
+            service.editFocusedText("", deletes);
+        }
+    }
+
+    @Override
+    public synchronized void motion(int action, TouchPointers pointers) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            streamMotion(action, pointers);
+            return;
+        }
+
+        long offsetMs = SystemClock.uptimeMillis() - pointers.getDownTime();
+        int actionMasked = action & MotionEvent.ACTION_MASK;
+        int actionIndex = (action & MotionEvent.ACTION_POINTER_INDEX_MASK)
+                >> MotionEvent.ACTION_POINTER_INDEX_SHIFT;
+
+        switch (actionMasked) {
+            case MotionEvent.ACTION_DOWN:
+                strokes.clear();
+                // fall through
+            case MotionEvent.ACTION_POINTER_DOWN:
+                if (strokes.size() < GestureDescription.getMaxStrokeCount()) {
+                    strokes.add(new Stroke(pointers.getId(actionIndex),
+                            pointers.getX(actionIndex), pointers.getY(actionIndex), offsetMs));
+                }
+                break;
+            case MotionEvent.ACTION_MOVE:
+                for (int i = 0; i < pointers.getCount(); i++) {
+                    Stroke stroke = findActiveStroke(pointers.getId(i));
+                    if (stroke != null) {
+                        stroke.path.lineTo(pointers.getX(i), pointers.getY(i));
+                    }
+                }
+                break;
+            case MotionEvent.ACTION_POINTER_UP:
+            case MotionEvent.ACTION_UP: {
+                Stroke stroke = findActiveStroke(pointers.getId(actionIndex));
+                if (stroke != null) {
+                    stroke.path.lineTo(pointers.getX(actionIndex), pointers.getY(actionIndex));
+                    stroke.endOffsetMs = offsetMs;
+                }
+                if (actionMasked == MotionEvent.ACTION_UP) {
+                    dispatchStrokes();
+                }
+                break;
+            }
+            case MotionEvent.ACTION_CANCEL:
+                strokes.clear();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void streamMotion(int action, TouchPointers pointers) {
+        int actionMasked = action & MotionEvent.ACTION_MASK;
+        int actionIndex = (action & MotionEvent.ACTION_POINTER_INDEX_MASK)
+                >> MotionEvent.ACTION_POINTER_INDEX_SHIFT;
+
+        switch (actionMasked) {
+            case MotionEvent.ACTION_DOWN:
+                // A new gesture replaces whatever was in progress
+                liveStrokes.clear();
+                segmentInFlight = false;
+                pendingSpan.reset();
+                gestureGeneration++;
+                // fall through
+            case MotionEvent.ACTION_POINTER_DOWN:
+                if (liveStrokes.size() < GestureDescription.getMaxStrokeCount()) {
+                    liveStrokes.add(new LiveStroke(pointers.getId(actionIndex),
+                            pointers.getX(actionIndex), pointers.getY(actionIndex)));
+                }
+                break;
+            case MotionEvent.ACTION_MOVE:
+                for (int i = 0; i < pointers.getCount(); i++) {
+                    moveLiveStroke(pointers.getId(i), pointers.getX(i), pointers.getY(i));
+                }
+                break;
+            case MotionEvent.ACTION_POINTER_UP:
+            case MotionEvent.ACTION_UP: {
+                LiveStroke stroke = moveLiveStroke(pointers.getId(actionIndex),
+                        pointers.getX(actionIndex), pointers.getY(actionIndex));
+                if (stroke != null) {
+                    stroke.ended = true;
+                    stroke.dirty = true;
+                }
+                break;
+            }
+            case MotionEvent.ACTION_CANCEL:
+                // A dispatched stroke can only be finished, so lift every pointer where it is
+                for (LiveStroke stroke : liveStrokes) {
+                    stroke.ended = true;
+                    stroke.dirty = true;
+                }
+                break;
+            default:
+                return;
+        }
+
+        if (!segmentInFlight) {
+            dispatchSegment();
+        }
+    }
+
+    private LiveStroke moveLiveStroke(int pointerId, float x, float y) {
+        for (LiveStroke stroke : liveStrokes) {
+            if (stroke.pointerId == pointerId && !stroke.ended) {
+                if (stroke.x != x || stroke.y != y) {
+                    pendingSpan.onSample(SystemClock.uptimeMillis());
+                    stroke.pending.lineTo(x, y);
+                    stroke.x = x;
+                    stroke.y = y;
+                    stroke.dirty = true;
+                }
+                return stroke;
+            }
+        }
+        return null;
+    }
+
+    // Send everything gathered since the last segment; called with the lock held
+    private void dispatchSegment() {
+        boolean dirty = false;
+        for (LiveStroke stroke : liveStrokes) {
+            dirty |= stroke.dirty;
+        }
+        if (!dirty) {
+            return;
+        }
+        AccessibilityControlService service = AccessibilityControlService.getInstance();
+        if (service == null) {
+            Log.w(TAG, "Accessibility service not connected, dropping gesture");
+            liveStrokes.clear();
+            return;
+        }
+
+        // Play the segment back over the time its movement took to arrive, keeping the drag speed
+        long durationMs = pendingSpan.takeDurationMs();
+
+        GestureDescription.Builder builder = new GestureDescription.Builder();
+        for (int i = 0; i < liveStrokes.size(); i++) {
+            LiveStroke stroke = liveStrokes.get(i);
+            if (stroke.segment == null && stroke.ended) {
+                // Went down and up before it was ever sent; a plain tap-length stroke
+                stroke.pending.lineTo(stroke.x, stroke.y);
+                builder.addStroke(new GestureDescription.StrokeDescription(stroke.pending, 0, durationMs));
+                continue;
+            }
+            // A stationary pointer still needs a segment to stay down
+            stroke.pending.lineTo(stroke.x, stroke.y);
+            stroke.segment = stroke.segment == null
+                    ? new GestureDescription.StrokeDescription(stroke.pending, 0, durationMs, !stroke.ended)
+                    : stroke.segment.continueStroke(stroke.pending, 0, durationMs, !stroke.ended);
+            builder.addStroke(stroke.segment);
+        }
+
+        // Finished strokes are not continued; the rest start their next segment where this one ends
+        for (int i = liveStrokes.size() - 1; i >= 0; i--) {
+            LiveStroke stroke = liveStrokes.get(i);
+            if (stroke.ended) {
+                liveStrokes.remove(i);
+            } else {
+                stroke.pending = new Path();
+                stroke.pending.moveTo(stroke.x, stroke.y);
+                stroke.dirty = false;
+            }
+        }
+        final int generation = gestureGeneration;
+        segmentInFlight = service.performGesture(builder.build(),
+                new AccessibilityService.GestureResultCallback() {
+                    @Override
+                    public void onCompleted(GestureDescription gestureDescription) {
+                        synchronized (AccessibilityInputInjector.this) {
+                            if (generation != gestureGeneration) {
+                                return;
+                            }
+                            segmentInFlight = false;
+                            dispatchSegment();
+                        }
+                    }
+
+                    @Override
+                    public void onCancelled(GestureDescription gestureDescription) {
+                        synchronized (AccessibilityInputInjector.this) {
+                            if (generation != gestureGeneration) {
+                                return;
+                            }
+                            // Interrupted (e.g. by a real touch); the strokes can't be continued
+                            Log.d(TAG, "Streaming gesture cancelled");
+                            segmentInFlight = false;
+                            liveStrokes.clear();
+                            pendingSpan.reset();
+                        }
+                    }
+                });
+        if (!segmentInFlight) {
+            // Rejected, so there is nothing to continue from
+            Log.w(TAG, "Streaming gesture segment rejected");
+            liveStrokes.clear();
+            pendingSpan.reset();
+        }
+    }
+
+    private Stroke findActiveStroke(int pointerId) {
+        for (Stroke stroke : strokes) {
+            if (stroke.pointerId == pointerId && stroke.endOffsetMs < 0) {
+                return stroke;
+            }
+        }
+        return null;
+    }
+
+    private void dispatchStrokes() {
+        AccessibilityControlService service = AccessibilityControlService.getInstance();
+        if (service == null || strokes.isEmpty()) {
+            Log.w(TAG, "Accessibility service not connected, dropping gesture");
+            strokes.clear();
+            return;
+        }
+
+        GestureDescription.Builder builder = new GestureDescription.Builder();
+        for (Stroke stroke : strokes) {
+            long duration = Math.max(stroke.endOffsetMs - stroke.startOffsetMs, 1);
+            builder.addStroke(new GestureDescription.StrokeDescription(
+                    stroke.path, stroke.startOffsetMs, duration));
+        }
+        strokes.clear();
+        service.performGesture(builder.build());
+    }
+
+    @Override
+    public void release() {
+        // Nothing to release, the service lifecycle is owned by the system
+    }
+}
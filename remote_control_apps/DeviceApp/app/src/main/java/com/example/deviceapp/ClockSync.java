@@ -0,0 +1,276 @@
+package com.example.deviceapp;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.gson.JsonObject;
+
+import java.util.Locale;
+
+/**
+ * NTP-style estimate of the controller clock relative to the device, from probe exchanges
+ * over the control DataChannel:
+ *
+ *   device  -> clock_probe {id, t1}                 t1: device send time (us, opaque to the controller)
+ *   device <-  clock_reply {id, t1, t2, t3}         t2/t3: controller receive/send time (ms)
+ *   t4 = device receive time
+ *
+ *   offset = ((t2 - t1) + (t3 - t4)) / 2,   rtt = (t4 - t1) - (t3 - t2)
+ *
+ * Queueing delay only ever adds to the RTT and skews the offset, so the sample with the
+ * smallest RTT in a sliding window is the best estimate. Those picks are fitted with a
+ * least-squares line to estimate drift between the two oscillators, which keeps the
+ * mapping accurate between probes.
+ *
+ * Device time here is System.nanoTime(), so the mapping is immune to wall-clock steps.
+ */
+public class ClockSync {
+    private static final String TAG = "ClockSync";
+
+    public static final String MSG_CLOCK_PROBE = "clock_probe";
+    public static final String MSG_CLOCK_REPLY = "clock_reply";
+
+    // A quick burst to converge after connecting, then a slow steady rate
+    private static final int BURST_PROBES = 8;
+    private static final long BURST_INTERVAL_MS = 100;
+    private static final long STEADY_INTERVAL_MS = 5000;
+    // Raw samples considered by the min-RTT filter
+    private static final int WINDOW = 8;
+    // Filtered samples used for the drift fit
+    private static final int FIT_POINTS = 32;
+    // Don't trust a drift estimate over a shorter baseline than this
+    private static final double MIN_FIT_SPAN_MS = 30_000;
+    // Drift beyond this is treated as a bad fit (real crystals are within ~100ppm)
+    private static final double MAX_DRIFT = 500e-6;
+
+    public interface Sender {
+        void sendClockMessage(JsonObject message);
+    }
+
+    private final Sender sender;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private long nextProbeId = 1;
+    private int probesSent;
+    private boolean running;
+
+    // Raw samples (ring), guarded by "this"
+    private final long[] sampleIds = new long[WINDOW];
+    private final double[] sampleDeviceMs = new double[WINDOW];
+    private final double[] sampleOffsetMs = new double[WINDOW];
+    private final double[] sampleRttMs = new double[WINDOW];
+    private int sampleCount;
+    private int sampleNext;
+
+    // Min-RTT picks for the drift fit (ring)
+    private final double[] fitDeviceMs = new double[FIT_POINTS];
+    private final double[] fitOffsetMs = new double[FIT_POINTS];
+    private int fitCount;
+    private int fitNext;
+    private long lastPickedId;
+
+    // Current model: offset(t) = baseOffsetMs + drift * (t - baseDeviceMs)
+    private boolean synced;
+    private double baseDeviceMs;
+    private double baseOffsetMs;
+    private double drift;
+    private double bestRttMs;
+
+    private final Runnable probeRunnable = new Runnable() {
+        @Override
+        public void run() {
+            sendProbe();
+            synchronized (ClockSync.this) {
+                if (running) {
+                    handler.postDelayed(this, probesSent < BURST_PROBES ? BURST_INTERVAL_MS : STEADY_INTERVAL_MS);
+                }
+            }
+        }
+    };
+
+    public ClockSync(Sender sender) {
+        this.sender = sender;
+    }
+
+    public synchronized void start() {
+        if (!running) {
+            running = true;
+            probesSent = 0;
+            handler.post(probeRunnable);
+        }
+    }
+
+    public synchronized void stop() {
+        running = false;
+        handler.removeCallbacks(probeRunnable);
+    }
+
+    /** Handle a clock_reply; receiveTimeNs is when the message came off the DataChannel. */
+    public void onReply(JsonObject reply, long receiveTimeNs) {
+        if (!reply.has("id") || !reply.has("t1") || !reply.has("t2") || !reply.has("t3")) {
+            Log.w(TAG, "Malformed clock reply: " + reply);
+            return;
+        }
+        long id = reply.get("id").getAsLong();
+        double t1 = reply.get("t1").getAsLong() / 1000.0;
+        double t2 = reply.get("t2").getAsDouble();
+        double t3 = reply.get("t3").getAsDouble();
+        double t4 = receiveTimeNs / 1_000_000.0;
+
+        double rtt = (t4 - t1) - (t3 - t2);
+        if (rtt < 0 || t4 < t1) {
+            Log.w(TAG, "Discarding inconsistent clock sample " + id + ", rtt " + rtt);
+            return;
+        }
+        double offset = ((t2 - t1) + (t3 - t4)) / 2.0;
+        addSample(id, (t1 + t4) / 2.0, offset, rtt);
+    }
+
+    /** Answer a controller-initiated probe so the controller can estimate our clock too. */
+    public void onProbe(JsonObject probe, long receiveTimeNs) {
+        JsonObject reply = new JsonObject();
+        reply.addProperty("type", MSG_CLOCK_REPLY);
+        if (probe.has("id")) {
+            reply.add("id", probe.get("id"));
+        }
+        if (probe.has("t1")) {
+            reply.add("t1", probe.get("t1"));
+        }
+        reply.addProperty("t2", receiveTimeNs / 1_000_000.0);
+        reply.addProperty("t3", System.nanoTime() / 1_000_000.0);
+        sender.sendClockMessage(reply);
+    }
+
+    public synchronized boolean isSynchronized() {
+        return synced;
+    }
+
+    /** Controller clock minus device clock, in ms, at the given device time. */
+    public synchronized double getOffsetMs(long deviceTimeNs) {
+        return baseOffsetMs + drift * (deviceTimeNs / 1_000_000.0 - baseDeviceMs);
+    }
+
+    public synchronized double getDriftPpm() {
+        return drift * 1e6;
+    }
+
+    public synchronized double getRttMs() {
+        return bestRttMs;
+    }
+
+    /**
+     * Map a controller timestamp (ms) onto the device System.nanoTime() timeline.
+     * Returns 0 if the clocks are not synchronized yet.
+     */
+    public synchronized long toDeviceTimeNs(long controllerTimeMs) {
+        if (!synced) {
+            return 0;
+        }
+        // Solve t + offset(t) = controller time; drift is tiny, so one step is exact enough
+        double deviceMs = controllerTimeMs - baseOffsetMs;
+        deviceMs = controllerTimeMs - (baseOffsetMs + drift * (deviceMs - baseDeviceMs));
+        return (long) (deviceMs * 1_000_000.0);
+    }
+
+    /** Map a device System.nanoTime() value to controller time in ms. */
+    public synchronized double toControllerTimeMs(long deviceTimeNs) {
+        double deviceMs = deviceTimeNs / 1_000_000.0;
+        return deviceMs + baseOffsetMs + drift * (deviceMs - baseDeviceMs);
+    }
+
+    public synchronized String getStats() {
+        return synced
+                ? String.format(Locale.US, "offset %.3f ms, rtt %.3f ms, drift %.1f ppm",
+                        baseOffsetMs, bestRttMs, drift * 1e6)
+                : "not synchronized";
+    }
+
+    private void sendProbe() {
+        long id;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            id = nextProbeId++;
+            probesSent++;
+        }
+        JsonObject probe = new JsonObject();
+        probe.addProperty("type", MSG_CLOCK_PROBE);
+        probe.addProperty("id", id);
+        // Device send time in microseconds, echoed back untouched
+        probe.addProperty("t1", System.nanoTime() / 1000);
+        sender.sendClockMessage(probe);
+    }
+
+    private synchronized void addSample(long id, double deviceMs, double offsetMs, double rttMs) {
+        sampleIds[sampleNext] = id;
+        sampleDeviceMs[sampleNext] = deviceMs;
+        sampleOffsetMs[sampleNext] = offsetMs;
+        sampleRttMs[sampleNext] = rttMs;
+        sampleNext = (sampleNext + 1) % WINDOW;
+        sampleCount = Math.min(sampleCount + 1, WINDOW);
+
+        // Minimum-RTT filter over the window
+        int best = -1;
+        for (int i = 0; i < sampleCount; i++) {
+            if (best < 0 || sampleRttMs[i] < sampleRttMs[best]) {
+                best = i;
+            }
+        }
+        if (sampleIds[best] == lastPickedId) {
+            return;
+        }
+        lastPickedId = sampleIds[best];
+        bestRttMs = sampleRttMs[best];
+
+        fitDeviceMs[fitNext] = sampleDeviceMs[best];
+        fitOffsetMs[fitNext] = sampleOffsetMs[best];
+        fitNext = (fitNext + 1) % FIT_POINTS;
+        fitCount = Math.min(fitCount + 1, FIT_POINTS);
+        updateModel(sampleDeviceMs[best], sampleOffsetMs[best]);
+    }
+
+    private void updateModel(double latestDeviceMs, double latestOffsetMs) {
+        double minT = Double.MAX_VALUE;
+        double maxT = -Double.MAX_VALUE;
+        double meanT = 0;
+        double meanOffset = 0;
+        for (int i = 0; i < fitCount; i++) {
+            minT = Math.min(minT, fitDeviceMs[i]);
+            maxT = Math.max(maxT, fitDeviceMs[i]);
+            meanT += fitDeviceMs[i];
+            meanOffset += fitOffsetMs[i];
+        }
+        meanT /= fitCount;
+        meanOffset /= fitCount;
+
+        double slope = 0;
+        if (fitCount >= 3 && maxT - minT >= MIN_FIT_SPAN_MS) {
+            double covariance = 0;
+            double variance = 0;
+            for (int i = 0; i < fitCount; i++) {
+                double dt = fitDeviceMs[i] - meanT;
+                covariance += dt * (fitOffsetMs[i] - meanOffset);
+                variance += dt * dt;
+            }
+            slope = variance > 0 ? covariance / variance : 0;
+            if (Math.abs(slope) > MAX_DRIFT) {
+                slope = 0;
+            }
+        }
+
+        if (slope != 0) {
+            baseDeviceMs = meanT;
+            baseOffsetMs = meanOffset;
+        } else {
+            // No usable drift yet: the latest min-RTT sample is the best offset
+            baseDeviceMs = latestDeviceMs;
+            baseOffsetMs = latestOffsetMs;
+        }
+        drift = slope;
+        if (!synced) {
+            synced = true;
+            Log.d(TAG, "Clock synchronized: " + getStats());
+        }
+    }
+}
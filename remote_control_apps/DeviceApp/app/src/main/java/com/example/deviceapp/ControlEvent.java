@@ -3,9 +3,55 @@ package com.example.deviceapp;
 import com.google.gson.annotations.SerializedName;
 
 public class ControlEvent {
+    // Whole gestures
+    public static final String TYPE_CLICK = "click";
+    public static final String TYPE_LONG_CLICK = "long_click";
+    public static final String TYPE_SWIPE = "swipe";
+    // Streaming touch types
+    public static final String TYPE_DOWN = "down";
+    public static final String TYPE_MOVE = "move";
+    public static final String TYPE_UP = "up";
+    public static final String TYPE_CANCEL = "cancel";
+    // Multi-pointer event: a MotionEvent masked action plus every pointer on the screen
+    public static final String TYPE_TOUCH = "touch";
+    public static final int MAX_POINTERS = TouchPointers.MAX_POINTERS;
+    // Keyboard input: a whole string, or a batch of key codes pressed in turn
+    public static final String TYPE_TEXT = "text";
+    public static final String TYPE_KEYS = "keys";
+    // Upper bounds for one keyboard event, after repeat is applied
+    public static final int MAX_TEXT_LENGTH = 4096;
+    public static final int MAX_KEY_COUNT = 256;
+    
+    public static class Pointer {
+        @SerializedName("id")
+        public int id;
+        
+        @SerializedName("x")
+        public double x;
+        
+        @SerializedName("y")
+        public double y;
+    }
+    
     @SerializedName("type")
     public String type;
     
+    @SerializedName("pointerId")
+    public int pointerId;
+    
+    @SerializedName("action")
+    public int action;
+    
+    @SerializedName("pointers")
+    public Pointer[] pointers;
+    
+    // Valid entries in pointers; pooled events keep a larger array around for reuse
+    public transient int pointerCount;
+    
+    // Latency tracing stamps (System.nanoTime), 0 if the event skipped the stage
+    public transient long receiveTimeNs;
+    public transient long dequeueTimeNs;
+    
     @SerializedName("x")
     public double x;
     
@@ -24,6 +70,29 @@ public class ControlEvent {
     @SerializedName("timestamp")
     public long timestamp;
     
+    // x/y (and pointers) are 0..1 across the video frame rather than device pixels
+    @SerializedName("normalized")
+    public boolean normalized;
+    
+    // Sender's u32 sequence number shared by both DataChannel lanes; 0 means unsequenced
+    @SerializedName("seq")
+    public long seq;
+    
+    @SerializedName("text")
+    public String text;
+    
+    // Android KeyEvent key codes
+    @SerializedName("keyCodes")
+    public int[] keyCodes;
+    
+    // Held while keyCodes are pressed: any of "shift", "ctrl", "alt", "meta"
+    @SerializedName("modifiers")
+    public String[] modifiers;
+    
+    // Number of times to send text or keyCodes; 0 and 1 both mean once
+    @SerializedName("repeat")
+    public int repeat;
+    
     public ControlEvent() {}
     
     public ControlEvent(String type, double x, double y, long timestamp) {
@@ -33,10 +102,71 @@ public class ControlEvent {
         this.timestamp = timestamp;
     }
     
+    /** Clear all fields so a pooled event can be refilled, keeping the pointer array. */
+    public void reset() {
+        type = null;
+        pointerId = 0;
+        action = 0;
+        pointerCount = 0;
+        x = 0;
+        y = 0;
+        endX = null;
+        endY = null;
+        duration = null;
+        timestamp = 0;
+        seq = 0;
+        normalized = false;
+        receiveTimeNs = 0;
+        dequeueTimeNs = 0;
+        text = null;
+        keyCodes = null;
+        modifiers = null;
+        repeat = 0;
+    }
+    
+    /** Pointer slot at index, growing the reusable array to MAX_POINTERS on first use. */
+    public Pointer obtainPointer(int index) {
+        if (pointers == null || pointers.length <= index) {
+            Pointer[] grown = new Pointer[MAX_POINTERS];
+            if (pointers != null) {
+                System.arraycopy(pointers, 0, grown, 0, pointers.length);
+            }
+            pointers = grown;
+        }
+        if (pointers[index] == null) {
+            pointers[index] = new Pointer();
+        }
+        return pointers[index];
+    }
+    
+    public boolean isStreamingTouch() {
+        return TYPE_DOWN.equals(type) || TYPE_MOVE.equals(type)
+                || TYPE_UP.equals(type) || TYPE_CANCEL.equals(type) || TYPE_TOUCH.equals(type);
+    }
+    
+    /** A pure position update: a move, or a multi-pointer event with a MOVE action (2). */
+    public boolean isMove() {
+        return TYPE_MOVE.equals(type) || (TYPE_TOUCH.equals(type) && action == 2);
+    }
+    
+    public boolean isKeyboardInput() {
+        return TYPE_TEXT.equals(type) || TYPE_KEYS.equals(type);
+    }
+    
+    /** Keyboard input or a navigation key: no coordinates, independent of any touch stream. */
+    public boolean isKeyInput() {
+        return isKeyboardInput() || (!isStreamingTouch() && isSpecialKey());
+    }
+    
     public boolean isSpecialKey() {
         return x < 0 && y < 0;
     }
     
+    /** True if sequence number a was sent after b, allowing for u32 wrap-around. */
+    public static boolean isNewerSeq(long a, long b) {
+        return (int) (a - b) > 0;
+    }
+    
     public int getSpecialKeyCode() {
         if (x == -1 && y == -1) return 4; // KEYCODE_BACK
         if (x == -2 && y == -2) return 3; // KEYCODE_HOME
@@ -0,0 +1,234 @@
+package com.example.deviceapp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Versioned fixed-layout binary encoding of control events for the DataChannel.
+ * All fields are big-endian; coordinates are signed Q16.16 fixed point.
+ *
+ * <pre>
+ *  0  u8   version (1)
+ *  1  u8   type code (TYPE_*)
+ *  2  u8   flags (FLAG_*)
+ *  3  u8   acting pointer id
+ *  4  u8   MotionEvent masked action (touch only)
+ *  5  u8   pointer count n
+ *  6  u32  timestamp delta, ms since the negotiated base timestamp
+ * 10  i32  x
+ * 14  i32  y
+ * 18  n x (u8 id, i32 x, i32 y)
+ *  .. i32 endX, i32 endY, u16 duration   (FLAG_SWIPE only)
+ *  .. u32 sequence number                (FLAG_SEQUENCED only)
+ * </pre>
+ *
+ * Decoding reads straight from the buffer with absolute gets and writes into a caller
+ * supplied (usually pooled) ControlEvent, reusing its pointer array, so decoding touch and
+ * move events creates no objects. Swipes still box endX, endY and duration into the
+ * nullable fields ControlEvent shares with Gson.
+ * Not thread-safe; use one codec per DataChannel.
+ */
+public class ControlEventCodec {
+    public static final String FORMAT_JSON = "json";
+    public static final String FORMAT_BINARY = "binary_v1";
+
+    public static final int VERSION = 1;
+
+    public static final int TYPE_CLICK = 1;
+    public static final int TYPE_LONG_CLICK = 2;
+    public static final int TYPE_SWIPE = 3;
+    public static final int TYPE_DOWN = 4;
+    public static final int TYPE_MOVE = 5;
+    public static final int TYPE_UP = 6;
+    public static final int TYPE_CANCEL = 7;
+    public static final int TYPE_TOUCH = 8;
+
+    public static final int FLAG_SWIPE = 0x01;
+    public static final int FLAG_SEQUENCED = 0x02;
+    // Coordinates are 0..1 across the video frame
+    public static final int FLAG_NORMALIZED = 0x04;
+
+    public static final int HEADER_SIZE = 18;
+    public static final int POINTER_SIZE = 9;
+    public static final int SWIPE_TRAILER_SIZE = 10;
+    public static final int SEQUENCE_TRAILER_SIZE = 4;
+    public static final int MAX_POINTERS = TouchPointers.MAX_POINTERS;
+    public static final int MAX_MESSAGE_SIZE = HEADER_SIZE + MAX_POINTERS * POINTER_SIZE
+            + SWIPE_TRAILER_SIZE + SEQUENCE_TRAILER_SIZE;
+
+    private static final double FIXED_ONE = 65536.0;
+
+    private long baseTimestamp;
+
+    /** Base for timestamp deltas, announced by the controller when it switches to binary. */
+    public void setBaseTimestamp(long baseTimestamp) {
+        this.baseTimestamp = baseTimestamp;
+    }
+
+    public long getBaseTimestamp() {
+        return baseTimestamp;
+    }
+
+    /** Cheap check that a buffer looks like a binary control event of a known version. */
+    public static boolean isBinaryEvent(ByteBuffer data) {
+        return data.remaining() >= HEADER_SIZE && (data.get(data.position()) & 0xff) == VERSION;
+    }
+
+    /**
+     * Decode one event from data starting at its position, without consuming it.
+     * Returns false (leaving out partially written) if the message is malformed.
+     */
+    public boolean decode(ByteBuffer data, ControlEvent out) {
+        int base = data.position();
+        int length = data.remaining();
+        if (length < HEADER_SIZE || (data.get(base) & 0xff) != VERSION) {
+            return false;
+        }
+
+        String type = typeName(data.get(base + 1) & 0xff);
+        if (type == null) {
+            return false;
+        }
+        int flags = data.get(base + 2) & 0xff;
+        int pointerCount = data.get(base + 5) & 0xff;
+        int needed = HEADER_SIZE + pointerCount * POINTER_SIZE
+                + ((flags & FLAG_SWIPE) != 0 ? SWIPE_TRAILER_SIZE : 0)
+                + ((flags & FLAG_SEQUENCED) != 0 ? SEQUENCE_TRAILER_SIZE : 0);
+        if (pointerCount > MAX_POINTERS || length < needed) {
+            return false;
+        }
+
+        out.type = type;
+        out.normalized = (flags & FLAG_NORMALIZED) != 0;
+        out.pointerId = data.get(base + 3) & 0xff;
+        out.action = data.get(base + 4) & 0xff;
+        out.timestamp = baseTimestamp + (data.getInt(base + 6) & 0xffffffffL);
+        out.x = fromFixed(data.getInt(base + 10));
+        out.y = fromFixed(data.getInt(base + 14));
+
+        int offset = base + HEADER_SIZE;
+        for (int i = 0; i < pointerCount; i++) {
+            ControlEvent.Pointer pointer = out.obtainPointer(i);
+            pointer.id = data.get(offset) & 0xff;
+            pointer.x = fromFixed(data.getInt(offset + 1));
+            pointer.y = fromFixed(data.getInt(offset + 5));
+            offset += POINTER_SIZE;
+        }
+        out.pointerCount = pointerCount;
+
+        if ((flags & FLAG_SWIPE) != 0) {
+            out.endX = fromFixed(data.getInt(offset));
+            out.endY = fromFixed(data.getInt(offset + 4));
+            out.duration = data.getShort(offset + 8) & 0xffff;
+            offset += SWIPE_TRAILER_SIZE;
+        } else {
+            out.endX = null;
+            out.endY = null;
+            out.duration = null;
+        }
+        out.seq = (flags & FLAG_SEQUENCED) != 0 ? data.getInt(offset) & 0xffffffffL : 0;
+        return true;
+    }
+
+    /**
+     * Encode event into out at its position and advance it. Returns false if the event
+     * type has no binary form (the caller should fall back to JSON) or out is too small.
+     */
+    public boolean encode(ControlEvent event, ByteBuffer out) {
+        int typeCode = typeCode(event.type);
+        if (typeCode == 0) {
+            return false;
+        }
+        int pointerCount = Math.min(event.pointerCount, MAX_POINTERS);
+        boolean swipe = event.endX != null && event.endY != null;
+        boolean sequenced = event.seq != 0;
+        int size = HEADER_SIZE + pointerCount * POINTER_SIZE + (swipe ? SWIPE_TRAILER_SIZE : 0)
+                + (sequenced ? SEQUENCE_TRAILER_SIZE : 0);
+        if (out.remaining() < size) {
+            return false;
+        }
+
+        out.put((byte) VERSION);
+        out.put((byte) typeCode);
+        out.put((byte) ((swipe ? FLAG_SWIPE : 0) | (sequenced ? FLAG_SEQUENCED : 0)
+                | (event.normalized ? FLAG_NORMALIZED : 0)));
+        out.put((byte) event.pointerId);
+        out.put((byte) event.action);
+        out.put((byte) pointerCount);
+        out.putInt((int) Math.max(0, event.timestamp - baseTimestamp));
+        out.putInt(toFixed(event.x));
+        out.putInt(toFixed(event.y));
+        for (int i = 0; i < pointerCount; i++) {
+            ControlEvent.Pointer pointer = event.pointers[i];
+            out.put((byte) pointer.id);
+            out.putInt(toFixed(pointer.x));
+            out.putInt(toFixed(pointer.y));
+        }
+        if (swipe) {
+            out.putInt(toFixed(event.endX));
+            out.putInt(toFixed(event.endY));
+            out.putShort((short) Math.min(event.duration != null ? event.duration : 0, 0xffff));
+        }
+        if (sequenced) {
+            out.putInt((int) event.seq);
+        }
+        return true;
+    }
+
+    public static int toFixed(double value) {
+        return (int) Math.round(value * FIXED_ONE);
+    }
+
+    public static double fromFixed(int value) {
+        return value / FIXED_ONE;
+    }
+
+    // Returns the interned ControlEvent constant so decoding allocates no strings
+    static String typeName(int code) {
+        switch (code) {
+            case TYPE_CLICK:
+                return ControlEvent.TYPE_CLICK;
+            case TYPE_LONG_CLICK:
+                return ControlEvent.TYPE_LONG_CLICK;
+            case TYPE_SWIPE:
+                return ControlEvent.TYPE_SWIPE;
+            case TYPE_DOWN:
+                return ControlEvent.TYPE_DOWN;
+            case TYPE_MOVE:
+                return ControlEvent.TYPE_MOVE;
+            case TYPE_UP:
+                return ControlEvent.TYPE_UP;
+            case TYPE_CANCEL:
+                return ControlEvent.TYPE_CANCEL;
+            case TYPE_TOUCH:
+                return ControlEvent.TYPE_TOUCH;
+            default:
+                return null;
+        }
+    }
+
+    static int typeCode(String type) {
+        if (type == null) {
+            return 0;
+        }
+        switch (type) {
+            case ControlEvent.TYPE_CLICK:
+                return TYPE_CLICK;
+            case ControlEvent.TYPE_LONG_CLICK:
+                return TYPE_LONG_CLICK;
+            case ControlEvent.TYPE_SWIPE:
+                return TYPE_SWIPE;
+            case ControlEvent.TYPE_DOWN:
+                return TYPE_DOWN;
+            case ControlEvent.TYPE_MOVE:
+                return TYPE_MOVE;
+            case ControlEvent.TYPE_UP:
+                return TYPE_UP;
+            case ControlEvent.TYPE_CANCEL:
+                return TYPE_CANCEL;
+            case ControlEvent.TYPE_TOUCH:
+                return TYPE_TOUCH;
+            default:
+                return 0;
+        }
+    }
+}
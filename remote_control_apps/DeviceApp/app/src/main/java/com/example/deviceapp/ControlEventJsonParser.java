@@ -0,0 +1,466 @@
+package com.example.deviceapp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Allocation-free parser for the JSON form of control events. Reads UTF-8 bytes straight
+ * from the DataChannel buffer into a pooled ControlEvent: keys are matched byte-wise,
+ * type names resolve to the ControlEvent constants and numbers are parsed in place.
+ *
+ * Anything it does not understand (unknown event types, escaped strings, malformed input)
+ * makes parse() return false so the caller can fall back to Gson.
+ * Not thread-safe; use one parser per receiving thread.
+ */
+public class ControlEventJsonParser {
+    private static final byte[] KEY_TYPE = ascii("type");
+    private static final byte[] KEY_POINTER_ID = ascii("pointerId");
+    private static final byte[] KEY_ACTION = ascii("action");
+    private static final byte[] KEY_POINTERS = ascii("pointers");
+    private static final byte[] KEY_X = ascii("x");
+    private static final byte[] KEY_Y = ascii("y");
+    private static final byte[] KEY_END_X = ascii("endX");
+    private static final byte[] KEY_END_Y = ascii("endY");
+    private static final byte[] KEY_DURATION = ascii("duration");
+    private static final byte[] KEY_TIMESTAMP = ascii("timestamp");
+    private static final byte[] KEY_SEQ = ascii("seq");
+    private static final byte[] KEY_NORMALIZED = ascii("normalized");
+    private static final byte[] LITERAL_TRUE = ascii("true");
+    private static final byte[] KEY_ID = ascii("id");
+
+    private static final String[] TYPES = {
+        ControlEvent.TYPE_CLICK, ControlEvent.TYPE_LONG_CLICK, ControlEvent.TYPE_SWIPE,
+        ControlEvent.TYPE_DOWN, ControlEvent.TYPE_MOVE, ControlEvent.TYPE_UP,
+        ControlEvent.TYPE_CANCEL, ControlEvent.TYPE_TOUCH,
+    };
+    private static final byte[][] TYPE_BYTES = new byte[TYPES.length][];
+
+    static {
+        for (int i = 0; i < TYPES.length; i++) {
+            TYPE_BYTES[i] = ascii(TYPES[i]);
+        }
+    }
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+        1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18,
+    };
+
+    private ByteBuffer data;
+    private int pos;
+    private int end;
+    // Result of the last parseNumber()
+    private double numberValue;
+    private long longValue;
+    private boolean isIntegral;
+    // Bounds of the last string or key
+    private int tokenStart;
+    private int tokenEnd;
+
+    public boolean parse(ByteBuffer data, ControlEvent out) {
+        this.data = data;
+        this.pos = data.position();
+        this.end = data.limit();
+        try {
+            return parseEvent(out);
+        } finally {
+            this.data = null;
+        }
+    }
+
+    private boolean parseEvent(ControlEvent out) {
+        out.reset();
+        if (!expect('{')) {
+            return false;
+        }
+        if (peek() == '}') {
+            return false;
+        }
+
+        while (true) {
+            if (!readString()) {
+                return false;
+            }
+            int keyStart = tokenStart;
+            int keyEnd = tokenEnd;
+            if (!expect(':')) {
+                return false;
+            }
+
+            if (keyEquals(keyStart, keyEnd, KEY_TYPE)) {
+                if (!readString()) {
+                    return false;
+                }
+                out.type = matchType(tokenStart, tokenEnd);
+                if (out.type == null) {
+                    return false;
+                }
+            } else if (keyEquals(keyStart, keyEnd, KEY_NORMALIZED)) {
+                int literalStart = skipWhitespace();
+                if (!skipLiteral()) {
+                    return false;
+                }
+                out.normalized = keyEquals(literalStart, pos, LITERAL_TRUE);
+            } else if (keyEquals(keyStart, keyEnd, KEY_POINTERS)) {
+                if (!parsePointers(out)) {
+                    return false;
+                }
+            } else if (isNumberKey(keyStart, keyEnd)) {
+                if (peek() == 'n') {
+                    if (!skipLiteral()) {
+                        return false;
+                    }
+                } else {
+                    if (!parseNumber()) {
+                        return false;
+                    }
+                    assignNumber(out, keyStart, keyEnd);
+                }
+            } else if (!skipValue()) {
+                return false;
+            }
+
+            byte next = next();
+            if (next == '}') {
+                return out.type != null;
+            }
+            if (next != ',') {
+                return false;
+            }
+        }
+    }
+
+    private boolean isNumberKey(int keyStart, int keyEnd) {
+        return keyEquals(keyStart, keyEnd, KEY_X) || keyEquals(keyStart, keyEnd, KEY_Y)
+                || keyEquals(keyStart, keyEnd, KEY_POINTER_ID) || keyEquals(keyStart, keyEnd, KEY_ACTION)
+                || keyEquals(keyStart, keyEnd, KEY_END_X) || keyEquals(keyStart, keyEnd, KEY_END_Y)
+                || keyEquals(keyStart, keyEnd, KEY_DURATION) || keyEquals(keyStart, keyEnd, KEY_TIMESTAMP)
+                || keyEquals(keyStart, keyEnd, KEY_SEQ);
+    }
+
+    private void assignNumber(ControlEvent out, int keyStart, int keyEnd) {
+        if (keyEquals(keyStart, keyEnd, KEY_X)) {
+            out.x = numberValue;
+        } else if (keyEquals(keyStart, keyEnd, KEY_Y)) {
+            out.y = numberValue;
+        } else if (keyEquals(keyStart, keyEnd, KEY_POINTER_ID)) {
+            out.pointerId = (int) numberValue;
+        } else if (keyEquals(keyStart, keyEnd, KEY_ACTION)) {
+            out.action = (int) numberValue;
+        } else if (keyEquals(keyStart, keyEnd, KEY_TIMESTAMP)) {
+            out.timestamp = isIntegral ? longValue : (long) numberValue;
+        } else if (keyEquals(keyStart, keyEnd, KEY_SEQ)) {
+            out.seq = (isIntegral ? longValue : (long) numberValue) & 0xffffffffL;
+        } else if (keyEquals(keyStart, keyEnd, KEY_END_X)) {
+            // Swipes are rare; boxing here keeps the Gson-compatible nullable fields
+            out.endX = numberValue;
+        } else if (keyEquals(keyStart, keyEnd, KEY_END_Y)) {
+            out.endY = numberValue;
+        } else if (keyEquals(keyStart, keyEnd, KEY_DURATION)) {
+            out.duration = (int) numberValue;
+        }
+    }
+
+    private boolean parsePointers(ControlEvent out) {
+        if (peek() == 'n') {
+            return skipLiteral();
+        }
+        if (!expect('[')) {
+            return false;
+        }
+        out.pointerCount = 0;
+        if (peek() == ']') {
+            pos = skipWhitespace() + 1;
+            return true;
+        }
+
+        while (true) {
+            if (out.pointerCount == ControlEvent.MAX_POINTERS) {
+                return false;
+            }
+            ControlEvent.Pointer pointer = out.obtainPointer(out.pointerCount);
+            if (!parsePointer(pointer)) {
+                return false;
+            }
+            out.pointerCount++;
+
+            byte next = next();
+            if (next == ']') {
+                return true;
+            }
+            if (next != ',') {
+                return false;
+            }
+        }
+    }
+
+    private boolean parsePointer(ControlEvent.Pointer pointer) {
+        pointer.id = 0;
+        pointer.x = 0;
+        pointer.y = 0;
+        if (!expect('{')) {
+            return false;
+        }
+        while (true) {
+            if (!readString()) {
+                return false;
+            }
+            int keyStart = tokenStart;
+            int keyEnd = tokenEnd;
+            if (!expect(':')) {
+                return false;
+            }
+
+            boolean known = keyEquals(keyStart, keyEnd, KEY_ID)
+                    || keyEquals(keyStart, keyEnd, KEY_X) || keyEquals(keyStart, keyEnd, KEY_Y);
+            if (known) {
+                if (!parseNumber()) {
+                    return false;
+                }
+                if (keyEquals(keyStart, keyEnd, KEY_ID)) {
+                    pointer.id = (int) numberValue;
+                } else if (keyEquals(keyStart, keyEnd, KEY_X)) {
+                    pointer.x = numberValue;
+                } else {
+                    pointer.y = numberValue;
+                }
+            } else if (!skipValue()) {
+                return false;
+            }
+
+            byte next = next();
+            if (next == '}') {
+                return true;
+            }
+            if (next != ',') {
+                return false;
+            }
+        }
+    }
+
+    // Reads a string without escapes and records its bounds; escaped strings are not supported
+    private boolean readString() {
+        if (!expect('"')) {
+            return false;
+        }
+        tokenStart = pos;
+        while (pos < end) {
+            byte b = data.get(pos);
+            if (b == '"') {
+                tokenEnd = pos;
+                pos++;
+                return true;
+            }
+            if (b == '\\') {
+                return false;
+            }
+            pos++;
+        }
+        return false;
+    }
+
+    private boolean parseNumber() {
+        pos = skipWhitespace();
+        boolean negative = false;
+        if (pos < end && data.get(pos) == '-') {
+            negative = true;
+            pos++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean any = false;
+        while (pos < end) {
+            byte b = data.get(pos);
+            if (b < '0' || b > '9') {
+                break;
+            }
+            if (digits < 18) {
+                mantissa = mantissa * 10 + (b - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+            } else {
+                scale++;
+            }
+            any = true;
+            pos++;
+        }
+
+        isIntegral = true;
+        if (pos < end && data.get(pos) == '.') {
+            isIntegral = false;
+            pos++;
+            while (pos < end) {
+                byte b = data.get(pos);
+                if (b < '0' || b > '9') {
+                    break;
+                }
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                    scale--;
+                }
+                any = true;
+                pos++;
+            }
+        }
+        if (!any) {
+            return false;
+        }
+
+        if (pos < end && (data.get(pos) == 'e' || data.get(pos) == 'E')) {
+            isIntegral = false;
+            pos++;
+            boolean negativeExponent = false;
+            if (pos < end && (data.get(pos) == '+' || data.get(pos) == '-')) {
+                negativeExponent = data.get(pos) == '-';
+                pos++;
+            }
+            int exponent = 0;
+            boolean anyExponent = false;
+            while (pos < end) {
+                byte b = data.get(pos);
+                if (b < '0' || b > '9') {
+                    break;
+                }
+                exponent = Math.min(exponent * 10 + (b - '0'), 1000);
+                anyExponent = true;
+                pos++;
+            }
+            if (!anyExponent) {
+                return false;
+            }
+            scale += negativeExponent ? -exponent : exponent;
+        }
+
+        double value = mantissa;
+        if (scale > 0) {
+            value = scale < POWERS_OF_TEN.length ? value * POWERS_OF_TEN[scale] : value * Math.pow(10, scale);
+        } else if (scale < 0) {
+            value = -scale < POWERS_OF_TEN.length ? value / POWERS_OF_TEN[-scale] : value / Math.pow(10, -scale);
+        }
+        numberValue = negative ? -value : value;
+        longValue = negative ? -mantissa : mantissa;
+        if (scale != 0) {
+            isIntegral = false;
+        }
+        return true;
+    }
+
+    private boolean skipValue() {
+        byte b = peek();
+        switch (b) {
+            case '"':
+                return readString();
+            case '{':
+            case '[':
+                return skipNested();
+            case 't':
+            case 'f':
+            case 'n':
+                return skipLiteral();
+            default:
+                return parseNumber();
+        }
+    }
+
+    private boolean skipNested() {
+        int depth = 0;
+        pos = skipWhitespace();
+        while (pos < end) {
+            byte b = data.get(pos);
+            if (b == '"') {
+                if (!readString()) {
+                    return false;
+                }
+                continue;
+            }
+            pos++;
+            if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                depth--;
+                if (depth == 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean skipLiteral() {
+        pos = skipWhitespace();
+        int start = pos;
+        while (pos < end) {
+            byte b = data.get(pos);
+            if (b < 'a' || b > 'z') {
+                break;
+            }
+            pos++;
+        }
+        return pos > start;
+    }
+
+    private String matchType(int start, int stop) {
+        for (int i = 0; i < TYPE_BYTES.length; i++) {
+            if (keyEquals(start, stop, TYPE_BYTES[i])) {
+                return TYPES[i];
+            }
+        }
+        return null;
+    }
+
+    private boolean keyEquals(int start, int stop, byte[] key) {
+        if (stop - start != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (data.get(start + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean expect(char c) {
+        pos = skipWhitespace();
+        if (pos < end && data.get(pos) == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private byte peek() {
+        pos = skipWhitespace();
+        return pos < end ? data.get(pos) : 0;
+    }
+
+    private byte next() {
+        pos = skipWhitespace();
+        return pos < end ? data.get(pos++) : 0;
+    }
+
+    private int skipWhitespace() {
+        int p = pos;
+        while (p < end) {
+            byte b = data.get(p);
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                break;
+            }
+            p++;
+        }
+        return p;
+    }
+
+    private static byte[] ascii(String s) {
+        byte[] bytes = new byte[s.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) s.charAt(i);
+        }
+        return bytes;
+    }
+}
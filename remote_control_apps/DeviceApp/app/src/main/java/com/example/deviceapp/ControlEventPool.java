@@ -0,0 +1,61 @@
+package com.example.deviceapp;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded pool of ControlEvent objects for the DataChannel receive path, so decoding an
+ * event does not allocate once the pool is warm. Slots are claimed with compare-and-set,
+ * so events may be acquired on one thread and released on another without locking.
+ * When the pool runs dry a fresh event is allocated and counted as a miss.
+ */
+public class ControlEventPool {
+    public static final int DEFAULT_CAPACITY = 32;
+
+    private final AtomicReferenceArray<ControlEvent> slots;
+    private final AtomicLong misses = new AtomicLong();
+
+    public ControlEventPool() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ControlEventPool(int capacity) {
+        slots = new AtomicReferenceArray<>(capacity);
+        // Pre-fill so the first events after connecting don't allocate either
+        for (int i = 0; i < capacity; i++) {
+            ControlEvent event = new ControlEvent();
+            event.obtainPointer(0);
+            slots.set(i, event);
+        }
+    }
+
+    /** Returns a reset event; hand it back with release() when done. */
+    public ControlEvent acquire() {
+        for (int i = 0; i < slots.length(); i++) {
+            ControlEvent event = slots.get(i);
+            if (event != null && slots.compareAndSet(i, event, null)) {
+                event.reset();
+                return event;
+            }
+        }
+        misses.incrementAndGet();
+        return new ControlEvent();
+    }
+
+    /** Return an event to the pool. The caller must not touch it afterwards. */
+    public void release(ControlEvent event) {
+        if (event == null) {
+            return;
+        }
+        for (int i = 0; i < slots.length(); i++) {
+            if (slots.get(i) == null && slots.compareAndSet(i, null, event)) {
+                return;
+            }
+        }
+        // Pool is full (an event allocated on a miss), let the GC have it
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+}
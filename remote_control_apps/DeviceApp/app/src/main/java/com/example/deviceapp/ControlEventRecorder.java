@@ -0,0 +1,198 @@
+package com.example.deviceapp;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import com.google.gson.Gson;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends the decoded control-event stream of one connection to a compact binary log, for
+ * replaying real sessions through ControlEventReplayer.
+ *
+ * <pre>
+ * header:  u32 magic "CEVL", u8 version (1), 3 bytes reserved, u64 start wall-clock ms
+ *          (also the base for binary timestamp deltas)
+ * record:  u8 kind, u32 us since the previous record, u16 length, payload
+ *          kind 1: ControlEventCodec binary (coordinates already in device pixels)
+ *          kind 2: UTF-8 JSON, for events without a binary form (text, keys)
+ * </pre>
+ *
+ * Events are recorded after coordinate mapping, so a recording replays on the same display
+ * without the controller's geometry. record() only copies into a memory buffer; full buffers
+ * are written out on a background thread so the DataChannel thread never touches the disk.
+ */
+public class ControlEventRecorder {
+    private static final String TAG = "ControlEventRecorder";
+
+    public static final int MAGIC = 0x4345564c; // "CEVL"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final int RECORD_HEADER_SIZE = 7;
+    public static final int KIND_BINARY = 1;
+    public static final int KIND_JSON = 2;
+    public static final String FILE_EXTENSION = ".cev";
+
+    private static final int BUFFER_SIZE = 32 * 1024;
+    // Stop on its own rather than fill the disk if nobody stops it
+    private static final long MAX_RECORDING_BYTES = 64L * 1024 * 1024;
+
+    private final ControlEventCodec codec = new ControlEventCodec();
+    private final Gson gson = new Gson();
+
+    // All state below is guarded by "this"
+    private volatile boolean recording;
+    private File file;
+    private FileChannel channel;
+    private HandlerThread writerThread;
+    private Handler writerHandler;
+    private ByteBuffer buffer;
+    // Returned by the writer after a flush, reused for the next one
+    private ByteBuffer spare;
+    private long lastRecordNs;
+    private long eventCount;
+    private long bytesWritten;
+
+    public boolean isRecording() {
+        return recording;
+    }
+
+    /** Start a new recording, replacing any file of the same name. */
+    public synchronized void start(File file) throws IOException {
+        if (recording) {
+            stop();
+        }
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        channel = new FileOutputStream(file).getChannel();
+        this.file = file;
+        writerThread = new HandlerThread("ControlEventRecorder");
+        writerThread.start();
+        writerHandler = new Handler(writerThread.getLooper());
+        buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        eventCount = 0;
+        bytesWritten = 0;
+
+        // The start time doubles as the codec's timestamp base
+        long startWallMs = System.currentTimeMillis();
+        codec.setBaseTimestamp(startWallMs);
+        buffer.putInt(MAGIC);
+        buffer.put((byte) VERSION);
+        buffer.put((byte) 0).put((byte) 0).put((byte) 0);
+        buffer.putLong(startWallMs);
+        lastRecordNs = System.nanoTime();
+        recording = true;
+        Log.d(TAG, "Recording control events to " + file);
+    }
+
+    /** Append event; cheap enough for the DataChannel thread. The event is not retained. */
+    public synchronized void record(ControlEvent event) {
+        if (!recording) {
+            return;
+        }
+        long nowNs = event.receiveTimeNs != 0 ? event.receiveTimeNs : System.nanoTime();
+        long deltaUs = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nowNs - lastRecordNs));
+        lastRecordNs = Math.max(lastRecordNs, nowNs);
+
+        if (buffer.remaining() < RECORD_HEADER_SIZE + ControlEventCodec.MAX_MESSAGE_SIZE) {
+            flushLocked();
+        }
+        int start = buffer.position();
+        buffer.position(start + RECORD_HEADER_SIZE);
+        int kind = KIND_BINARY;
+        if (codec.encode(event, buffer)) {
+            // Coordinates were mapped to device pixels before we saw them
+            buffer.put(start + RECORD_HEADER_SIZE + 2,
+                    (byte) (buffer.get(start + RECORD_HEADER_SIZE + 2) & ~ControlEventCodec.FLAG_NORMALIZED));
+        } else {
+            byte[] json = gson.toJson(event).getBytes(StandardCharsets.UTF_8);
+            if (json.length > BUFFER_SIZE - RECORD_HEADER_SIZE) {
+                buffer.position(start);
+                Log.w(TAG, "Skipping oversized " + event.type + " event");
+                return;
+            }
+            if (buffer.remaining() < json.length) {
+                buffer.position(start);
+                flushLocked();
+                start = buffer.position();
+                buffer.position(start + RECORD_HEADER_SIZE);
+            }
+            buffer.put(json);
+            kind = KIND_JSON;
+        }
+        int length = buffer.position() - start - RECORD_HEADER_SIZE;
+        buffer.put(start, (byte) kind);
+        buffer.putInt(start + 1, (int) Math.min(deltaUs, 0xffffffffL));
+        buffer.putShort(start + 5, (short) length);
+        eventCount++;
+
+        if (bytesWritten + buffer.position() > MAX_RECORDING_BYTES) {
+            Log.w(TAG, "Recording reached " + MAX_RECORDING_BYTES + " bytes, stopping");
+            stop();
+        }
+    }
+
+    /** Finish the recording and return its file, or null if none was running. */
+    public synchronized File stop() {
+        if (!recording) {
+            return null;
+        }
+        recording = false;
+        flushLocked();
+        final FileChannel closing = channel;
+        writerHandler.post(() -> {
+            try {
+                closing.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Error closing recording", e);
+            }
+        });
+        writerThread.quitSafely();
+        channel = null;
+        writerThread = null;
+        writerHandler = null;
+        buffer = null;
+        spare = null;
+        Log.d(TAG, "Recorded " + eventCount + " events, " + bytesWritten + " bytes to " + file);
+        return file;
+    }
+
+    public synchronized long getEventCount() {
+        return eventCount;
+    }
+
+    private void flushLocked() {
+        if (buffer.position() == 0) {
+            return;
+        }
+        final ByteBuffer full = buffer;
+        final FileChannel target = channel;
+        bytesWritten += full.position();
+        buffer = spare != null ? spare : ByteBuffer.allocate(BUFFER_SIZE);
+        spare = null;
+        full.flip();
+        writerHandler.post(() -> {
+            try {
+                while (full.hasRemaining()) {
+                    target.write(full);
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Error writing recording", e);
+            }
+            full.clear();
+            synchronized (ControlEventRecorder.this) {
+                spare = full;
+            }
+        });
+    }
+}
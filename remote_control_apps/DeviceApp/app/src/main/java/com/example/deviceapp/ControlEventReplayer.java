@@ -0,0 +1,223 @@
+package com.example.deviceapp;
+
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays a ControlEventRecorder log back through a TouchControlService, either with the
+ * recorded spacing (real time) or back to back (as fast as possible). Every injection is
+ * timed into a LatencyHistogram; in real-time mode the lag behind the recorded schedule is
+ * kept as well, so a slow injector shows up as lag rather than as a shorter replay.
+ *
+ * Events go straight to TouchControlService, bypassing the dispatcher and the coalescer, so
+ * every recorded move is injected on its own and the numbers describe the injector alone.
+ */
+public class ControlEventReplayer {
+    private static final String TAG = "ControlEventReplayer";
+
+    public static final String MSG_REPLAY_RESULT = "replay_result";
+
+    public interface Listener {
+        void onReplayFinished(Result result);
+    }
+
+    public static final class Result {
+        public final String name;
+        public final boolean realtime;
+        public long events;
+        public long skipped;
+        public long durationNs;
+        public boolean completed;
+        public String error;
+        public final LatencyHistogram injectUs = new LatencyHistogram();
+        public final LatencyHistogram lagUs = new LatencyHistogram();
+
+        Result(String name, boolean realtime) {
+            this.name = name;
+            this.realtime = realtime;
+        }
+
+        public double getEventsPerSecond() {
+            return durationNs > 0 ? events * 1e9 / durationNs : 0;
+        }
+
+        public JsonObject toJson() {
+            JsonObject json = new JsonObject();
+            json.addProperty("type", MSG_REPLAY_RESULT);
+            json.addProperty("name", name);
+            json.addProperty("mode", realtime ? "realtime" : "fast");
+            json.addProperty("completed", completed);
+            if (error != null) {
+                json.addProperty("error", error);
+            }
+            json.addProperty("events", events);
+            json.addProperty("skipped", skipped);
+            json.addProperty("durationMs", TimeUnit.NANOSECONDS.toMillis(durationNs));
+            json.addProperty("eventsPerSecond", Math.round(getEventsPerSecond()));
+            json.add("injectUs", summarize(injectUs));
+            if (realtime) {
+                json.add("lagUs", summarize(lagUs));
+            }
+            return json;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + events + " events in " + TimeUnit.NANOSECONDS.toMillis(durationNs) + " ms ("
+                    + Math.round(getEventsPerSecond()) + "/s), inject p50/p99 us: "
+                    + injectUs.getPercentile(50) + "/" + injectUs.getPercentile(99)
+                    + (realtime ? ", lag p99 us: " + lagUs.getPercentile(99) : "");
+        }
+
+        private static JsonObject summarize(LatencyHistogram histogram) {
+            JsonObject summary = new JsonObject();
+            summary.addProperty("meanUs", histogram.getMean());
+            summary.addProperty("p50Us", histogram.getPercentile(50));
+            summary.addProperty("p90Us", histogram.getPercentile(90));
+            summary.addProperty("p99Us", histogram.getPercentile(99));
+            summary.addProperty("maxUs", histogram.getMax());
+            return summary;
+        }
+    }
+
+    private final TouchControlService target;
+    private final ControlEventCodec codec = new ControlEventCodec();
+    private final Gson gson = new Gson();
+    private final ControlEvent scratchEvent = new ControlEvent();
+    private byte[] payload = new byte[ControlEventCodec.MAX_MESSAGE_SIZE];
+    private Thread replayThread;
+    private volatile boolean cancelled;
+
+    public ControlEventReplayer(TouchControlService target) {
+        this.target = target;
+    }
+
+    /** Replay file on a background thread; listener gets the result there. Fails if one is running. */
+    public synchronized boolean start(File file, boolean realtime, Listener listener) {
+        if (replayThread != null && replayThread.isAlive()) {
+            return false;
+        }
+        cancelled = false;
+        replayThread = new Thread(() -> {
+            Result result = replay(file, realtime);
+            Log.d(TAG, "Replay finished: " + result);
+            if (listener != null) {
+                listener.onReplayFinished(result);
+            }
+        }, "ControlEventReplayer");
+        replayThread.start();
+        return true;
+    }
+
+    public synchronized void stop() {
+        cancelled = true;
+        if (replayThread != null) {
+            LockSupport.unpark(replayThread);
+        }
+    }
+
+    /** Replay file on the calling thread. */
+    public Result replay(File file, boolean realtime) {
+        Result result = new Result(file.getName(), realtime);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != ControlEventRecorder.MAGIC) {
+                throw new IOException("Not a control event recording");
+            }
+            int version = in.readUnsignedByte();
+            if (version != ControlEventRecorder.VERSION) {
+                throw new IOException("Unsupported recording version " + version);
+            }
+            in.skipBytes(3);
+            codec.setBaseTimestamp(in.readLong());
+            run(in, result);
+            result.completed = !cancelled;
+        } catch (IOException e) {
+            Log.e(TAG, "Error replaying " + file, e);
+            result.error = e.getMessage();
+        } finally {
+            // Don't leave a finger down if the recording stopped mid-gesture
+            target.cancelGestures();
+        }
+        return result;
+    }
+
+    private void run(DataInputStream in, Result result) throws IOException {
+        long startNs = System.nanoTime();
+        long scheduleNs = 0;
+        while (!cancelled) {
+            int kind = in.read();
+            if (kind < 0) {
+                break;
+            }
+            long deltaUs;
+            int length;
+            try {
+                deltaUs = in.readInt() & 0xffffffffL;
+                length = in.readUnsignedShort();
+                if (payload.length < length) {
+                    payload = new byte[length];
+                }
+                in.readFully(payload, 0, length);
+            } catch (EOFException e) {
+                // The recorder was killed mid-write; everything before it is still good
+                Log.w(TAG, "Recording ends with a truncated record");
+                break;
+            }
+
+            scheduleNs += TimeUnit.MICROSECONDS.toNanos(deltaUs);
+            ControlEvent event = decode(kind, length);
+            if (event == null) {
+                result.skipped++;
+                continue;
+            }
+
+            if (result.realtime) {
+                long dueNs = startNs + scheduleNs;
+                long waitNs;
+                while ((waitNs = dueNs - System.nanoTime()) > 0 && !cancelled) {
+                    LockSupport.parkNanos(this, waitNs);
+                }
+                result.lagUs.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - dueNs));
+            }
+
+            long injectStartNs = System.nanoTime();
+            target.handleControlEvent(event);
+            result.injectUs.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - injectStartNs));
+            result.events++;
+        }
+        result.durationNs = System.nanoTime() - startNs;
+    }
+
+    private ControlEvent decode(int kind, int length) {
+        try {
+            if (kind == ControlEventRecorder.KIND_BINARY) {
+                scratchEvent.reset();
+                return codec.decode(ByteBuffer.wrap(payload, 0, length), scratchEvent) ? scratchEvent : null;
+            }
+            if (kind == ControlEventRecorder.KIND_JSON) {
+                ControlEvent event = gson.fromJson(new String(payload, 0, length, StandardCharsets.UTF_8),
+                        ControlEvent.class);
+                if (event != null) {
+                    event.pointerCount = event.pointers != null ? event.pointers.length : 0;
+                }
+                return event;
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Skipping undecodable record", e);
+        }
+        return null;
+    }
+}
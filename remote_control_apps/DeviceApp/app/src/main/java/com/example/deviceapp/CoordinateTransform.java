@@ -0,0 +1,163 @@
+package com.example.deviceapp;
+
+import android.util.Log;
+
+/**
+ * Maps controller coordinates to device (logical display) pixels.
+ *
+ * The mirrored display is drawn upright into the fixed-size capture surface, so after a
+ * rotation the content is letterboxed (or pillarboxed) rather than turned. A point in the
+ * video therefore maps to the display with one scale and offset per axis:
+ *
+ *   video px * encoder scale = capture px,  (capture px - bar) / fit scale = display px
+ *
+ * Display geometry is process-wide and published by ScreenCaptureService whenever the
+ * display changes; each connection keeps its own encoder scale. The matrix is cached and
+ * only recomputed when either changes, so mapping an event is a few multiplies.
+ */
+public class CoordinateTransform {
+    private static final String TAG = "CoordinateTransform";
+
+    // Coordinates are already device pixels (legacy controllers)
+    public static final int SPACE_DEVICE = 0;
+    // 0..1 across the video frame
+    public static final int SPACE_NORMALIZED = 1;
+    // Pixels of the video as the controller decodes it, i.e. after encoder downscaling
+    public static final int SPACE_VIDEO = 2;
+
+    // Geometry published by ScreenCaptureService, guarded by the class
+    private static int captureWidth;
+    private static int captureHeight;
+    private static int displayWidth;
+    private static int displayHeight;
+    private static volatile int geometryVersion;
+
+    private double encoderScale = 1.0;
+    private int coordinateSpace = SPACE_DEVICE;
+
+    // Cached matrix: display = in * scale + offset, with scales for normalized and video input
+    private int cachedVersion = -1;
+    private boolean cachedValid;
+    private double scaleX;
+    private double scaleY;
+    private double videoScaleX;
+    private double videoScaleY;
+    private double offsetX;
+    private double offsetY;
+    // Touches on the bars are clamped to the display edge
+    private double maxX;
+    private double maxY;
+
+    public static void updateGeometry(int captureWidth, int captureHeight, int displayWidth, int displayHeight) {
+        synchronized (CoordinateTransform.class) {
+            if (CoordinateTransform.captureWidth == captureWidth && CoordinateTransform.captureHeight == captureHeight
+                    && CoordinateTransform.displayWidth == displayWidth
+                    && CoordinateTransform.displayHeight == displayHeight) {
+                return;
+            }
+            CoordinateTransform.captureWidth = captureWidth;
+            CoordinateTransform.captureHeight = captureHeight;
+            CoordinateTransform.displayWidth = displayWidth;
+            CoordinateTransform.displayHeight = displayHeight;
+            geometryVersion++;
+        }
+        Log.d(TAG, "Geometry: capture " + captureWidth + "x" + captureHeight
+                + ", display " + displayWidth + "x" + displayHeight);
+    }
+
+    /** scaleResolutionDownBy of the stream the controller is watching. */
+    public synchronized void setEncoderScale(double encoderScale) {
+        if (encoderScale > 0 && encoderScale != this.encoderScale) {
+            this.encoderScale = encoderScale;
+            cachedVersion = -1;
+        }
+    }
+
+    /** Default space for events that don't flag themselves as normalized. */
+    public synchronized void setCoordinateSpace(int coordinateSpace) {
+        this.coordinateSpace = coordinateSpace;
+    }
+
+    public static int parseSpace(String name) {
+        if ("normalized".equals(name)) {
+            return SPACE_NORMALIZED;
+        }
+        if ("video".equals(name)) {
+            return SPACE_VIDEO;
+        }
+        return SPACE_DEVICE;
+    }
+
+    /** Rewrite every coordinate of event in place to device pixels. */
+    public synchronized void map(ControlEvent event) {
+        int space = event.normalized ? SPACE_NORMALIZED : coordinateSpace;
+        if (space == SPACE_DEVICE) {
+            return;
+        }
+        if (event.isKeyInput()) {
+            // Keyboard events carry no position; negative sentinel coordinates name a key
+            return;
+        }
+        if (geometryVersion != cachedVersion) {
+            recompute();
+        }
+        if (!cachedValid) {
+            return;
+        }
+
+        double sx = space == SPACE_VIDEO ? videoScaleX : scaleX;
+        double sy = space == SPACE_VIDEO ? videoScaleY : scaleY;
+
+        event.x = clamp(event.x * sx + offsetX, maxX);
+        event.y = clamp(event.y * sy + offsetY, maxY);
+        for (int i = 0; i < event.pointerCount; i++) {
+            ControlEvent.Pointer pointer = event.pointers[i];
+            pointer.x = clamp(pointer.x * sx + offsetX, maxX);
+            pointer.y = clamp(pointer.y * sy + offsetY, maxY);
+        }
+        if (event.endX != null && event.endY != null) {
+            // Swipes only; boxing is acceptable here
+            event.endX = clamp(event.endX * sx + offsetX, maxX);
+            event.endY = clamp(event.endY * sy + offsetY, maxY);
+        }
+    }
+
+    private void recompute() {
+        int capW;
+        int capH;
+        int dispW;
+        int dispH;
+        synchronized (CoordinateTransform.class) {
+            cachedVersion = geometryVersion;
+            capW = captureWidth;
+            capH = captureHeight;
+            dispW = displayWidth;
+            dispH = displayHeight;
+        }
+        cachedValid = capW > 0 && capH > 0 && dispW > 0 && dispH > 0;
+        if (!cachedValid) {
+            Log.w(TAG, "Display geometry not known yet, coordinates passed through");
+            return;
+        }
+        // The display is fitted into the capture surface keeping its aspect ratio
+        double fit = Math.min((double) capW / dispW, (double) capH / dispH);
+        double barX = (capW - dispW * fit) / 2.0;
+        double barY = (capH - dispH * fit) / 2.0;
+
+        // n * capW -> capture px -> display px
+        scaleX = capW / fit;
+        offsetX = -barX / fit;
+        scaleY = capH / fit;
+        offsetY = -barY / fit;
+        // Video px * encoder scale = capture px
+        videoScaleX = encoderScale / fit;
+        videoScaleY = encoderScale / fit;
+        maxX = dispW - 1;
+        maxY = dispH - 1;
+        Log.d(TAG, "Transform: scale " + scaleX + "x" + scaleY + ", offset " + offsetX + "," + offsetY);
+    }
+
+    private static double clamp(double value, double max) {
+        return value < 0 ? 0 : (value > max ? max : value);
+    }
+}
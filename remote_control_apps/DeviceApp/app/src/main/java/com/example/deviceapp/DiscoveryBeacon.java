@@ -0,0 +1,188 @@
+package com.example.deviceapp;
+
+import android.content.Context;
+import android.net.wifi.WifiManager;
+import android.util.Log;
+
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Answers LAN discovery queries over UDP so controllers no longer probe every address with
+ * a WebSocket connection. The device listens on DISCOVERY_PORT for datagrams starting with
+ * QUERY, whether sent to the multicast group or to the subnet broadcast address. It replies
+ * to the sender with a small JSON datagram, and also announces that datagram to the group
+ * every ANNOUNCE_INTERVAL_MS.
+ *
+ * The reply is serialized once and rebuilt only when the load changes, so answering a query
+ * costs one send.
+ */
+public class DiscoveryBeacon {
+    private static final String TAG = "DiscoveryBeacon";
+
+    public static final int DISCOVERY_PORT = 4322;
+    // Administratively scoped, stays on the local network
+    public static final String MULTICAST_GROUP = "239.255.43.21";
+    public static final String QUERY = "WRTC_DISCOVER";
+    public static final String MSG_DEVICE_ANNOUNCE = "device_announce";
+
+    private static final long ANNOUNCE_INTERVAL_MS = 10000;
+    private static final int MAX_DATAGRAM = 512;
+
+    private final Context context;
+    private final int signalingPort;
+    private final String deviceName;
+    private final String deviceId;
+    private WifiManager.MulticastLock multicastLock;
+    private MulticastSocket socket;
+    private Thread thread;
+    private volatile boolean running;
+
+    // Guarded by "this"
+    private int clients;
+    private int sessions;
+    private byte[] reply;
+    private long queries;
+
+    public DiscoveryBeacon(Context context, int signalingPort) {
+        this.context = context.getApplicationContext();
+        this.signalingPort = signalingPort;
+        this.deviceName = android.os.Build.MODEL;
+        this.deviceId = android.os.Build.SERIAL;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        try {
+            socket = new MulticastSocket(null);
+            socket.setReuseAddress(true);
+            socket.bind(new InetSocketAddress(DISCOVERY_PORT));
+            socket.setBroadcast(true);
+            socket.setSoTimeout((int) ANNOUNCE_INTERVAL_MS);
+            socket.joinGroup(InetAddress.getByName(MULTICAST_GROUP));
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to open discovery socket", e);
+            if (socket != null) {
+                socket.close();
+                socket = null;
+            }
+            return;
+        }
+        // Most Wi-Fi drivers drop multicast to save power unless a lock is held
+        WifiManager wifiManager = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
+        if (wifiManager != null) {
+            multicastLock = wifiManager.createMulticastLock(TAG);
+            multicastLock.setReferenceCounted(false);
+            multicastLock.acquire();
+        }
+        running = true;
+        final MulticastSocket runSocket = socket;
+        thread = new Thread(() -> run(runSocket), TAG);
+        thread.start();
+        Log.d(TAG, "Discovery beacon on UDP " + DISCOVERY_PORT + ", group " + MULTICAST_GROUP);
+    }
+
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        // Unblocks receive()
+        socket.close();
+        socket = null;
+        thread = null;
+        if (multicastLock != null && multicastLock.isHeld()) {
+            multicastLock.release();
+        }
+        multicastLock = null;
+        Log.d(TAG, "Discovery beacon stopped after " + queries + " queries");
+    }
+
+    /** Report the current load; the cached reply is rebuilt only if it changed. */
+    public synchronized void updateLoad(int clients, int sessions) {
+        if (clients != this.clients || sessions != this.sessions) {
+            this.clients = clients;
+            this.sessions = sessions;
+            reply = null;
+        }
+    }
+
+    private synchronized byte[] getReply() {
+        if (reply == null) {
+            JsonObject info = new JsonObject();
+            info.addProperty("type", MSG_DEVICE_ANNOUNCE);
+            info.addProperty("device_name", deviceName);
+            info.addProperty("device_id", deviceId);
+            info.addProperty("port", signalingPort);
+            info.addProperty("clients", clients);
+            info.addProperty("sessions", sessions);
+            reply = info.toString().getBytes(StandardCharsets.UTF_8);
+        }
+        return reply;
+    }
+
+    private void run(MulticastSocket socket) {
+        byte[] query = QUERY.getBytes(StandardCharsets.US_ASCII);
+        DatagramPacket packet = new DatagramPacket(new byte[MAX_DATAGRAM], MAX_DATAGRAM);
+        long nextAnnounceMs = 0;
+        while (running) {
+            try {
+                long nowMs = System.currentTimeMillis();
+                if (nowMs >= nextAnnounceMs) {
+                    byte[] announce = getReply();
+                    socket.send(new DatagramPacket(announce, announce.length,
+                            InetAddress.getByName(MULTICAST_GROUP), DISCOVERY_PORT));
+                    nextAnnounceMs = nowMs + ANNOUNCE_INTERVAL_MS;
+                }
+                packet.setLength(MAX_DATAGRAM);
+                try {
+                    socket.receive(packet);
+                } catch (SocketTimeoutException e) {
+                    continue;
+                }
+                if (!startsWith(packet, query)) {
+                    // Our own announcements loop back, and other traffic may share the port
+                    continue;
+                }
+                byte[] response = getReply();
+                socket.send(new DatagramPacket(response, response.length, packet.getSocketAddress()));
+                synchronized (this) {
+                    queries++;
+                }
+            } catch (SocketException e) {
+                if (running) {
+                    Log.e(TAG, "Discovery socket error", e);
+                }
+                break;
+            } catch (IOException e) {
+                // E.g. no route while Wi-Fi reconnects; try again next round
+                Log.w(TAG, "Discovery send failed: " + e.getMessage());
+                nextAnnounceMs = System.currentTimeMillis() + ANNOUNCE_INTERVAL_MS;
+            }
+        }
+    }
+
+    private static boolean startsWith(DatagramPacket packet, byte[] prefix) {
+        if (packet.getLength() < prefix.length) {
+            return false;
+        }
+        byte[] data = packet.getData();
+        int offset = packet.getOffset();
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.deviceapp;
+
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.MotionEvent;
+
+import java.util.function.Supplier;
+
+/**
+ * Multi-pointer state machine for streamed touch events. Motion is injected as it arrives,
+ * so a remote drag is followed live instead of being replayed as a swipe on lift. Every
+ * injected step carries all active pointers, so two-finger gestures reach the injector
+ * as one stream of multi-pointer events (DOWN, POINTER_DOWN, MOVE, POINTER_UP, UP).
+ *
+ * Repairs broken streams from lossy links: a move without a down starts the pointer,
+ * a repeated down is treated as a move and an up without a down is dropped.
+ * Not thread-safe; callers serialize access.
+ */
+public class GestureStateMachine {
+    private static final String TAG = "GestureStateMachine";
+
+    private final TouchPointers pointers = new TouchPointers();
+    private final Supplier<InputInjector> injector;
+
+    public GestureStateMachine(Supplier<InputInjector> injector) {
+        this.injector = injector;
+    }
+
+    public void onDown(int pointerId, float x, float y) {
+        if (pointerId < 0 || pointerId > TouchPointers.MAX_POINTER_ID) {
+            Log.w(TAG, "Pointer id out of range: " + pointerId);
+            return;
+        }
+        if (pointers.indexOf(pointerId) >= 0) {
+            // Duplicate down (e.g. resent after loss), keep the gesture going
+            onMove(pointerId, x, y);
+            return;
+        }
+
+        int index = pointers.add(pointerId, x, y, SystemClock.uptimeMillis());
+        if (index < 0) {
+            Log.w(TAG, "Too many pointers, ignoring down for pointer " + pointerId);
+            return;
+        }
+        inject(pointers.getCount() == 1 ? MotionEvent.ACTION_DOWN
+                : pointerAction(MotionEvent.ACTION_POINTER_DOWN, index));
+    }
+
+    public void onMove(int pointerId, float x, float y) {
+        int index = pointers.indexOf(pointerId);
+        if (index < 0) {
+            // The down was lost, start the pointer here
+            onDown(pointerId, x, y);
+            return;
+        }
+        if (pointers.update(index, x, y)) {
+            inject(MotionEvent.ACTION_MOVE);
+        }
+    }
+
+    public void onUp(int pointerId, float x, float y) {
+        int index = pointers.indexOf(pointerId);
+        if (index < 0) {
+            return;
+        }
+
+        pointers.update(index, x, y);
+        inject(pointers.getCount() == 1 ? MotionEvent.ACTION_UP
+                : pointerAction(MotionEvent.ACTION_POINTER_UP, index));
+        pointers.remove(index);
+    }
+
+    /**
+     * Apply one multi-pointer event atomically: all positions are updated first and a single
+     * motion event is injected for the whole set. actionMasked is a MotionEvent masked action;
+     * actionPointerId names the pointer going down or up for the POINTER_* and DOWN/UP actions.
+     */
+    public void onPointers(int actionMasked, int actionPointerId, ControlEvent.Pointer[] batch, int count) {
+        boolean moved = false;
+        for (int i = 0; i < count; i++) {
+            ControlEvent.Pointer pointer = batch[i];
+            if (pointer == null) {
+                continue;
+            }
+            int index = pointers.indexOf(pointer.id);
+            if (index >= 0) {
+                moved |= pointers.update(index, (float) pointer.x, (float) pointer.y);
+            } else if (pointer.id != actionPointerId) {
+                // A pointer we never saw go down, its down was lost
+                onDown(pointer.id, (float) pointer.x, (float) pointer.y);
+            }
+        }
+
+        switch (actionMasked) {
+            case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_POINTER_DOWN: {
+                ControlEvent.Pointer pointer = find(batch, count, actionPointerId);
+                if (pointer != null) {
+                    onDown(actionPointerId, (float) pointer.x, (float) pointer.y);
+                }
+                break;
+            }
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_POINTER_UP: {
+                int index = pointers.indexOf(actionPointerId);
+                if (index >= 0) {
+                    onUp(actionPointerId, pointers.getX(index), pointers.getY(index));
+                }
+                break;
+            }
+            case MotionEvent.ACTION_MOVE:
+                if (moved) {
+                    inject(MotionEvent.ACTION_MOVE);
+                }
+                break;
+            case MotionEvent.ACTION_CANCEL:
+                cancelAll();
+                break;
+            default:
+                Log.w(TAG, "Unsupported touch action: " + actionMasked);
+        }
+    }
+
+    /** Cancel the whole gesture, e.g. when the controller disconnects mid-drag. */
+    public void cancelAll() {
+        if (pointers.getCount() > 0) {
+            inject(MotionEvent.ACTION_CANCEL);
+            pointers.clear();
+        }
+    }
+
+    public boolean isActive() {
+        return pointers.getCount() > 0;
+    }
+
+    private void inject(int action) {
+        injector.get().motion(action, pointers);
+    }
+
+    private static int pointerAction(int action, int index) {
+        return action | (index << MotionEvent.ACTION_POINTER_INDEX_SHIFT);
+    }
+
+    private static ControlEvent.Pointer find(ControlEvent.Pointer[] batch, int count, int pointerId) {
+        for (int i = 0; i < count; i++) {
+            ControlEvent.Pointer pointer = batch[i];
+            if (pointer != null && pointer.id == pointerId) {
+                return pointer;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.deviceapp;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.gson.JsonObject;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.framing.PingFrame;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heartbeats every signaling connection with WebSocket ping frames and tracks the round
+ * trip of each pong. Controllers need no support for this: WebSocket clients, browsers
+ * included, answer pings on their own.
+ *
+ * Each ping carries a sequence number, which the pong echoes, so a pong is matched to its
+ * own ping. A ping not answered before the next one is due counts as missed, and its late
+ * pong is ignored. Any message from the controller also counts as a sign of life. A
+ * connection that misses MAX_MISSED heartbeats in a row is closed without a close
+ * handshake, since a half-open connection would never answer one. Its onClose then frees
+ * its WebRTC resources the usual way.
+ *
+ * RTT is smoothed like TCP's SRTT (RFC 6298), and jitter is the RFC 3550 interarrival
+ * estimator applied to successive RTTs.
+ */
+public class HeartbeatMonitor {
+    private static final String TAG = "HeartbeatMonitor";
+
+    public static final String MSG_CONNECTION_STATS = "connection_stats";
+
+    private static final long INTERVAL_MS = 5000;
+    private static final int MAX_MISSED = 3;
+    // Ping payload: the ping's sequence number as a big-endian long
+    private static final int PAYLOAD_SIZE = 8;
+
+    public static final class Stats {
+        public final String address;
+        public long pingsSent;
+        public long pongsReceived;
+        public long latePongs;
+        public int missed;
+        public double lastRttMs;
+        public double minRttMs;
+        public double srttMs;
+        public double jitterMs;
+        private long pingSentNs;
+        private boolean awaitingPong;
+
+        Stats(String address) {
+            this.address = address;
+        }
+
+        /** Count the last ping as missed if it is still unanswered; returns the missed streak. */
+        synchronized int onHeartbeat() {
+            if (awaitingPong) {
+                awaitingPong = false;
+                missed++;
+            }
+            return missed;
+        }
+
+        /** Returns the sequence number to put in the new ping. */
+        synchronized long onPing(long nowNs) {
+            awaitingPong = true;
+            pingSentNs = nowNs;
+            return ++pingsSent;
+        }
+
+        synchronized void onPong(long sequence, long nowNs) {
+            if (!awaitingPong || sequence != pingsSent) {
+                // Answers a ping already counted as missed, so its RTT would belong to no ping
+                latePongs++;
+                return;
+            }
+            awaitingPong = false;
+            missed = 0;
+            pongsReceived++;
+            double rttMs = (nowNs - pingSentNs) / 1e6;
+            if (pongsReceived == 1) {
+                minRttMs = rttMs;
+                srttMs = rttMs;
+            } else {
+                minRttMs = Math.min(minRttMs, rttMs);
+                srttMs += (rttMs - srttMs) / 8;
+                jitterMs += (Math.abs(rttMs - lastRttMs) - jitterMs) / 16;
+            }
+            lastRttMs = rttMs;
+        }
+
+        synchronized void onActivity() {
+            missed = 0;
+        }
+
+        public synchronized JsonObject toJson() {
+            JsonObject json = new JsonObject();
+            json.addProperty("type", MSG_CONNECTION_STATS);
+            json.addProperty("pingsSent", pingsSent);
+            json.addProperty("pongsReceived", pongsReceived);
+            json.addProperty("latePongs", latePongs);
+            json.addProperty("missed", missed);
+            if (pongsReceived > 0) {
+                json.addProperty("rttMs", round(lastRttMs));
+                json.addProperty("minRttMs", round(minRttMs));
+                json.addProperty("srttMs", round(srttMs));
+                json.addProperty("jitterMs", round(jitterMs));
+            }
+            return json;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return address + ": pings " + pingsSent + ", pongs " + pongsReceived + ", late " + latePongs
+                    + ", missed " + missed
+                    + ", rtt last/min/smoothed ms: " + round(lastRttMs) + "/" + round(minRttMs) + "/" + round(srttMs)
+                    + ", jitter ms: " + round(jitterMs);
+        }
+
+        private static double round(double ms) {
+            return Math.round(ms * 100) / 100.0;
+        }
+    }
+
+    private final Map<WebSocket, Stats> connections = new ConcurrentHashMap<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private long reapedConnections;
+    private boolean running;
+
+    private final Runnable heartbeatRunnable = new Runnable() {
+        @Override
+        public void run() {
+            heartbeat();
+            synchronized (HeartbeatMonitor.this) {
+                if (running) {
+                    handler.postDelayed(this, INTERVAL_MS);
+                }
+            }
+        }
+    };
+
+    public synchronized void start() {
+        if (!running) {
+            running = true;
+            handler.postDelayed(heartbeatRunnable, INTERVAL_MS);
+        }
+    }
+
+    public synchronized void stop() {
+        running = false;
+        handler.removeCallbacks(heartbeatRunnable);
+    }
+
+    public void add(WebSocket conn) {
+        connections.put(conn, new Stats(String.valueOf(conn.getRemoteSocketAddress())));
+    }
+
+    /** Stop watching conn; returns its final stats, or null. */
+    public Stats remove(WebSocket conn) {
+        return connections.remove(conn);
+    }
+
+    public Stats getStats(WebSocket conn) {
+        return connections.get(conn);
+    }
+
+    /** A message arrived on conn, so it is alive whatever its pongs say. */
+    public void onActivity(WebSocket conn) {
+        Stats stats = connections.get(conn);
+        if (stats != null) {
+            stats.onActivity();
+        }
+    }
+
+    public void onPong(WebSocket conn, Framedata pong) {
+        long nowNs = System.nanoTime();
+        Stats stats = connections.get(conn);
+        ByteBuffer payload = pong.getPayloadData();
+        // Unsolicited pongs carry no sequence number of ours
+        if (stats != null && payload != null && payload.remaining() == PAYLOAD_SIZE) {
+            stats.onPong(payload.getLong(payload.position()), nowNs);
+        }
+    }
+
+    public synchronized long getReapedConnections() {
+        return reapedConnections;
+    }
+
+    private void heartbeat() {
+        long nowNs = System.nanoTime();
+        List<WebSocket> dead = new ArrayList<>();
+        for (Map.Entry<WebSocket, Stats> entry : connections.entrySet()) {
+            WebSocket conn = entry.getKey();
+            Stats stats = entry.getValue();
+            if (stats.onHeartbeat() >= MAX_MISSED) {
+                dead.add(conn);
+                continue;
+            }
+            if (!conn.isOpen()) {
+                continue;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(PAYLOAD_SIZE);
+            payload.putLong(0, stats.onPing(nowNs));
+            PingFrame ping = new PingFrame();
+            ping.setPayload(payload);
+            try {
+                conn.sendFrame(ping);
+            } catch (Exception e) {
+                Log.w(TAG, "Ping failed for " + stats.address + ": " + e.getMessage());
+            }
+        }
+        for (WebSocket conn : dead) {
+            Stats stats = connections.remove(conn);
+            Log.w(TAG, "Reaping connection, no pong or message for the last " + MAX_MISSED + " pings ("
+                    + TimeUnit.MILLISECONDS.toSeconds(MAX_MISSED * INTERVAL_MS) + " s): " + stats);
+            synchronized (this) {
+                reapedConnections++;
+            }
+            // No close handshake: a half-open peer would never answer it
+            conn.closeConnection(CloseFrame.ABNORMAL_CLOSE, "Missed heartbeats");
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.deviceapp;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Entry point of the long-lived injector that ShellInjectionEngine runs under app_process,
+ * the same way the "input" tool runs, but started once instead of once per command.
+ *
+ * Reads one command per line from stdin, "<id> <verb> <args...>", injects it through an
+ * InputManagerInjector and answers "__wertc_done__ <id> <exit code>" on stdout:
+ *   tap x y | longpress x y ms | swipe x1 y1 x2 y2 ms | key code | keys metaState code...
+ *   text escaped-text | motion action downTime count (id x y)...
+ */
+public final class InjectorProcess {
+    private static final String TAG = "InjectorProcess";
+
+    private final InputInjector injector;
+    private final TouchPointers pointers = new TouchPointers();
+
+    InjectorProcess(InputInjector injector) {
+        this.injector = injector;
+    }
+
+    public static void main(String[] args) {
+        InputManagerInjector injector = new InputManagerInjector();
+        if (!injector.isAvailable()) {
+            System.err.println(TAG + ": InputManager.injectInputEvent not available");
+            System.exit(1);
+        }
+        InjectorProcess process = new InjectorProcess(injector);
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int space = line.indexOf(' ');
+                if (space < 0) {
+                    continue;
+                }
+                String id = line.substring(0, space);
+                int exitCode = process.run(line.substring(space + 1)) ? 0 : 1;
+                writer.write(ShellInjectionEngine.DONE_MARKER + " " + id + " " + exitCode + "\n");
+                writer.flush();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Injector stdin closed: " + e.getMessage());
+        }
+        // The app closed our stdin or went away
+        injector.release();
+        System.exit(0);
+    }
+
+    /** Injects one command; returns false if it is malformed or injection threw. */
+    boolean run(String command) {
+        try {
+            if (command.startsWith("text ")) {
+                injector.text(ShellInputInjector.unescapeText(command.substring(5)));
+                return true;
+            }
+            String[] args = command.split(" ");
+            switch (args[0]) {
+                case "tap":
+                    injector.tap(Float.parseFloat(args[1]), Float.parseFloat(args[2]));
+                    return true;
+                case "longpress":
+                    injector.longPress(Float.parseFloat(args[1]), Float.parseFloat(args[2]), Long.parseLong(args[3]));
+                    return true;
+                case "swipe":
+                    injector.swipe(Float.parseFloat(args[1]), Float.parseFloat(args[2]),
+                            Float.parseFloat(args[3]), Float.parseFloat(args[4]), Long.parseLong(args[5]));
+                    return true;
+                case "key":
+                    injector.keyEvent(Integer.parseInt(args[1]));
+                    return true;
+                case "keys": {
+                    int[] keyCodes = new int[args.length - 2];
+                    for (int i = 0; i < keyCodes.length; i++) {
+                        keyCodes[i] = Integer.parseInt(args[i + 2]);
+                    }
+                    injector.keys(keyCodes, Integer.parseInt(args[1]));
+                    return true;
+                }
+                case "motion": {
+                    int action = Integer.parseInt(args[1]);
+                    long downTime = Long.parseLong(args[2]);
+                    int count = Integer.parseInt(args[3]);
+                    pointers.clear();
+                    for (int i = 0; i < count; i++) {
+                        int arg = 4 + i * 3;
+                        pointers.add(Integer.parseInt(args[arg]), Float.parseFloat(args[arg + 1]),
+                                Float.parseFloat(args[arg + 2]), downTime);
+                    }
+                    injector.motion(action, pointers);
+                    return true;
+                }
+                default:
+                    Log.w(TAG, "Unknown command: " + command);
+                    return false;
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to run command: " + command, e);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.example.deviceapp;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Moves input handling off the WebRTC network thread. The DataChannel callback only decodes
+ * and enqueues; a dedicated thread feeds the MotionCoalescer, so a slow injection can no
+ * longer stall later DataChannel messages or back up SCTP.
+ *
+ * Two bounded lock-free queues:
+ * - priority: navigation keys (BACK/HOME/MENU) and text/key batches, always taken first
+ * - input: touch events in arrival order; gesture boundaries must stay ordered with moves
+ *
+ * Backpressure: moves are only admitted while the input queue is below MOTION_LIMIT and are
+ * dropped beyond that (the coalescer would have merged them into the next frame anyway);
+ * the remaining headroom is kept for discrete events so a flood of moves cannot crowd out a
+ * down/up. Events come from a ControlEventPool and are released back to it once handled.
+ */
+public class InputDispatcher {
+    private static final String TAG = "InputDispatcher";
+
+    private static final int QUEUE_CAPACITY = 256;
+    private static final int MOTION_LIMIT = QUEUE_CAPACITY * 3 / 4;
+    private static final int PRIORITY_CAPACITY = 32;
+    // Bounds how long release() waits for the dispatch thread
+    private static final long JOIN_TIMEOUT_MS = 500;
+
+    private final MotionCoalescer motionCoalescer;
+    private final ControlEventPool eventPool;
+    private final BoundedQueue priorityQueue = new BoundedQueue(PRIORITY_CAPACITY);
+    private final BoundedQueue inputQueue = new BoundedQueue(QUEUE_CAPACITY);
+    private final Thread dispatchThread;
+    private volatile boolean running = true;
+    private volatile boolean waiting;
+
+    private final AtomicLong dispatched = new AtomicLong();
+    private final AtomicLong droppedMotion = new AtomicLong();
+    private final AtomicLong droppedDiscrete = new AtomicLong();
+    private final AtomicLong maxDepth = new AtomicLong();
+    private final AtomicLong totalWaitNs = new AtomicLong();
+    private final AtomicLong maxWaitNs = new AtomicLong();
+
+    public InputDispatcher(MotionCoalescer motionCoalescer, ControlEventPool eventPool) {
+        this.motionCoalescer = motionCoalescer;
+        this.eventPool = eventPool;
+        dispatchThread = new Thread(this::dispatchLoop, "InputDispatcher");
+        dispatchThread.start();
+    }
+
+    /**
+     * Queue an event for injection. Ownership passes to the dispatcher, which releases it to
+     * the pool; the caller must not touch it afterwards. Returns false if it was dropped.
+     */
+    public boolean enqueue(ControlEvent event) {
+        if (!running) {
+            eventPool.release(event);
+            return false;
+        }
+
+        long nowNs = System.nanoTime();
+        boolean accepted;
+        if (event.isKeyInput()) {
+            accepted = priorityQueue.offer(event, nowNs, PRIORITY_CAPACITY);
+        } else if (event.isMove()) {
+            accepted = inputQueue.offer(event, nowNs, MOTION_LIMIT);
+            if (!accepted) {
+                droppedMotion.incrementAndGet();
+            }
+        } else {
+            accepted = inputQueue.offer(event, nowNs, QUEUE_CAPACITY);
+        }
+
+        if (!accepted) {
+            if (!event.isMove()) {
+                droppedDiscrete.incrementAndGet();
+                Log.w(TAG, "Input queue full, dropping " + event.type + " event");
+            }
+            eventPool.release(event);
+            return false;
+        }
+
+        updateMax(maxDepth, priorityQueue.size() + inputQueue.size());
+        if (waiting) {
+            LockSupport.unpark(dispatchThread);
+        }
+        return true;
+    }
+
+    public void release() {
+        running = false;
+        LockSupport.unpark(dispatchThread);
+        try {
+            dispatchThread.join(JOIN_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!dispatchThread.isAlive()) {
+            // Hand back whatever was still queued; safe now that the consumer is gone
+            ControlEvent event;
+            while ((event = priorityQueue.poll()) != null || (event = inputQueue.poll()) != null) {
+                eventPool.release(event);
+            }
+        }
+        Log.d(TAG, "Released, " + getStats());
+    }
+
+    public int getQueueDepth() {
+        return priorityQueue.size() + inputQueue.size();
+    }
+
+    public long getDispatched() {
+        return dispatched.get();
+    }
+
+    public long getDroppedMotion() {
+        return droppedMotion.get();
+    }
+
+    public long getMaxWaitNs() {
+        return maxWaitNs.get();
+    }
+
+    public String getStats() {
+        long count = dispatched.get();
+        return "dispatched: " + count
+                + ", depth: " + getQueueDepth()
+                + ", max depth: " + maxDepth.get()
+                + ", dropped motion: " + droppedMotion.get()
+                + ", dropped discrete: " + droppedDiscrete.get()
+                + ", avg wait us: " + (count > 0 ? TimeUnit.NANOSECONDS.toMicros(totalWaitNs.get() / count) : 0)
+                + ", max wait us: " + TimeUnit.NANOSECONDS.toMicros(maxWaitNs.get());
+    }
+
+    private void dispatchLoop() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_DISPLAY);
+        while (running) {
+            ControlEvent event = priorityQueue.poll();
+            BoundedQueue source = priorityQueue;
+            if (event == null) {
+                event = inputQueue.poll();
+                source = inputQueue;
+            }
+            if (event == null) {
+                // Publish that we are about to park, then re-check so an enqueue racing with
+                // us either sees the flag or its event is seen here
+                waiting = true;
+                if (priorityQueue.isEmpty() && inputQueue.isEmpty() && running) {
+                    LockSupport.park(this);
+                }
+                waiting = false;
+                continue;
+            }
+
+            long nowNs = System.nanoTime();
+            event.dequeueTimeNs = nowNs;
+            long waitNs = nowNs - source.lastEnqueueTimeNs;
+            totalWaitNs.addAndGet(waitNs);
+            updateMax(maxWaitNs, waitNs);
+            try {
+                motionCoalescer.submit(event);
+            } catch (Exception e) {
+                Log.e(TAG, "Error dispatching control event", e);
+            } finally {
+                dispatched.incrementAndGet();
+                eventPool.release(event);
+            }
+        }
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Bounded multi-producer single-consumer ring (after Vyukov's bounded queue). Each cell
+     * carries a sequence number that tells producers and the consumer whose turn it is, so
+     * neither side locks or allocates.
+     */
+    private static final class BoundedQueue {
+        private final int mask;
+        private final AtomicReferenceArray<ControlEvent> items;
+        private final AtomicLongArray sequences;
+        // Written before the cell's sequence is published, read after it is observed
+        private final long[] enqueueTimesNs;
+        private final AtomicLong enqueuePos = new AtomicLong();
+        private volatile long dequeuePos;
+        // Enqueue time of the last polled event; consumer thread only
+        long lastEnqueueTimeNs;
+
+        BoundedQueue(int capacity) {
+            // Capacity must be a power of two
+            mask = capacity - 1;
+            items = new AtomicReferenceArray<>(capacity);
+            sequences = new AtomicLongArray(capacity);
+            enqueueTimesNs = new long[capacity];
+            for (int i = 0; i < capacity; i++) {
+                sequences.set(i, i);
+            }
+        }
+
+        // Fails if the queue already holds limit or more events
+        boolean offer(ControlEvent event, long nowNs, int limit) {
+            long pos;
+            while (true) {
+                pos = enqueuePos.get();
+                int index = (int) (pos & mask);
+                long diff = sequences.get(index) - pos;
+                if (diff == 0) {
+                    if (pos - dequeuePos >= limit) {
+                        return false;
+                    }
+                    if (enqueuePos.compareAndSet(pos, pos + 1)) {
+                        break;
+                    }
+                } else if (diff < 0) {
+                    return false;
+                }
+            }
+            int index = (int) (pos & mask);
+            items.lazySet(index, event);
+            enqueueTimesNs[index] = nowNs;
+            sequences.set(index, pos + 1);
+            return true;
+        }
+
+        ControlEvent poll() {
+            long pos = dequeuePos;
+            int index = (int) (pos & mask);
+            if (sequences.get(index) != pos + 1) {
+                return null;
+            }
+            ControlEvent event = items.get(index);
+            items.lazySet(index, null);
+            lastEnqueueTimeNs = enqueueTimesNs[index];
+            dequeuePos = pos + 1;
+            sequences.set(index, pos + mask + 1);
+            return event;
+        }
+
+        boolean isEmpty() {
+            return sequences.get((int) (dequeuePos & mask)) != dequeuePos + 1;
+        }
+
+        int size() {
+            return (int) Math.max(0, enqueuePos.get() - dequeuePos);
+        }
+    }
+}
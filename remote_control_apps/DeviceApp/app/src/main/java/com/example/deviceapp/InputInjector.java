@@ -0,0 +1,38 @@
+package com.example.deviceapp;
+
+/**
+ * Backend that turns control events into input on the device.
+ * Implementations must be safe to call from any thread and must not block the caller
+ * for the duration of a gesture.
+ */
+public interface InputInjector {
+    String getName();
+
+    boolean isAvailable();
+
+    void tap(float x, float y);
+
+    void longPress(float x, float y, long durationMs);
+
+    void swipe(float startX, float startY, float endX, float endY, long durationMs);
+
+    void keyEvent(int keyCode);
+
+    /** Type a string as one batch, as if entered on a hardware keyboard. */
+    void text(String text);
+
+    /**
+     * Press and release each key code in turn as one batch, with the modifier keys for
+     * metaState (KeyEvent.META_*) held down around the whole sequence.
+     */
+    void keys(int[] keyCodes, int metaState);
+
+    /**
+     * Inject one step of a live touch stream. action is a MotionEvent action including the
+     * pointer index for ACTION_POINTER_DOWN/UP; pointers holds every pointer on the screen.
+     * The pointer set is only valid for the duration of the call.
+     */
+    void motion(int action, TouchPointers pointers);
+
+    void release();
+}
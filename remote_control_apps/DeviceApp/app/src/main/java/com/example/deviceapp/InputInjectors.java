@@ -0,0 +1,84 @@
+package com.example.deviceapp;
+
+import android.content.Context;
+import android.util.Log;
+
+/**
+ * Picks the fastest available InputInjector once at startup and shares it process-wide.
+ * Preference order: in-process InputManager, accessibility gestures, app_process injector.
+ */
+public final class InputInjectors {
+    private static final String TAG = "InputInjectors";
+
+    private static volatile InputInjector defaultInjector;
+    // For creating the shell fallback later, when the accessibility service goes away
+    private static volatile Context appContext;
+
+    private InputInjectors() {}
+
+    public static InputInjector getDefault(Context context) {
+        InputInjector injector = defaultInjector;
+        if (injector == null) {
+            synchronized (InputInjectors.class) {
+                if (defaultInjector == null) {
+                    defaultInjector = select(context);
+                }
+                injector = defaultInjector;
+            }
+        }
+        return injector;
+    }
+
+    /** Replace the process-wide injector, e.g. with a FakeInputInjector in tests. */
+    public static synchronized void setDefault(InputInjector injector) {
+        if (defaultInjector != null && defaultInjector != injector) {
+            defaultInjector.release();
+        }
+        defaultInjector = injector;
+    }
+
+    public static InputInjector select(Context context) {
+        appContext = context.getApplicationContext();
+        InputInjector[] candidates = {
+            new InputManagerInjector(context),
+            new AccessibilityInputInjector(),
+        };
+
+        for (InputInjector candidate : candidates) {
+            if (candidate.isAvailable()) {
+                Log.d(TAG, "Selected input injector: " + candidate.getName());
+                return candidate;
+            }
+            candidate.release();
+        }
+
+        Log.d(TAG, "Selected input injector: shell (fallback)");
+        return new ShellInputInjector(context);
+    }
+
+    /**
+     * Called when the accessibility service connects after startup; upgrades from the
+     * shell fallback but never downgrades a system-signed InputManager backend.
+     */
+    public static synchronized void onAccessibilityServiceConnected() {
+        if (defaultInjector instanceof ShellInputInjector) {
+            Log.d(TAG, "Accessibility service connected, switching from shell injector");
+            defaultInjector.release();
+            defaultInjector = new AccessibilityInputInjector();
+        }
+    }
+
+    public static synchronized void onAccessibilityServiceDisconnected() {
+        if (defaultInjector instanceof AccessibilityInputInjector) {
+            Log.d(TAG, "Accessibility service disconnected, falling back to shell injector");
+            defaultInjector = new ShellInputInjector(appContext);
+        }
+    }
+
+    public static synchronized void releaseDefault() {
+        if (defaultInjector != null) {
+            defaultInjector.release();
+            defaultInjector = null;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.deviceapp;
+
+import com.google.gson.JsonObject;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Splits input latency into the stages an event passes through:
+ *
+ *   controller send -> DataChannel receive -> dispatcher dequeue -> injection start -> injection complete
+ *
+ * giving the intervals network, queue (dispatcher wait), coalesce (waiting for the display
+ * frame, plus the coalescer lock) and inject (the injector call itself), plus the device-side
+ * total from receive to complete. Each goes into a lock-free LatencyHistogram.
+ *
+ * The network stage maps the controller's timestamp onto the device clock through ClockSync
+ * once it has converged; before that it falls back to the device wall clock and includes
+ * any offset between the two clocks. Injection "complete" is when the injector
+ * call returns; the shell backend only hands the command to its shell at that point.
+ *
+ * Every summaryIntervalMs a summary of the interval is sent to the reporter, and when acks
+ * are enabled each injection is acknowledged individually (this allocates, so it is off by
+ * default). Each summarized interval is also added to a running total, so getStats() covers
+ * the whole session.
+ */
+public class InputLatencyTracer {
+    public static final long DEFAULT_SUMMARY_INTERVAL_MS = 5000;
+
+    public interface Reporter {
+        void sendLatencyMessage(JsonObject message);
+    }
+
+    private static final String[] STAGE_NAMES = {"network", "queue", "coalesce", "inject", "device_total"};
+    private static final int STAGE_NETWORK = 0;
+    private static final int STAGE_QUEUE = 1;
+    private static final int STAGE_COALESCE = 2;
+    private static final int STAGE_INJECT = 3;
+    private static final int STAGE_DEVICE_TOTAL = 4;
+
+    private final LatencyHistogram[] stages = new LatencyHistogram[STAGE_NAMES.length];
+    // Everything already summarized; only written under the snapshot lock
+    private final LatencyHistogram[] totals = new LatencyHistogram[STAGE_NAMES.length];
+    // Scratch copies for building a summary or getStats(), guarded by their own lock
+    private final LatencyHistogram[] snapshot = new LatencyHistogram[STAGE_NAMES.length];
+    private final AtomicLong lastSummaryNs = new AtomicLong(System.nanoTime());
+    private final AtomicLong negativeNetwork = new AtomicLong();
+
+    private volatile Reporter reporter;
+    private volatile ClockSync clockSync;
+    private volatile long summaryIntervalNs = TimeUnit.MILLISECONDS.toNanos(DEFAULT_SUMMARY_INTERVAL_MS);
+    private volatile boolean acksEnabled;
+
+    public InputLatencyTracer() {
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new LatencyHistogram();
+            totals[i] = new LatencyHistogram();
+            snapshot[i] = new LatencyHistogram();
+        }
+    }
+
+    public void setReporter(Reporter reporter) {
+        this.reporter = reporter;
+    }
+
+    public void setClockSync(ClockSync clockSync) {
+        this.clockSync = clockSync;
+    }
+
+    /** 0 turns periodic summaries off. */
+    public void setSummaryIntervalMs(long intervalMs) {
+        summaryIntervalNs = TimeUnit.MILLISECONDS.toNanos(intervalMs);
+    }
+
+    public void setAcksEnabled(boolean acksEnabled) {
+        this.acksEnabled = acksEnabled;
+    }
+
+    /**
+     * Record one injection. Times are System.nanoTime(); a zero stamp (an event that skipped
+     * a stage) leaves the affected intervals out.
+     */
+    public void recordInjection(long sendTimestampMs, long seq, long receiveNs, long dequeueNs,
+                                long injectStartNs, long injectEndNs) {
+        if (receiveNs == 0) {
+            return;
+        }
+        if (sendTimestampMs > 0) {
+            long networkUs;
+            ClockSync sync = clockSync;
+            long sendDeviceNs = sync != null ? sync.toDeviceTimeNs(sendTimestampMs) : 0;
+            if (sendDeviceNs != 0) {
+                networkUs = TimeUnit.NANOSECONDS.toMicros(receiveNs - sendDeviceNs);
+            } else {
+                // Wall-clock time of the receive, derived without a second clock read per event
+                long receiveWallMs = System.currentTimeMillis()
+                        - TimeUnit.NANOSECONDS.toMillis(injectEndNs - receiveNs);
+                networkUs = TimeUnit.MILLISECONDS.toMicros(receiveWallMs - sendTimestampMs);
+            }
+            if (networkUs >= 0) {
+                stages[STAGE_NETWORK].record(networkUs);
+            } else {
+                // Controller clock is ahead of ours
+                negativeNetwork.incrementAndGet();
+            }
+        }
+        if (dequeueNs != 0) {
+            stages[STAGE_QUEUE].record(toMicros(dequeueNs - receiveNs));
+            stages[STAGE_COALESCE].record(toMicros(injectStartNs - dequeueNs));
+        }
+        stages[STAGE_INJECT].record(toMicros(injectEndNs - injectStartNs));
+        stages[STAGE_DEVICE_TOTAL].record(toMicros(injectEndNs - receiveNs));
+
+        Reporter currentReporter = reporter;
+        if (currentReporter == null) {
+            return;
+        }
+        if (acksEnabled) {
+            JsonObject ack = new JsonObject();
+            ack.addProperty("type", "input_ack");
+            ack.addProperty("timestamp", sendTimestampMs);
+            if (seq != 0) {
+                ack.addProperty("seq", seq);
+            }
+            ack.addProperty("queueUs", dequeueNs != 0 ? toMicros(dequeueNs - receiveNs) : 0);
+            ack.addProperty("coalesceUs", dequeueNs != 0 ? toMicros(injectStartNs - dequeueNs) : 0);
+            ack.addProperty("injectUs", toMicros(injectEndNs - injectStartNs));
+            ack.addProperty("deviceUs", toMicros(injectEndNs - receiveNs));
+            currentReporter.sendLatencyMessage(ack);
+        }
+        maybeSendSummary(currentReporter, injectEndNs);
+    }
+
+    /** Session-wide percentiles: the summarized totals plus the interval still being collected. */
+    public String getStats() {
+        StringBuilder builder = new StringBuilder();
+        synchronized (snapshot) {
+            for (int i = 0; i < stages.length; i++) {
+                LatencyHistogram histogram = snapshot[i];
+                histogram.reset();
+                totals[i].addTo(histogram);
+                stages[i].addTo(histogram);
+                if (i > 0) {
+                    builder.append(", ");
+                }
+                builder.append(STAGE_NAMES[i])
+                        .append(" p50/p99 us: ").append(histogram.getPercentile(50))
+                        .append('/').append(histogram.getPercentile(99));
+            }
+        }
+        return builder.toString();
+    }
+
+    private void maybeSendSummary(Reporter currentReporter, long nowNs) {
+        long intervalNs = summaryIntervalNs;
+        long last = lastSummaryNs.get();
+        if (intervalNs <= 0 || nowNs - last < intervalNs || !lastSummaryNs.compareAndSet(last, nowNs)) {
+            return;
+        }
+
+        JsonObject summary = new JsonObject();
+        summary.addProperty("type", "input_latency");
+        summary.addProperty("intervalMs", TimeUnit.NANOSECONDS.toMillis(nowNs - last));
+        JsonObject stageSummaries = new JsonObject();
+        synchronized (snapshot) {
+            for (int i = 0; i < stages.length; i++) {
+                snapshot[i].reset();
+                stages[i].drainTo(snapshot[i]);
+                snapshot[i].addTo(totals[i]);
+                stageSummaries.add(STAGE_NAMES[i], summarize(snapshot[i]));
+            }
+        }
+        summary.add("stages", stageSummaries);
+        summary.addProperty("clockAhead", negativeNetwork.getAndSet(0));
+        currentReporter.sendLatencyMessage(summary);
+    }
+
+    private static JsonObject summarize(LatencyHistogram histogram) {
+        JsonObject stage = new JsonObject();
+        stage.addProperty("count", histogram.getCount());
+        stage.addProperty("meanUs", histogram.getMean());
+        stage.addProperty("p50Us", histogram.getPercentile(50));
+        stage.addProperty("p90Us", histogram.getPercentile(90));
+        stage.addProperty("p99Us", histogram.getPercentile(99));
+        stage.addProperty("maxUs", histogram.getMax());
+        return stage;
+    }
+
+    private static long toMicros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(Math.max(0, nanos));
+    }
+}
@@ -0,0 +1,295 @@
+package com.example.deviceapp;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.hardware.input.InputManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.InputDevice;
+import android.view.InputEvent;
+import android.view.KeyCharacterMap;
+import android.view.KeyEvent;
+import android.view.MotionEvent;
+
+import java.lang.reflect.Method;
+
+/**
+ * Backend that builds MotionEvent/KeyEvent in-process and hands them to
+ * InputManager.injectInputEvent. Requires INJECT_EVENTS, i.e. a system-signed build
+ * (app/SystemSignature.jks). Injection is asynchronous and takes well under a millisecond.
+ * Also drives InjectorProcess, which has no Context.
+ */
+public class InputManagerInjector implements InputInjector {
+    private static final String TAG = "InputManagerInjector";
+    private static final String INJECT_EVENTS_PERMISSION = "android.permission.INJECT_EVENTS";
+
+    // InputManager.INJECT_INPUT_EVENT_MODE_ASYNC (hidden)
+    private static final int INJECT_MODE_ASYNC = 0;
+    // Interval between synthesized move events during a swipe, roughly one 120Hz frame
+    private static final long SWIPE_STEP_MS = 8;
+
+    private final Context context;
+    private Object inputManager;
+    private Method injectInputEventMethod;
+    private HandlerThread injectThread;
+    private Handler injectHandler;
+
+    private final MotionEvent.PointerProperties[] pointerProperties =
+            new MotionEvent.PointerProperties[TouchPointers.MAX_POINTERS];
+    private final MotionEvent.PointerCoords[] pointerCoords =
+            new MotionEvent.PointerCoords[TouchPointers.MAX_POINTERS];
+    // Reflection argument array for the streaming path, guarded by pointerProperties
+    private final Object[] motionInjectArgs = {null, INJECT_MODE_ASYNC};
+
+    private KeyCharacterMap keyCharacterMap;
+    // Scratch for modifier key codes, guarded by "this"
+    private final int[] modifierKeyCodes = new int[KeyModifiers.MAX_MODIFIERS];
+
+    public InputManagerInjector(Context context) {
+        this.context = context != null ? context.getApplicationContext() : null;
+        for (int i = 0; i < TouchPointers.MAX_POINTERS; i++) {
+            pointerProperties[i] = new MotionEvent.PointerProperties();
+            pointerCoords[i] = new MotionEvent.PointerCoords();
+        }
+        resolveInjectMethod();
+    }
+
+    /** For a process without a Context, such as InjectorProcess under app_process. */
+    InputManagerInjector() {
+        this(null);
+    }
+
+    private void resolveInjectMethod() {
+        try {
+            inputManager = context != null ? context.getSystemService(Context.INPUT_SERVICE) : null;
+            if (inputManager == null) {
+                Method getInstance = getInputManagerClass().getDeclaredMethod("getInstance");
+                inputManager = getInstance.invoke(null);
+            }
+            injectInputEventMethod = inputManager.getClass().getMethod(
+                    "injectInputEvent", InputEvent.class, int.class);
+        } catch (Exception e) {
+            Log.w(TAG, "InputManager.injectInputEvent not accessible: " + e.getMessage());
+            inputManager = null;
+            injectInputEventMethod = null;
+        }
+    }
+
+    // Android 14 moved the process-wide instance and injection to InputManagerGlobal
+    private static Class<?> getInputManagerClass() {
+        try {
+            return Class.forName("android.hardware.input.InputManagerGlobal");
+        } catch (ClassNotFoundException e) {
+            return InputManager.class;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "input_manager";
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return inputManager != null && injectInputEventMethod != null
+                && (context == null || context.checkCallingOrSelfPermission(INJECT_EVENTS_PERMISSION)
+                        == PackageManager.PERMISSION_GRANTED);
+    }
+
+    @Override
+    public void tap(float x, float y) {
+        long now = SystemClock.uptimeMillis();
+        injectMotion(now, now, MotionEvent.ACTION_DOWN, x, y);
+        injectMotion(now, now, MotionEvent.ACTION_UP, x, y);
+    }
+
+    @Override
+    public void longPress(float x, float y, long durationMs) {
+        final long downTime = SystemClock.uptimeMillis();
+        injectMotion(downTime, downTime, MotionEvent.ACTION_DOWN, x, y);
+        getHandler().postDelayed(
+                () -> injectMotion(downTime, SystemClock.uptimeMillis(), MotionEvent.ACTION_UP, x, y),
+                durationMs);
+    }
+
+    @Override
+    public void swipe(float startX, float startY, float endX, float endY, long durationMs) {
+        final long downTime = SystemClock.uptimeMillis();
+        injectMotion(downTime, downTime, MotionEvent.ACTION_DOWN, startX, startY);
+        getHandler().post(new SwipeStep(downTime, startX, startY, endX, endY, Math.max(durationMs, 1)));
+    }
+
+    @Override
+    public void keyEvent(int keyCode) {
+        long now = SystemClock.uptimeMillis();
+        injectKey(new KeyEvent(now, now, KeyEvent.ACTION_DOWN, keyCode, 0, 0,
+                KeyCharacterMap.VIRTUAL_KEYBOARD, 0, 0, InputDevice.SOURCE_KEYBOARD));
+        injectKey(new KeyEvent(now, now, KeyEvent.ACTION_UP, keyCode, 0, 0,
+                KeyCharacterMap.VIRTUAL_KEYBOARD, 0, 0, InputDevice.SOURCE_KEYBOARD));
+    }
+
+    @Override
+    public synchronized void text(String text) {
+        if (keyCharacterMap == null) {
+            keyCharacterMap = KeyCharacterMap.load(KeyCharacterMap.VIRTUAL_KEYBOARD);
+        }
+        // The whole string maps to one down/up sequence (with shift where needed) in one go
+        KeyEvent[] events = keyCharacterMap.getEvents(text.toCharArray());
+        if (events != null) {
+            for (KeyEvent event : events) {
+                injectKey(event);
+            }
+            return;
+        }
+
+        // Some characters have no key on the virtual keyboard: type the rest key by key and
+        // deliver those as ACTION_MULTIPLE character events
+        char[] single = new char[1];
+        for (int i = 0; i < text.length(); i++) {
+            single[0] = text.charAt(i);
+            events = keyCharacterMap.getEvents(single);
+            if (events != null) {
+                for (KeyEvent event : events) {
+                    injectKey(event);
+                }
+            } else {
+                int end = Character.isHighSurrogate(single[0]) && i + 1 < text.length() ? i + 2 : i + 1;
+                injectKey(new KeyEvent(SystemClock.uptimeMillis(), text.substring(i, end),
+                        KeyCharacterMap.VIRTUAL_KEYBOARD, 0));
+                i = end - 1;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void keys(int[] keyCodes, int metaState) {
+        long downTime = SystemClock.uptimeMillis();
+        int modifierCount = KeyModifiers.toKeyCodes(metaState, modifierKeyCodes);
+        // Press the modifiers in order, each one adding to the meta state seen by the next
+        for (int i = 0; i < modifierCount; i++) {
+            injectKey(new KeyEvent(downTime, downTime, KeyEvent.ACTION_DOWN, modifierKeyCodes[i], 0,
+                    KeyModifiers.metaStateOf(modifierKeyCodes, i + 1),
+                    KeyCharacterMap.VIRTUAL_KEYBOARD, 0, 0, InputDevice.SOURCE_KEYBOARD));
+        }
+        for (int keyCode : keyCodes) {
+            long now = SystemClock.uptimeMillis();
+            injectKey(new KeyEvent(now, now, KeyEvent.ACTION_DOWN, keyCode, 0, metaState,
+                    KeyCharacterMap.VIRTUAL_KEYBOARD, 0, 0, InputDevice.SOURCE_KEYBOARD));
+            injectKey(new KeyEvent(now, now, KeyEvent.ACTION_UP, keyCode, 0, metaState,
+                    KeyCharacterMap.VIRTUAL_KEYBOARD, 0, 0, InputDevice.SOURCE_KEYBOARD));
+        }
+        long upTime = SystemClock.uptimeMillis();
+        for (int i = modifierCount - 1; i >= 0; i--) {
+            injectKey(new KeyEvent(downTime, upTime, KeyEvent.ACTION_UP, modifierKeyCodes[i], 0,
+                    KeyModifiers.metaStateOf(modifierKeyCodes, i),
+                    KeyCharacterMap.VIRTUAL_KEYBOARD, 0, 0, InputDevice.SOURCE_KEYBOARD));
+        }
+    }
+
+    @Override
+    public void motion(int action, TouchPointers pointers) {
+        int count = pointers.getCount();
+        if (count == 0) {
+            return;
+        }
+
+        synchronized (pointerProperties) {
+            for (int i = 0; i < count; i++) {
+                pointerProperties[i].clear();
+                pointerProperties[i].id = pointers.getId(i);
+                pointerProperties[i].toolType = MotionEvent.TOOL_TYPE_FINGER;
+                pointerCoords[i].clear();
+                pointerCoords[i].x = pointers.getX(i);
+                pointerCoords[i].y = pointers.getY(i);
+                pointerCoords[i].pressure = 1f;
+                pointerCoords[i].size = 1f;
+            }
+
+            // obtain() copies the arrays, so they can be reused for the next event
+            MotionEvent event = MotionEvent.obtain(pointers.getDownTime(), SystemClock.uptimeMillis(),
+                    action, count, pointerProperties, pointerCoords,
+                    0, 0, 1f, 1f, 0, 0, InputDevice.SOURCE_TOUCHSCREEN, 0);
+            motionInjectArgs[0] = event;
+            try {
+                injectInputEventMethod.invoke(inputManager, motionInjectArgs);
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to inject motion event", e);
+            } finally {
+                motionInjectArgs[0] = null;
+                event.recycle();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void release() {
+        if (injectThread != null) {
+            injectThread.quitSafely();
+            injectThread = null;
+            injectHandler = null;
+        }
+    }
+
+    private synchronized Handler getHandler() {
+        if (injectHandler == null) {
+            injectThread = new HandlerThread("InputManagerInjector");
+            injectThread.start();
+            injectHandler = new Handler(injectThread.getLooper());
+        }
+        return injectHandler;
+    }
+
+    private void injectMotion(long downTime, long eventTime, int action, float x, float y) {
+        MotionEvent event = MotionEvent.obtain(downTime, eventTime, action, x, y, 0);
+        event.setSource(InputDevice.SOURCE_TOUCHSCREEN);
+        inject(event);
+        event.recycle();
+    }
+
+    private void injectKey(KeyEvent event) {
+        inject(event);
+    }
+
+    private boolean inject(InputEvent event) {
+        try {
+            return (Boolean) injectInputEventMethod.invoke(inputManager, event, INJECT_MODE_ASYNC);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to inject input event", e);
+            return false;
+        }
+    }
+
+    // Replays a swipe as evenly spaced moves, like the "input swipe" tool does
+    private class SwipeStep implements Runnable {
+        private final long downTime;
+        private final float startX, startY, endX, endY;
+        private final long durationMs;
+
+        SwipeStep(long downTime, float startX, float startY, float endX, float endY, long durationMs) {
+            this.downTime = downTime;
+            this.startX = startX;
+            this.startY = startY;
+            this.endX = endX;
+            this.endY = endY;
+            this.durationMs = durationMs;
+        }
+
+        @Override
+        public void run() {
+            long now = SystemClock.uptimeMillis();
+            float fraction = Math.min(1f, (now - downTime) / (float) durationMs);
+            float x = startX + (endX - startX) * fraction;
+            float y = startY + (endY - startY) * fraction;
+
+            if (fraction < 1f) {
+                injectMotion(downTime, now, MotionEvent.ACTION_MOVE, x, y);
+                getHandler().postDelayed(this, SWIPE_STEP_MS);
+            } else {
+                injectMotion(downTime, now, MotionEvent.ACTION_MOVE, endX, endY);
+                injectMotion(downTime, now, MotionEvent.ACTION_UP, endX, endY);
+            }
+        }
+    }
+}
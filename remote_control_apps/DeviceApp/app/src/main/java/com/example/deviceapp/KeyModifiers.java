@@ -0,0 +1,67 @@
+package com.example.deviceapp;
+
+import android.view.KeyEvent;
+
+/**
+ * Translates between modifier names used on the wire, KeyEvent meta state and the
+ * modifier keys that have to be held down to produce that meta state.
+ */
+public final class KeyModifiers {
+    private static final String[] NAMES = {"shift", "ctrl", "alt", "meta"};
+    private static final int[] META_STATES = {
+        KeyEvent.META_SHIFT_ON | KeyEvent.META_SHIFT_LEFT_ON,
+        KeyEvent.META_CTRL_ON | KeyEvent.META_CTRL_LEFT_ON,
+        KeyEvent.META_ALT_ON | KeyEvent.META_ALT_LEFT_ON,
+        KeyEvent.META_META_ON | KeyEvent.META_META_LEFT_ON,
+    };
+    private static final int[] KEY_CODES = {
+        KeyEvent.KEYCODE_SHIFT_LEFT,
+        KeyEvent.KEYCODE_CTRL_LEFT,
+        KeyEvent.KEYCODE_ALT_LEFT,
+        KeyEvent.KEYCODE_META_LEFT,
+    };
+
+    public static final int MAX_MODIFIERS = NAMES.length;
+
+    private KeyModifiers() {}
+
+    /** Meta state for names such as ["ctrl", "shift"]; unknown names are ignored. */
+    public static int toMetaState(String[] names) {
+        int metaState = 0;
+        if (names == null) {
+            return 0;
+        }
+        for (String name : names) {
+            for (int i = 0; i < NAMES.length; i++) {
+                if (NAMES[i].equalsIgnoreCase(name)) {
+                    metaState |= META_STATES[i];
+                }
+            }
+        }
+        return metaState;
+    }
+
+    /** Fill out with the modifier key codes to hold for metaState and return how many. */
+    public static int toKeyCodes(int metaState, int[] out) {
+        int count = 0;
+        for (int i = 0; i < META_STATES.length; i++) {
+            if ((metaState & META_STATES[i]) != 0) {
+                out[count++] = KEY_CODES[i];
+            }
+        }
+        return count;
+    }
+
+    /** Meta state of the first count modifiers in keyCodes, i.e. after pressing them in order. */
+    public static int metaStateOf(int[] keyCodes, int count) {
+        int metaState = 0;
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < KEY_CODES.length; j++) {
+                if (KEY_CODES[j] == keyCodes[i]) {
+                    metaState |= META_STATES[j];
+                }
+            }
+        }
+        return metaState;
+    }
+}
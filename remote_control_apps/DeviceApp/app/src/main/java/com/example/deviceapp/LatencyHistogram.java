@@ -0,0 +1,126 @@
+package com.example.deviceapp;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free log-linear histogram of microsecond values, in the style of HdrHistogram:
+ * each power-of-two range is split into SUB_BUCKETS linear buckets, so percentiles are
+ * accurate to about 1/SUB_BUCKETS (~3%) from 1us up to about 17 minutes.
+ * Recording is a couple of bit operations and one atomic increment, with no allocation.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Values below SUB_BUCKETS get exact buckets, then one row per power of two up to 2^30
+    private static final int MAGNITUDES = 30 - SUB_BUCKET_BITS + 1;
+    private static final int BUCKET_COUNT = SUB_BUCKETS + MAGNITUDES * (SUB_BUCKETS / 2);
+    private static final long MAX_VALUE = (1L << 30) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalSum = new AtomicLong();
+    private final AtomicLong maxValue = new AtomicLong();
+
+    public void record(long valueUs) {
+        long value = Math.max(0, Math.min(valueUs, MAX_VALUE));
+        counts.incrementAndGet(bucketIndex(value));
+        totalCount.incrementAndGet();
+        totalSum.addAndGet(value);
+        long current = maxValue.get();
+        while (value > current && !maxValue.compareAndSet(current, value)) {
+            current = maxValue.get();
+        }
+    }
+
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    public long getMax() {
+        return maxValue.get();
+    }
+
+    public long getMean() {
+        long count = totalCount.get();
+        return count > 0 ? totalSum.get() / count : 0;
+    }
+
+    /** Upper bound of the bucket holding the given percentile (0-100), or 0 if empty. */
+    public long getPercentile(double percentile) {
+        long count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(bucketUpperBound(i), maxValue.get());
+            }
+        }
+        return maxValue.get();
+    }
+
+    /** Copy the current contents into target and clear this histogram (racing records may land in either). */
+    public void drainTo(LatencyHistogram target) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = counts.getAndSet(i, 0);
+            if (count != 0) {
+                target.counts.addAndGet(i, count);
+            }
+        }
+        target.totalCount.addAndGet(totalCount.getAndSet(0));
+        target.totalSum.addAndGet(totalSum.getAndSet(0));
+        long max = maxValue.getAndSet(0);
+        if (max > target.maxValue.get()) {
+            target.maxValue.set(max);
+        }
+    }
+
+    /** Add the current contents into target, leaving this histogram as it is. */
+    public void addTo(LatencyHistogram target) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = counts.get(i);
+            if (count != 0) {
+                target.counts.addAndGet(i, count);
+            }
+        }
+        target.totalCount.addAndGet(totalCount.get());
+        target.totalSum.addAndGet(totalSum.get());
+        long max = maxValue.get();
+        if (max > target.maxValue.get()) {
+            target.maxValue.set(max);
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        totalSum.set(0);
+        maxValue.set(0);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        // Position of the highest bit decides the row, the next bits pick the linear bucket
+        int magnitude = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        int subBucket = (int) (value >>> magnitude) - SUB_BUCKETS / 2;
+        return SUB_BUCKETS + (magnitude - 1) * (SUB_BUCKETS / 2) + subBucket;
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int row = (index - SUB_BUCKETS) / (SUB_BUCKETS / 2);
+        int subBucket = (index - SUB_BUCKETS) % (SUB_BUCKETS / 2) + SUB_BUCKETS / 2;
+        int magnitude = row + 1;
+        return (((long) subBucket + 1) << magnitude) - 1;
+    }
+}
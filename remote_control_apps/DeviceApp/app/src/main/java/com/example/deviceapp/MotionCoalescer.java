@@ -0,0 +1,337 @@
+package com.example.deviceapp;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.MotionEvent;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sits between the DataChannel and TouchControlService and merges move events so at most
+ * one move per pointer is injected per display frame. Controllers on 120Hz screens send far
+ * more moves than the panel can show; injecting each of them only builds up queue lag.
+ *
+ * Moves are parked in per-pointer slots and flushed from a Choreographer frame callback,
+ * resampled to the frame time (interpolated between the last two samples, or extrapolated
+ * a little past the newest one). Any other event flushes pending moves first, so ordering
+ * relative to down/up/clicks is preserved.
+ *
+ * Moves may arrive out of order on the unreliable "motion" lane. Sequenced samples that are
+ * not newer than the pointer's last sample, or than the last gesture boundary (down, up,
+ * cancel) seen on the reliable lane, are stale and dropped.
+ */
+public class MotionCoalescer {
+    private static final String TAG = "MotionCoalescer";
+
+    // Sample slightly in the past so there is usually a newer sample to interpolate towards
+    private static final long RESAMPLE_LATENCY_NS = 5_000_000L;
+    // Never predict further than this past the newest sample
+    private static final long MAX_EXTRAPOLATION_NS = 8_000_000L;
+    private static final int MAX_POINTERS = TouchPointers.MAX_POINTERS;
+
+    private final TouchControlService touchControlService;
+    private final InputLatencyTracer latencyTracer;
+    private final HandlerThread coalescerThread;
+    private final Handler coalescerHandler;
+    private Choreographer choreographer;
+    private boolean frameScheduled;
+
+    // Per-pointer slots, guarded by "this"
+    private final int[] slotIds = new int[MAX_POINTERS];
+    private final boolean[] slotUsed = new boolean[MAX_POINTERS];
+    private final boolean[] slotPending = new boolean[MAX_POINTERS];
+    // A sample arrived since the last flush
+    private final boolean[] slotFresh = new boolean[MAX_POINTERS];
+    private final long[] prevTimeNs = new long[MAX_POINTERS];
+    private final float[] prevX = new float[MAX_POINTERS];
+    private final float[] prevY = new float[MAX_POINTERS];
+    private final long[] lastTimeNs = new long[MAX_POINTERS];
+    private final float[] lastX = new float[MAX_POINTERS];
+    private final float[] lastY = new float[MAX_POINTERS];
+    private final long[] lastTimestampMs = new long[MAX_POINTERS];
+    private final long[] lastSeq = new long[MAX_POINTERS];
+    // Tracing stamps of the newest sample in each slot
+    private final long[] lastReceiveNs = new long[MAX_POINTERS];
+    private final long[] lastDequeueNs = new long[MAX_POINTERS];
+    // Sequence number of the newest discrete event, 0 until a sequenced one arrives
+    private long boundarySeq;
+    private final ControlEvent.Pointer[] flushBatch = new ControlEvent.Pointer[MAX_POINTERS];
+
+    // Counted per pointer sample; a trailing interpolated sample may be injected twice
+    private final AtomicLong movesReceived = new AtomicLong();
+    private final AtomicLong movesCoalesced = new AtomicLong();
+    private final AtomicLong movesStale = new AtomicLong();
+    private final AtomicLong movesInjected = new AtomicLong();
+    private final AtomicLong framesFlushed = new AtomicLong();
+
+    private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            synchronized (MotionCoalescer.this) {
+                frameScheduled = false;
+                flushLocked(frameTimeNanos - RESAMPLE_LATENCY_NS, true);
+            }
+        }
+    };
+
+    public MotionCoalescer(TouchControlService touchControlService, InputLatencyTracer latencyTracer) {
+        this.touchControlService = touchControlService;
+        this.latencyTracer = latencyTracer;
+        for (int i = 0; i < MAX_POINTERS; i++) {
+            flushBatch[i] = new ControlEvent.Pointer();
+        }
+
+        coalescerThread = new HandlerThread("MotionCoalescer", Process.THREAD_PRIORITY_DISPLAY);
+        coalescerThread.start();
+        coalescerHandler = new Handler(coalescerThread.getLooper());
+        // Choreographer is per-looper and must be obtained on the thread that uses it
+        coalescerHandler.post(() -> {
+            synchronized (MotionCoalescer.this) {
+                choreographer = Choreographer.getInstance();
+                if (hasPendingLocked()) {
+                    scheduleFrameLocked();
+                }
+            }
+        });
+    }
+
+    /** Samples are copied out, so the caller may recycle event as soon as this returns. */
+    public void submit(ControlEvent event) {
+        long nowNs = System.nanoTime();
+        synchronized (this) {
+            if (ControlEvent.TYPE_MOVE.equals(event.type)) {
+                int slot = storeSample(event.pointerId, (float) event.x, (float) event.y,
+                        event.timestamp, event.seq, nowNs);
+                stampSlot(slot, event);
+                scheduleFrameLocked();
+                return;
+            }
+            if (ControlEvent.TYPE_TOUCH.equals(event.type)
+                    && event.action == MotionEvent.ACTION_MOVE && event.pointerCount > 0) {
+                for (int i = 0; i < event.pointerCount; i++) {
+                    ControlEvent.Pointer pointer = event.pointers[i];
+                    if (pointer != null) {
+                        int slot = storeSample(pointer.id, (float) pointer.x, (float) pointer.y,
+                                event.timestamp, event.seq, nowNs);
+                        stampSlot(slot, event);
+                    }
+                }
+                scheduleFrameLocked();
+                return;
+            }
+
+            // Discrete event: pending motion must land before it
+            if (event.seq != 0 && (boundarySeq == 0 || ControlEvent.isNewerSeq(event.seq, boundarySeq))) {
+                boundarySeq = event.seq;
+            }
+            flushLocked(nowNs, false);
+            long injectStartNs = System.nanoTime();
+            touchControlService.handleControlEvent(event);
+            latencyTracer.recordInjection(event.timestamp, event.seq, event.receiveTimeNs,
+                    event.dequeueTimeNs, injectStartNs, System.nanoTime());
+            releaseSlots(event);
+        }
+    }
+
+    public void release() {
+        synchronized (this) {
+            if (choreographer != null) {
+                choreographer.removeFrameCallback(frameCallback);
+            }
+            frameScheduled = false;
+        }
+        coalescerThread.quitSafely();
+        Log.d(TAG, "Released, " + getStats());
+    }
+
+    public long getMovesReceived() {
+        return movesReceived.get();
+    }
+
+    public long getMovesCoalesced() {
+        return movesCoalesced.get();
+    }
+
+    public long getMovesStale() {
+        return movesStale.get();
+    }
+    
+    public long getMovesInjected() {
+        return movesInjected.get();
+    }
+
+    public String getStats() {
+        return "moves received: " + movesReceived.get()
+                + ", coalesced: " + movesCoalesced.get()
+                + ", stale: " + movesStale.get()
+                + ", injected: " + movesInjected.get()
+                + ", flushes: " + framesFlushed.get();
+    }
+
+    // Returns the slot the sample went into, or -1 if it was dropped
+    private int storeSample(int pointerId, float x, float y, long timestampMs, long seq, long nowNs) {
+        movesReceived.incrementAndGet();
+        if (seq != 0 && boundarySeq != 0 && !ControlEvent.isNewerSeq(seq, boundarySeq)) {
+            // Sent before a down/up that has already been applied, e.g. a move after the lift
+            movesStale.incrementAndGet();
+            return -1;
+        }
+        int slot = findOrAllocateSlot(pointerId);
+        if (slot < 0) {
+            return -1;
+        }
+        if (seq != 0) {
+            if (lastSeq[slot] != 0 && !ControlEvent.isNewerSeq(seq, lastSeq[slot])) {
+                // Overtaken by a newer sample on the unordered lane
+                movesStale.incrementAndGet();
+                return -1;
+            }
+            lastSeq[slot] = seq;
+        }
+        if (slotFresh[slot]) {
+            // The previous sample never reached the screen
+            movesCoalesced.incrementAndGet();
+        }
+
+        long sampleTimeNs = nowNs;
+        if (lastTimeNs[slot] != 0 && timestampMs > lastTimestampMs[slot] && lastTimestampMs[slot] > 0) {
+            // Use the controller's spacing between samples, it is free of network jitter
+            long spacingNs = (timestampMs - lastTimestampMs[slot]) * 1_000_000L;
+            sampleTimeNs = Math.min(nowNs, lastTimeNs[slot] + spacingNs);
+        }
+
+        prevTimeNs[slot] = lastTimeNs[slot];
+        prevX[slot] = lastX[slot];
+        prevY[slot] = lastY[slot];
+        lastTimeNs[slot] = sampleTimeNs;
+        lastX[slot] = x;
+        lastY[slot] = y;
+        lastTimestampMs[slot] = timestampMs;
+        slotPending[slot] = true;
+        slotFresh[slot] = true;
+        return slot;
+    }
+    
+    private void stampSlot(int slot, ControlEvent event) {
+        if (slot >= 0) {
+            lastReceiveNs[slot] = event.receiveTimeNs;
+            lastDequeueNs[slot] = event.dequeueTimeNs;
+        }
+    }
+
+    private void flushLocked(long sampleTimeNs, boolean resample) {
+        int count = 0;
+        // The newest sample in the batch stands for the whole injection when tracing
+        long traceTimestampMs = 0;
+        long traceSeq = 0;
+        long traceReceiveNs = 0;
+        long traceDequeueNs = 0;
+        for (int slot = 0; slot < MAX_POINTERS; slot++) {
+            if (!slotUsed[slot] || !slotPending[slot]) {
+                continue;
+            }
+            if (slotFresh[slot] && lastReceiveNs[slot] > traceReceiveNs) {
+                traceTimestampMs = lastTimestampMs[slot];
+                traceSeq = lastSeq[slot];
+                traceReceiveNs = lastReceiveNs[slot];
+                traceDequeueNs = lastDequeueNs[slot];
+            }
+            ControlEvent.Pointer pointer = flushBatch[count++];
+            pointer.id = slotIds[slot];
+            pointer.x = lastX[slot];
+            pointer.y = lastY[slot];
+            // An interpolated position trails the newest sample; keep the slot pending so
+            // the next frame moves the pointer the rest of the way
+            slotPending[slot] = resample && !resample(slot, sampleTimeNs, pointer);
+            slotFresh[slot] = false;
+        }
+
+        if (count > 0) {
+            movesInjected.addAndGet(count);
+            framesFlushed.incrementAndGet();
+            long injectStartNs = System.nanoTime();
+            touchControlService.handleMoveBatch(flushBatch, count);
+            // A trailing resample of already-traced samples is not traced again
+            latencyTracer.recordInjection(traceTimestampMs, traceSeq, traceReceiveNs, traceDequeueNs,
+                    injectStartNs, System.nanoTime());
+            if (hasPendingLocked()) {
+                scheduleFrameLocked();
+            }
+        }
+    }
+
+    // Returns true if the resampled position reached (or predicted past) the newest sample
+    private boolean resample(int slot, long sampleTimeNs, ControlEvent.Pointer out) {
+        long t0 = prevTimeNs[slot];
+        long t1 = lastTimeNs[slot];
+        if (t0 == 0 || t1 <= t0 || sampleTimeNs <= t0) {
+            return true;
+        }
+        if (sampleTimeNs >= t1 && !slotFresh[slot]) {
+            // Already predicted from this sample once; settle on the real position
+            return true;
+        }
+
+        long targetNs = Math.min(sampleTimeNs, t1 + MAX_EXTRAPOLATION_NS);
+        double alpha = (double) (targetNs - t0) / (t1 - t0);
+        out.x = prevX[slot] + (lastX[slot] - prevX[slot]) * alpha;
+        out.y = prevY[slot] + (lastY[slot] - prevY[slot]) * alpha;
+        return alpha >= 1.0;
+    }
+
+    private void scheduleFrameLocked() {
+        if (!frameScheduled && choreographer != null) {
+            frameScheduled = true;
+            choreographer.postFrameCallback(frameCallback);
+        }
+    }
+
+    private boolean hasPendingLocked() {
+        for (int slot = 0; slot < MAX_POINTERS; slot++) {
+            if (slotUsed[slot] && slotPending[slot]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int findOrAllocateSlot(int pointerId) {
+        int free = -1;
+        for (int slot = 0; slot < MAX_POINTERS; slot++) {
+            if (slotUsed[slot]) {
+                if (slotIds[slot] == pointerId) {
+                    return slot;
+                }
+            } else if (free < 0) {
+                free = slot;
+            }
+        }
+        if (free >= 0) {
+            slotUsed[free] = true;
+            slotIds[free] = pointerId;
+            lastTimeNs[free] = 0;
+            lastTimestampMs[free] = 0;
+            lastSeq[free] = 0;
+        }
+        return free;
+    }
+
+    // Forget resampling history for pointers that left the screen
+    private void releaseSlots(ControlEvent event) {
+        boolean allUp = ControlEvent.TYPE_CANCEL.equals(event.type)
+                || (ControlEvent.TYPE_TOUCH.equals(event.type)
+                        && (event.action == MotionEvent.ACTION_UP || event.action == MotionEvent.ACTION_CANCEL));
+        boolean pointerUp = ControlEvent.TYPE_UP.equals(event.type)
+                || (ControlEvent.TYPE_TOUCH.equals(event.type) && event.action == MotionEvent.ACTION_POINTER_UP);
+
+        for (int slot = 0; slot < MAX_POINTERS; slot++) {
+            if (slotUsed[slot] && (allUp || (pointerUp && slotIds[slot] == event.pointerId))) {
+                slotUsed[slot] = false;
+                slotPending[slot] = false;
+            }
+        }
+    }
+}
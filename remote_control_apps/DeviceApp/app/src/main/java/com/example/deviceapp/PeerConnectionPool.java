@@ -0,0 +1,374 @@
+package com.example.deviceapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.webrtc.DataChannel;
+import org.webrtc.IceCandidate;
+import org.webrtc.MediaStream;
+import org.webrtc.MediaStreamTrack;
+import org.webrtc.PeerConnection;
+import org.webrtc.PeerConnectionFactory;
+import org.webrtc.RtcCertificatePem;
+import org.webrtc.RtpReceiver;
+import org.webrtc.RtpTransceiver;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps DTLS certificates and idle PeerConnections ready before a controller asks for a
+ * session, so start_webrtc no longer waits for key generation and object construction.
+ *
+ * A pooled connection is fully configured: both DataChannel lanes and a send-only video
+ * transceiver (without a track yet) are in place. Its observer forwards to whatever the
+ * taking session installs; callbacks before that (renegotiation-needed while building) are
+ * dropped. An idle connection has no local description, so it gathers no candidates and
+ * holds no sockets.
+ *
+ * take() never blocks on the pool: on a miss the connection is built inline, using a pooled
+ * certificate if one is left. Refills run on the given executor after every take(). Pooled
+ * connections have a single video encoding; simulcast ones are always built on demand.
+ */
+public class PeerConnectionPool {
+    private static final String TAG = "PeerConnectionPool";
+
+    private static final int CONNECTION_POOL_SIZE = 2;
+    private static final int CERTIFICATE_POOL_SIZE = 2;
+    private static final long CERTIFICATE_LIFETIME_S = TimeUnit.DAYS.toSeconds(30);
+    // Stream id the video track is announced under
+    private static final List<String> STREAM_IDS = Collections.singletonList("local_stream");
+
+    /** A configured PeerConnection with its DataChannels and video transceiver. */
+    public static final class Connection {
+        public final PeerConnection peerConnection;
+        public final DataChannel controlChannel;
+        public final DataChannel motionChannel;
+        public final RtpTransceiver videoTransceiver;
+        private final ForwardingObserver observer;
+
+        Connection(PeerConnection peerConnection, DataChannel controlChannel, DataChannel motionChannel,
+                   RtpTransceiver videoTransceiver, ForwardingObserver observer) {
+            this.peerConnection = peerConnection;
+            this.controlChannel = controlChannel;
+            this.motionChannel = motionChannel;
+            this.videoTransceiver = videoTransceiver;
+            this.observer = observer;
+        }
+
+        void dispose() {
+            controlChannel.dispose();
+            motionChannel.dispose();
+            peerConnection.dispose();
+        }
+    }
+
+    private final Context context;
+    private final Executor refillExecutor;
+    // Guarded by "this"
+    private final ArrayDeque<Connection> idleConnections = new ArrayDeque<>();
+    private final ArrayDeque<RtcCertificatePem> certificates = new ArrayDeque<>();
+    private PeerConnectionFactory factory;
+    private boolean refillScheduled;
+    private boolean released;
+
+    private final AtomicLong connectionHits = new AtomicLong();
+    private final AtomicLong connectionMisses = new AtomicLong();
+    private final AtomicLong certificateHits = new AtomicLong();
+    private final AtomicLong certificateMisses = new AtomicLong();
+
+    public PeerConnectionPool(Context context, Executor refillExecutor) {
+        this.context = context.getApplicationContext();
+        this.refillExecutor = refillExecutor;
+    }
+
+    /** Start filling the pool in the background. */
+    public void start() {
+        scheduleRefill();
+    }
+
+    /** An idle connection, or one built now; the observer receives all its callbacks from here on. */
+    public Connection take(PeerConnection.Observer observer, boolean simulcast) {
+        Connection connection = null;
+        if (!simulcast) {
+            synchronized (this) {
+                connection = idleConnections.poll();
+            }
+        }
+        if (connection != null) {
+            connectionHits.incrementAndGet();
+        } else {
+            connectionMisses.incrementAndGet();
+            connection = build(getFactory(), simulcast);
+        }
+        connection.observer.target = observer;
+        Log.d(TAG, "Took connection, " + getStats());
+        scheduleRefill();
+        return connection;
+    }
+
+    /** Dispose idle connections and drop the pool's factory reference. */
+    public void release() {
+        List<Connection> idle;
+        boolean hadFactory;
+        synchronized (this) {
+            released = true;
+            idle = new ArrayList<>(idleConnections);
+            idleConnections.clear();
+            certificates.clear();
+            hadFactory = factory != null;
+            factory = null;
+        }
+        for (Connection connection : idle) {
+            connection.dispose();
+        }
+        if (hadFactory) {
+            SharedPeerConnectionFactory.release();
+        }
+        Log.d(TAG, "Released, " + getStats());
+    }
+
+    public String getStats() {
+        return "connection hits/misses: " + connectionHits.get() + "/" + connectionMisses.get()
+                + ", certificate hits/misses: " + certificateHits.get() + "/" + certificateMisses.get();
+    }
+
+    /** Session settings shared by pooled and inline connections. */
+    static PeerConnection.RTCConfiguration createRtcConfiguration(RtcCertificatePem certificate) {
+        // Empty ICE servers for local network optimization
+        List<PeerConnection.IceServer> iceServers = new ArrayList<>();
+
+        PeerConnection.RTCConfiguration rtcConfig = new PeerConnection.RTCConfiguration(iceServers);
+        rtcConfig.tcpCandidatePolicy = PeerConnection.TcpCandidatePolicy.DISABLED;
+        rtcConfig.bundlePolicy = PeerConnection.BundlePolicy.MAXBUNDLE;
+        rtcConfig.rtcpMuxPolicy = PeerConnection.RtcpMuxPolicy.REQUIRE;
+        rtcConfig.continualGatheringPolicy = PeerConnection.ContinualGatheringPolicy.GATHER_ONCE; // Fast gathering
+
+        // Aggressive low latency optimizations
+        rtcConfig.iceConnectionReceivingTimeout = 500; // Reduced to 500ms for faster connection
+        rtcConfig.keyType = PeerConnection.KeyType.ECDSA; // Faster key exchange
+        // Pre-generated; without one the connection generates its own key
+        rtcConfig.certificate = certificate;
+        rtcConfig.iceCandidatePoolSize = 0; // No pre-gathering for faster start
+        rtcConfig.iceTransportsType = PeerConnection.IceTransportsType.ALL;
+        rtcConfig.sdpSemantics = PeerConnection.SdpSemantics.UNIFIED_PLAN; // Modern standard
+
+        // Additional ultra-low latency optimizations
+        rtcConfig.iceBackupCandidatePairPingInterval = 1000; // Faster backup candidate checking
+        rtcConfig.iceCheckMinInterval = 100; // Faster ICE connectivity checks
+//        rtcConfig.iceUnwritableTimeout = 1000; // Faster timeout for unwritable connections
+//        rtcConfig.iceWritableTimeout = 1000; // Faster timeout for writable connections
+        return rtcConfig;
+    }
+
+    private synchronized PeerConnectionFactory getFactory() {
+        if (factory == null) {
+            factory = SharedPeerConnectionFactory.acquire(context);
+        }
+        return factory;
+    }
+
+    private Connection build(PeerConnectionFactory factory, boolean simulcast) {
+        RtcCertificatePem certificate;
+        synchronized (this) {
+            certificate = certificates.poll();
+        }
+        if (certificate != null) {
+            certificateHits.incrementAndGet();
+        } else {
+            certificateMisses.incrementAndGet();
+        }
+
+        ForwardingObserver observer = new ForwardingObserver();
+        PeerConnection peerConnection = factory.createPeerConnection(createRtcConfiguration(certificate), observer);
+
+        // Create data channel for control events
+        DataChannel.Init controlInit = new DataChannel.Init();
+        controlInit.ordered = true;
+        DataChannel controlChannel = peerConnection.createDataChannel(WebRTCManager.CONTROL_CHANNEL_LABEL, controlInit);
+
+        // Moves go on their own lane so a lost packet doesn't hold later samples behind a retransmit
+        DataChannel.Init motionInit = new DataChannel.Init();
+        motionInit.ordered = false;
+        motionInit.maxRetransmits = 0;
+        DataChannel motionChannel = peerConnection.createDataChannel(WebRTCManager.MOTION_CHANNEL_LABEL, motionInit);
+
+        // Send-only screen share; the session attaches its track to the sender
+        RtpTransceiver.RtpTransceiverInit videoInit = simulcast
+                ? new RtpTransceiver.RtpTransceiverInit(RtpTransceiver.RtpTransceiverDirection.SEND_ONLY, STREAM_IDS,
+                        VideoLayer.simulcastEncodings())
+                : new RtpTransceiver.RtpTransceiverInit(RtpTransceiver.RtpTransceiverDirection.SEND_ONLY, STREAM_IDS);
+        RtpTransceiver videoTransceiver = peerConnection.addTransceiver(MediaStreamTrack.MediaType.MEDIA_TYPE_VIDEO,
+                videoInit);
+        return new Connection(peerConnection, controlChannel, motionChannel, videoTransceiver, observer);
+    }
+
+    private void scheduleRefill() {
+        synchronized (this) {
+            if (refillScheduled || released) {
+                return;
+            }
+            refillScheduled = true;
+        }
+        refillExecutor.execute(this::refill);
+    }
+
+    private void refill() {
+        long startNs = System.nanoTime();
+        int built = 0;
+        while (true) {
+            boolean needCertificate;
+            boolean needConnection;
+            synchronized (this) {
+                if (released) {
+                    refillScheduled = false;
+                    return;
+                }
+                needCertificate = certificates.size() < CERTIFICATE_POOL_SIZE;
+                needConnection = idleConnections.size() < CONNECTION_POOL_SIZE;
+                if (!needCertificate && !needConnection) {
+                    refillScheduled = false;
+                    break;
+                }
+            }
+            try {
+                if (needCertificate) {
+                    RtcCertificatePem certificate = RtcCertificatePem.generateCertificate(
+                            PeerConnection.KeyType.ECDSA, CERTIFICATE_LIFETIME_S);
+                    synchronized (this) {
+                        certificates.add(certificate);
+                    }
+                } else {
+                    Connection connection = build(getFactory(), false);
+                    boolean keep;
+                    synchronized (this) {
+                        keep = !released;
+                        if (keep) {
+                            idleConnections.add(connection);
+                        }
+                    }
+                    if (!keep) {
+                        connection.dispose();
+                    }
+                    built++;
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to refill pool", e);
+                synchronized (this) {
+                    refillScheduled = false;
+                }
+                return;
+            }
+        }
+        if (built > 0) {
+            Log.d(TAG, "Refilled " + built + " connections in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs) + " ms, " + getStats());
+        }
+    }
+
+    // Lets a connection be built before the session that will observe it exists
+    private static final class ForwardingObserver implements PeerConnection.Observer {
+        volatile PeerConnection.Observer target;
+
+        @Override
+        public void onSignalingChange(PeerConnection.SignalingState signalingState) {
+            PeerConnection.Observer observer = target;
+            if (observer != null) {
+                observer.onSignalingChange(signalingState);
+            }
+        }
+
+        @Override
+        public void onIceConnectionChange(PeerConnection.IceConnectionState iceConnectionState) {
+            PeerConnection.Observer observer = target;
+            if (observer != null) {
+                observer.onIceConnectionChange(iceConnectionState);
+            }
+        }
+
+        @Override
+        public void onConnectionChange(PeerConnection.PeerConnectionState newState) {
+            PeerConnection.Observer observer = target;
+            if (observer != null) {
+                observer.onConnectionChange(newState);
+            }
+        }
+
+        @Override
+        public void onIceConnectionReceivingChange(boolean receiving) {
+            PeerConnection.Observer observer = target;
+            if (observer != null) {
+                observer.onIceConnectionReceivingChange(receiving);
+            }
+        }
+
+        @Override
+        public void onIceGatheringChange(PeerConnection.IceGatheringState iceGatheringState) {
+            PeerConnection.Observer observer = target;
+            if (observer != null) {
+                observer.onIceGatheringChange(iceGatheringState);
+            }
+        }
+
+        @Override
+        public void onIceCandidate(IceCandidate iceCandidate) {
+            PeerConnection.Observer observer = target;
+            if (observer != null) {
+                observer.onIceCandidate(iceCandidate);
+            }
+        }
+
+        @Override
+        public void onIceCandidatesRemoved(IceCandidate[] iceCandidates) {
+            PeerConnection.Observer observer = target;
+            if (observer != null) {
+                observer.onIceCandidatesRemoved(iceCandidates);
+            }
+        }
+
+        @Override
+        public void onAddStream(MediaStream mediaStream) {
+            PeerConnection.Observer observer = target;
+            if (observer != null) {
+                observer.onAddStream(mediaStream);
+            }
+        }
+
+        @Override
+        public void onRemoveStream(MediaStream mediaStream) {
+            PeerConnection.Observer observer = target;
+            if (observer != null) {
+                observer.onRemoveStream(mediaStream);
+            }
+        }
+
+        @Override
+        public void onDataChannel(DataChannel dataChannel) {
+            PeerConnection.Observer observer = target;
+            if (observer != null) {
+                observer.onDataChannel(dataChannel);
+            }
+        }
+
+        @Override
+        public void onRenegotiationNeeded() {
+            PeerConnection.Observer observer = target;
+            if (observer != null) {
+                observer.onRenegotiationNeeded();
+            }
+        }
+
+        @Override
+        public void onAddTrack(RtpReceiver rtpReceiver, MediaStream[] mediaStreams) {
+            PeerConnection.Observer observer = target;
+            if (observer != null) {
+                observer.onAddTrack(rtpReceiver, mediaStreams);
+            }
+        }
+    }
+}
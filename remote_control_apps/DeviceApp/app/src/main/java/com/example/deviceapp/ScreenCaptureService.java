@@ -48,7 +48,8 @@ public class ScreenCaptureService extends Service {
     private ScreenCapturerAndroid screenCapturer;
     private SurfaceTextureHelper surfaceTextureHelper;
     private EglBase eglBase;
-    private VideoSource videoSource;
+    // One capture, one VideoSource (and encoder) per connected viewer
+    private final VideoFrameDistributor frameDistributor = new VideoFrameDistributor();
     private HandlerThread captureThread;
     private Handler captureHandler;
     
@@ -56,6 +57,23 @@ public class ScreenCaptureService extends Service {
     private int screenWidth;
     private int screenHeight;
     private int screenDensity;
+    private DisplayManager displayManager;
+    
+    // Republish touch mapping geometry when the display rotates or resizes
+    private final DisplayManager.DisplayListener displayListener = new DisplayManager.DisplayListener() {
+        @Override
+        public void onDisplayAdded(int displayId) {}
+        
+        @Override
+        public void onDisplayRemoved(int displayId) {}
+        
+        @Override
+        public void onDisplayChanged(int displayId) {
+            if (displayId == Display.DEFAULT_DISPLAY) {
+                publishDisplayGeometry();
+            }
+        }
+    };
     
     private AtomicInteger frameCount = new AtomicInteger(0);
     
@@ -90,12 +108,14 @@ public class ScreenCaptureService extends Service {
             if (success) {
                 frameCount.set(0);
             }
+            frameDistributor.onCapturerStarted(success);
         }
         
         @Override
         public void onCapturerStopped() {
-            Log.d(TAG, "Screen capturer stopped");
+            Log.d(TAG, "Screen capturer stopped, " + frameDistributor.getStats());
             isCapturing = false;
+            frameDistributor.onCapturerStopped();
         }
         
         @Override
@@ -123,30 +143,8 @@ public class ScreenCaptureService extends Service {
             // Log.d(TAG, "Frame captured: " + currentFrame + ", timestamp: " + frame.getTimestampNs() +
             //           ", size: " + frame.getBuffer().getWidth() + "x" + frame.getBuffer().getHeight());
             
-            // Send frame to WebRTC VideoSource through CapturerObserver
-            if (videoSource != null && videoSource.getCapturerObserver() != null) {
-                try {
-                    // VideoSource will handle frame lifecycle, don't release here
-                    videoSource.getCapturerObserver().onFrameCaptured(frame);
-                    // Log.v(TAG, "Frame sent to WebRTC VideoSource successfully");
-                } catch (Exception e) {
-                    Log.e(TAG, "Error sending frame to VideoSource", e);
-                    // Only release on error if frame hasn't been consumed
-//                    try {
-//                        frame.release();
-//                    } catch (Exception releaseError) {
-//                        Log.w(TAG, "Frame already released during error handling: " + releaseError.getMessage());
-//                    }
-                }
-            } else {
-                Log.w(TAG, "VideoSource or CapturerObserver is null, cannot send frame");
-                // Only release if frame hasn't been consumed
-                try {
-                    frame.release();
-                } catch (Exception e) {
-                    Log.w(TAG, "Frame already released when VideoSource unavailable: " + e.getMessage());
-                }
-            }
+            // Send frame to every viewer's VideoSource; the capturer releases it after we return
+            frameDistributor.onFrameCaptured(frame);
         }
     }
     
@@ -177,9 +175,9 @@ public class ScreenCaptureService extends Service {
                 this.mediaProjectionResultCode = resultCode;
                 this.mediaProjectionData = data;
 
-                // If VideoSource is already available, start capture.
-                // Otherwise, capture will be started when setVideoSource is called.
-                if (videoSource != null && !isCapturing) {
+                // If a viewer is already attached, start capture.
+                // Otherwise, capture will be started when attachVideoSource is called.
+                if (frameDistributor.hasViewers() && !isCapturing) {
                     Log.d(TAG, "VideoSource is ready, starting screen capture immediately.");
                     startScreenCapture(resultCode, data);
                 } else {
@@ -213,6 +211,10 @@ public class ScreenCaptureService extends Service {
         
         stopScreenCapture();
         
+        if (displayManager != null) {
+            displayManager.unregisterDisplayListener(displayListener);
+        }
+        
         // Clean up WebRTC components
         if (captureHandler != null) {
             captureHandler.post(() -> {
@@ -260,12 +262,30 @@ public class ScreenCaptureService extends Service {
         screenDensity = metrics.densityDpi;
         
         Log.d(TAG, "Screen metrics: " + screenWidth + "x" + screenHeight + " density: " + screenDensity);
+        
+        publishDisplayGeometry();
+        displayManager = (DisplayManager) getSystemService(DISPLAY_SERVICE);
+        if (displayManager != null) {
+            displayManager.registerDisplayListener(displayListener, null);
+        }
+    }
+    
+    // The capture surface keeps the size chosen at start; the display it mirrors may rotate
+    private void publishDisplayGeometry() {
+        WindowManager windowManager = (WindowManager) getSystemService(WINDOW_SERVICE);
+        Display display = windowManager.getDefaultDisplay();
+        DisplayMetrics realMetrics = new DisplayMetrics();
+        display.getRealMetrics(realMetrics);
+        Log.d(TAG, "Display rotation: " + display.getRotation()
+                + ", size: " + realMetrics.widthPixels + "x" + realMetrics.heightPixels);
+        CoordinateTransform.updateGeometry(screenWidth, screenHeight,
+                realMetrics.widthPixels, realMetrics.heightPixels);
     }
     
 private void initWebRTCComponents() {
         try {
-            // Initialize EGL context for WebRTC
-            eglBase = EglBase.create();
+            // Initialize EGL context for WebRTC, shared with the encoders' context
+            eglBase = EglBase.create(SharedPeerConnectionFactory.getEglBaseContext());
             
             // Create capture thread
             captureThread = new HandlerThread("ScreenCaptureThread");
@@ -312,7 +332,7 @@ private void initWebRTCComponents() {
             captureHandler.post(() -> {
                 try {
                     // Ensure SurfaceTextureHelper is ready and not already listening
-                    if (surfaceTextureHelper != null && videoSource != null) {
+                    if (surfaceTextureHelper != null && frameDistributor.hasViewers()) {
                         // Create MediaProjection callback
                         MediaProjection.Callback projectionCallback = new MediaProjection.Callback() {
                             @Override
@@ -325,7 +345,7 @@ private void initWebRTCComponents() {
                         // Create ScreenCapturerAndroid
                         screenCapturer = new ScreenCapturerAndroid(data, projectionCallback);
                         
-                        // Use our custom observer that forwards frames to VideoSource
+                        // Use our custom observer that forwards frames to the distributor
                         ScreenCaptureObserver customObserver = new ScreenCaptureObserver();
                         
                         // Initialize the capturer with SurfaceTextureHelper and custom observer
@@ -353,24 +373,23 @@ private void initWebRTCComponents() {
         }
     }
     
-    // WebRTC VideoSource setter - called by WebRTCManager
-    public void setVideoSource(VideoSource videoSource) {
-        // Allow resetting VideoSource for reconnection scenarios
-        if (this.videoSource != null) {
-            Log.d(TAG, "VideoSource already set, updating with new VideoSource for reconnection");
-        } else {
-            Log.d(TAG, "Setting VideoSource for screen capture");
-        }
+    // Add a viewer's VideoSource - called by WebRTCManager
+    public void attachVideoSource(VideoSource videoSource) {
+        Log.d(TAG, "Attaching VideoSource for screen capture");
+        frameDistributor.attach(videoSource);
         
-        this.videoSource = videoSource;
-        
-        // If we have pending capture request and now have VideoSource, start capture
+        // If we have pending capture request and now have a viewer, start capture
         if (mediaProjectionResultCode != 0 && mediaProjectionData != null && !isCapturing) {
             Log.d(TAG, "Starting delayed screen capture now that VideoSource is available");
             startScreenCapture(mediaProjectionResultCode, mediaProjectionData);
         }
     }
     
+    // Remove a viewer's VideoSource before it is disposed; capture keeps running for the others
+    public void detachVideoSource(VideoSource videoSource) {
+        frameDistributor.detach(videoSource);
+    }
+    
 
     
 
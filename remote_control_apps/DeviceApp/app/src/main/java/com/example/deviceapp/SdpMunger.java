@@ -0,0 +1,58 @@
+package com.example.deviceapp;
+
+/**
+ * Rewrites the local offer for low-latency, send-only screen sharing:
+ * - a=sendrecv becomes a=sendonly (the controller never sends media)
+ * - the H.264 payload type 96 gets max-fr/max-fs frame limits
+ *
+ * Pure string work with no Android dependencies, so the benchmarks module can build it too.
+ * The SDP is rewritten in one pass into a presized builder, keeping its line endings.
+ */
+public final class SdpMunger {
+    static final String SENDRECV = "a=sendrecv";
+    static final String SENDONLY = "a=sendonly";
+    static final String FMTP_96 = "a=fmtp:96";
+    static final String FRAME_LIMITS = "max-fr=60;max-fs=8160";
+
+    private SdpMunger() {}
+
+    public static String mungeOffer(String sdp) {
+        StringBuilder out = new StringBuilder(sdp.length() + FRAME_LIMITS.length() + 1);
+        int length = sdp.length();
+        int start = 0;
+        while (start < length) {
+            int end = sdp.indexOf('\n', start);
+            end = end < 0 ? length : end + 1;
+            // Content of the line without its \r\n or \n
+            int contentEnd = end;
+            if (contentEnd > start && sdp.charAt(contentEnd - 1) == '\n') {
+                contentEnd--;
+            }
+            if (contentEnd > start && sdp.charAt(contentEnd - 1) == '\r') {
+                contentEnd--;
+            }
+
+            if (isLine(sdp, start, contentEnd, SENDRECV)) {
+                out.append(SENDONLY).append(sdp, contentEnd, end);
+            } else if (sdp.startsWith(FMTP_96, start)
+                    && (contentEnd == start + FMTP_96.length() || sdp.charAt(start + FMTP_96.length()) == ' ')) {
+                out.append(FMTP_96).append(' ').append(FRAME_LIMITS);
+                int params = start + FMTP_96.length() + 1;
+                if (params < contentEnd) {
+                    // Join the existing parameters with ';' so the line stays well-formed
+                    out.append(';').append(sdp, params, end);
+                } else {
+                    out.append(sdp, contentEnd, end);
+                }
+            } else {
+                out.append(sdp, start, end);
+            }
+            start = end;
+        }
+        return out.toString();
+    }
+
+    private static boolean isLine(String sdp, int start, int contentEnd, String line) {
+        return contentEnd - start == line.length() && sdp.startsWith(line, start);
+    }
+}
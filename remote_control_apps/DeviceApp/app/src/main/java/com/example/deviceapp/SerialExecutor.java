@@ -0,0 +1,101 @@
+package com.example.deviceapp;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs tasks one at a time, in submission order, on a shared backing executor. Several of
+ * these over one pool give per-connection ordering while different connections still run in
+ * parallel, and a slow task only holds up its own connection.
+ *
+ * The time each task waits between execute() and starting is kept in a LatencyHistogram.
+ */
+public class SerialExecutor implements Executor {
+    private static final String TAG = "SerialExecutor";
+
+    private final String name;
+    private final Executor backing;
+    // Guarded by "this"
+    private final ArrayDeque<Task> tasks = new ArrayDeque<>();
+    private Task active;
+    private boolean shutdown;
+    private int maxDepth;
+    private long executed;
+
+    private final LatencyHistogram queueLatencyUs = new LatencyHistogram();
+
+    private final class Task implements Runnable {
+        final Runnable command;
+        final long enqueueTimeNs = System.nanoTime();
+
+        Task(Runnable command) {
+            this.command = command;
+        }
+
+        @Override
+        public void run() {
+            queueLatencyUs.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - enqueueTimeNs));
+            try {
+                command.run();
+            } catch (Exception e) {
+                Log.e(TAG, name + ": task failed", e);
+            } finally {
+                scheduleNext();
+            }
+        }
+    }
+
+    public SerialExecutor(String name, Executor backing) {
+        this.name = name;
+        this.backing = backing;
+    }
+
+    @Override
+    public synchronized void execute(Runnable command) {
+        if (shutdown) {
+            Log.w(TAG, name + ": shut down, dropping task");
+            return;
+        }
+        tasks.add(new Task(command));
+        maxDepth = Math.max(maxDepth, tasks.size());
+        if (active == null) {
+            scheduleNext();
+        }
+    }
+
+    /** Run command after everything already queued, then refuse further tasks. */
+    public synchronized void shutdownAfter(Runnable command) {
+        execute(command);
+        shutdown = true;
+    }
+
+    public synchronized int getQueueDepth() {
+        return tasks.size();
+    }
+
+    public synchronized String getStats() {
+        return name + ": executed " + executed + ", max depth " + maxDepth
+                + ", queue p50/p99/max us: " + queueLatencyUs.getPercentile(50)
+                + "/" + queueLatencyUs.getPercentile(99) + "/" + queueLatencyUs.getMax();
+    }
+
+    private synchronized void scheduleNext() {
+        if (active != null) {
+            executed++;
+        }
+        active = tasks.poll();
+        if (active != null) {
+            try {
+                backing.execute(active);
+            } catch (RejectedExecutionException e) {
+                Log.e(TAG, name + ": backing executor rejected task, dropping " + (tasks.size() + 1), e);
+                tasks.clear();
+                active = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.deviceapp;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Tracks every WebRTC session by its token so a controller that reconnects can take its
+ * peer connection back instead of negotiating a new one. Media and DataChannels don't
+ * depend on the WebSocket, so video and input keep flowing while signaling is down.
+ *
+ * A session is attached while a connection owns it. After a blip the device often still
+ * holds the old, half-open connection, so an attached session can be resumed as well; the
+ * caller takes it from the stale connection. A session detached because its connection
+ * closed is kept for its grace period, then cleaned up on the given executor.
+ */
+public class SessionRegistry {
+    private static final String TAG = "SessionRegistry";
+
+    public static final long DEFAULT_GRACE_MS = 15000;
+    public static final long MAX_GRACE_MS = 5 * 60 * 1000;
+    private static final int TOKEN_BYTES = 16;
+
+    private static final class Session {
+        final WebRTCManager manager;
+        // Pending cleanup while detached, null while a connection owns the session
+        Runnable expiry;
+
+        Session(WebRTCManager manager) {
+            this.manager = manager;
+        }
+    }
+
+    private final Executor cleanupExecutor;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    public SessionRegistry(Executor cleanupExecutor) {
+        this.cleanupExecutor = cleanupExecutor;
+    }
+
+    /** An unguessable token for a new session. */
+    public String newToken() {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        StringBuilder token = new StringBuilder(TOKEN_BYTES * 2);
+        for (byte b : bytes) {
+            token.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return token.toString();
+    }
+
+    /** Register manager's session as owned by a live connection. */
+    public void attach(WebRTCManager manager) {
+        String token = manager.getSessionToken();
+        if (token != null) {
+            sessions.put(token, new Session(manager));
+        }
+    }
+
+    /** Keep manager's session for its grace period, then clean it up unless resumed. */
+    public void detach(WebRTCManager manager) {
+        String token = manager.getSessionToken();
+        long graceMs = manager.getResumeGraceMs();
+        if (token == null || graceMs <= 0) {
+            end(manager);
+            manager.cleanup();
+            return;
+        }
+        Session detached = new Session(manager);
+        detached.expiry = () -> {
+            // Only if still this detached entry; a resume replaces it
+            if (sessions.remove(token, detached)) {
+                cleanupExecutor.execute(() -> {
+                    Log.d(TAG, "Session not resumed within " + graceMs + " ms, cleaning up");
+                    manager.cleanup();
+                });
+            }
+        };
+        sessions.put(token, detached);
+        handler.postDelayed(detached.expiry, graceMs);
+        Log.d(TAG, "Session detached, resumable for " + graceMs + " ms");
+    }
+
+    /**
+     * The session with this token, attached again and owned by the caller; null if unknown
+     * or expired. If it is still attached, the caller must take it from its old connection.
+     */
+    public WebRTCManager resume(String token) {
+        Session session = token != null ? sessions.get(token) : null;
+        if (session == null) {
+            return null;
+        }
+        if (session.expiry != null) {
+            if (!sessions.replace(token, session, new Session(session.manager))) {
+                // Expired or resumed by someone else meanwhile
+                return null;
+            }
+            handler.removeCallbacks(session.expiry);
+        }
+        return session.manager;
+    }
+
+    /** Forget manager's session, e.g. because it is being cleaned up. */
+    public void end(WebRTCManager manager) {
+        String token = manager.getSessionToken();
+        Session session = token != null ? sessions.get(token) : null;
+        if (session != null && session.manager == manager && sessions.remove(token, session)
+                && session.expiry != null) {
+            handler.removeCallbacks(session.expiry);
+        }
+    }
+
+    /** Clean up every detached session now. */
+    public void expireAll() {
+        List<Session> expired = new ArrayList<>();
+        for (Map.Entry<String, Session> entry : sessions.entrySet()) {
+            Session session = entry.getValue();
+            if (session.expiry != null && sessions.remove(entry.getKey(), session)) {
+                handler.removeCallbacks(session.expiry);
+                expired.add(session);
+            }
+        }
+        for (Session session : expired) {
+            cleanupExecutor.execute(session.manager::cleanup);
+        }
+    }
+}
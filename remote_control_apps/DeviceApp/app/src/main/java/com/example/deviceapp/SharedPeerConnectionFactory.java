@@ -0,0 +1,96 @@
+package com.example.deviceapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.webrtc.DefaultVideoDecoderFactory;
+import org.webrtc.DefaultVideoEncoderFactory;
+import org.webrtc.EglBase;
+import org.webrtc.PeerConnectionFactory;
+import org.webrtc.VideoCodecInfo;
+
+/**
+ * One PeerConnectionFactory for the whole process, shared by every session.
+ *
+ * Building a factory initializes the native library, creates an EGL context and enumerates
+ * the hardware codecs, which costs hundreds of milliseconds. WebSocketService warms it up
+ * when it starts and holds a reference, so a session only bumps the reference count. The
+ * factory is disposed once the last reference is released.
+ *
+ * The root EglBase is created once and lives as long as the process; capture contexts are
+ * created shared with it so the encoder can read captured textures directly.
+ */
+public final class SharedPeerConnectionFactory {
+    private static final String TAG = "SharedPCFactory";
+
+    // All guarded by the class
+    private static boolean initialized;
+    private static EglBase rootEglBase;
+    private static PeerConnectionFactory factory;
+    private static int refCount;
+
+    private SharedPeerConnectionFactory() {}
+
+    /** Take a reference to the shared factory, creating it on first use. Pair with release(). */
+    public static synchronized PeerConnectionFactory acquire(Context context) {
+        if (factory == null) {
+            factory = create(context.getApplicationContext());
+        }
+        refCount++;
+        return factory;
+    }
+
+    public static synchronized void release() {
+        if (refCount == 0) {
+            Log.w(TAG, "Release without a matching acquire");
+            return;
+        }
+        if (--refCount == 0 && factory != null) {
+            factory.dispose();
+            factory = null;
+            Log.d(TAG, "PeerConnectionFactory disposed");
+        }
+    }
+
+    public static synchronized int getRefCount() {
+        return refCount;
+    }
+
+    /** The process-wide EGL context that encoders use; share capture contexts with it. */
+    public static synchronized EglBase.Context getEglBaseContext() {
+        if (rootEglBase == null) {
+            rootEglBase = EglBase.create();
+        }
+        return rootEglBase.getEglBaseContext();
+    }
+
+    private static PeerConnectionFactory create(Context context) {
+        long startNs = System.nanoTime();
+        if (!initialized) {
+            // Fast initialization - disable internal tracer for performance
+            PeerConnectionFactory.initialize(PeerConnectionFactory.InitializationOptions.builder(context)
+                    .setEnableInternalTracer(false)
+                    .createInitializationOptions());
+            initialized = true;
+        }
+
+        EglBase.Context eglContext = getEglBaseContext();
+        // Configure video encoder/decoder factories with proper hardware acceleration
+        DefaultVideoEncoderFactory encoderFactory = new DefaultVideoEncoderFactory(eglContext, true, true);
+        DefaultVideoDecoderFactory decoderFactory = new DefaultVideoDecoderFactory(eglContext);
+        // Codec enumeration queries MediaCodecList; do it now rather than during the first offer
+        VideoCodecInfo[] codecs = encoderFactory.getSupportedCodecs();
+
+        PeerConnectionFactory.Options options = new PeerConnectionFactory.Options();
+        options.networkIgnoreMask = 0; // Don't ignore any network types
+
+        PeerConnectionFactory created = PeerConnectionFactory.builder()
+                .setOptions(options)
+                .setVideoEncoderFactory(encoderFactory)
+                .setVideoDecoderFactory(decoderFactory)
+                .createPeerConnectionFactory();
+        Log.d(TAG, "PeerConnectionFactory created in " + (System.nanoTime() - startNs) / 1_000_000
+                + " ms, " + codecs.length + " encoder codecs");
+        return created;
+    }
+}
@@ -0,0 +1,312 @@
+package com.example.deviceapp;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps one long-lived InjectorProcess under app_process, loaded from the app's own APK, and
+ * streams injection commands to it over stdin. Unlike running "input" per command, ART starts
+ * once. Commands are pipelined back to back and the process answers each one with a marker
+ * line, so completion (and exit code) is reported asynchronously. Streamed moves use
+ * submitLatest, so a backed-up injector skips to the newest position instead of replaying
+ * every one.
+ *
+ * Only the writer thread touches the pipe to the injector's stdin. Submitters and the reader
+ * just queue lines, so a full pipe can never stop the reader from draining the injector's
+ * stdout, which the injector needs in order to keep reading.
+ */
+public class ShellInjectionEngine {
+    private static final String TAG = "ShellInjectionEngine";
+    private static final String APP_PROCESS = "/system/bin/app_process";
+    static final String DONE_MARKER = "__wertc_done__";
+
+    public interface Callback {
+        void onCommandComplete(long commandId, int exitCode, long latencyNs);
+    }
+
+    private static class PendingCommand {
+        final long id;
+        final String command;
+        final Callback callback;
+        final long submitTimeNs;
+
+        PendingCommand(long id, String command, Callback callback, long submitTimeNs) {
+            this.id = id;
+            this.command = command;
+            this.callback = callback;
+            this.submitTimeNs = submitTimeNs;
+        }
+    }
+
+    private final Object writeLock = new Object();
+    private final ConcurrentLinkedQueue<PendingCommand> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicLong nextCommandId = new AtomicLong(1);
+
+    private Process process;
+    // Lines for the current process's writer thread
+    private BlockingQueue<String> outbound;
+    private Thread readerThread;
+    private volatile boolean running = false;
+    private final String classPath;
+
+    // Latest-only commands, guarded by writeLock: the one in flight (0 if none) and the
+    // newest one waiting for it
+    private long latestInFlightId;
+    private String heldCommand;
+    private Callback heldCallback;
+    private long replacedCount;
+
+    /** classPath is the APK holding InjectorProcess, i.e. Context.getPackageCodePath(). */
+    public ShellInjectionEngine(String classPath) {
+        this.classPath = classPath;
+        Log.d(TAG, "ShellInjectionEngine created");
+    }
+
+    /**
+     * Queue an InjectorProcess command for execution. Returns immediately with the command
+     * id, or -1 if it could not be sent.
+     */
+    public long submit(String command, Callback callback) {
+        synchronized (writeLock) {
+            // Keep submit order: a held command goes out first
+            sendHeld();
+            return write(command, callback);
+        }
+    }
+
+    /**
+     * Like submit, for commands where only the newest one matters, such as streamed moves.
+     * While an earlier one is still running the command is held, replacing any command held
+     * before it, and sent when that one completes or ahead of the next submit. Replaced
+     * commands never run and get no callback.
+     */
+    public void submitLatest(String command, Callback callback) {
+        synchronized (writeLock) {
+            if (latestInFlightId != 0) {
+                if (heldCommand != null) {
+                    replacedCount++;
+                }
+                heldCommand = command;
+                heldCallback = callback;
+                return;
+            }
+            latestInFlightId = Math.max(write(command, callback), 0);
+        }
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public long getReplacedCount() {
+        synchronized (writeLock) {
+            return replacedCount;
+        }
+    }
+
+    // Caller holds writeLock
+    private long write(String command, Callback callback) {
+        if (!running && !startProcess()) {
+            if (callback != null) {
+                callback.onCommandComplete(-1, -1, 0);
+            }
+            return -1;
+        }
+
+        long id = nextCommandId.getAndIncrement();
+        PendingCommand pendingCommand = new PendingCommand(id, command, callback, System.nanoTime());
+        pending.add(pendingCommand);
+        outbound.add(id + " " + command);
+        return id;
+    }
+
+    // Caller holds writeLock
+    private void sendHeld() {
+        if (heldCommand == null) {
+            return;
+        }
+        String command = heldCommand;
+        Callback callback = heldCallback;
+        heldCommand = null;
+        heldCallback = null;
+        latestInFlightId = Math.max(write(command, callback), 0);
+    }
+
+    // Caller holds writeLock; a held command is stale once the injector is gone
+    private void dropLatest() {
+        latestInFlightId = 0;
+        heldCommand = null;
+        heldCallback = null;
+    }
+
+    public void shutdown() {
+        synchronized (writeLock) {
+            stopProcess();
+        }
+        Log.d(TAG, "ShellInjectionEngine shut down");
+    }
+
+    private boolean startProcess() {
+        if (classPath == null) {
+            Log.e(TAG, "No APK path to load the injector from");
+            return false;
+        }
+        try {
+            process = launch();
+            outbound = new LinkedBlockingQueue<>();
+
+            final Process injectorProcess = process;
+            final BlockingQueue<String> lines = outbound;
+            Thread writerThread = new Thread(() -> writeLoop(injectorProcess, lines), "ShellInjectionWriter");
+            writerThread.setDaemon(true);
+            readerThread = new Thread(() -> readLoop(injectorProcess), "ShellInjectionReader");
+            readerThread.setDaemon(true);
+            running = true;
+            writerThread.start();
+            readerThread.start();
+
+            Log.d(TAG, "Injector process started");
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to start injector process", e);
+            process = null;
+            outbound = null;
+            running = false;
+            return false;
+        }
+    }
+
+    Process launch() throws IOException {
+        ProcessBuilder builder = new ProcessBuilder(APP_PROCESS, "/system/bin", InjectorProcess.class.getName());
+        builder.environment().put("CLASSPATH", classPath);
+        builder.redirectErrorStream(true);
+        return builder.start();
+    }
+
+    private void stopProcess() {
+        running = false;
+        dropLatest();
+        if (outbound != null) {
+            // Whatever has not been written is failed below; an empty line closes the
+            // injector's stdin, which makes it exit
+            outbound.clear();
+            outbound.add("");
+            outbound = null;
+        }
+        if (process != null) {
+            process.destroy();
+            process = null;
+        }
+        readerThread = null;
+        failPending();
+    }
+
+    private void writeLoop(Process injectorProcess, BlockingQueue<String> lines) {
+        try (BufferedWriter writer = new BufferedWriter(
+                new OutputStreamWriter(injectorProcess.getOutputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while (!(line = lines.take()).isEmpty()) {
+                writer.write(line);
+                writer.write('\n');
+                // Lines queued meanwhile go out in the same write
+                if (lines.isEmpty()) {
+                    writer.flush();
+                }
+            }
+        } catch (IOException e) {
+            synchronized (writeLock) {
+                if (process == injectorProcess) {
+                    Log.e(TAG, "Failed to write to injector, restarting on next submit", e);
+                    stopProcess();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void readLoop(Process injectorProcess) {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(injectorProcess.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(DONE_MARKER)) {
+                    handleCompletion(line);
+                } else if (!line.isEmpty()) {
+                    // Anything else is stdout/stderr output of the injector or the runtime
+                    Log.w(TAG, "Injector output: " + line);
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Injector reader stopped: " + e.getMessage());
+        }
+
+        synchronized (writeLock) {
+            if (process == injectorProcess) {
+                Log.w(TAG, "Injector process exited, will restart on next command");
+                stopProcess();
+            }
+        }
+    }
+
+    private void handleCompletion(String line) {
+        String[] parts = line.split(" ");
+        if (parts.length < 3) {
+            return;
+        }
+
+        long id;
+        int exitCode;
+        try {
+            id = Long.parseLong(parts[1]);
+            exitCode = Integer.parseInt(parts[2]);
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Malformed completion marker: " + line);
+            return;
+        }
+
+        // The injector runs commands strictly in order, so completions arrive in submit order
+        PendingCommand command;
+        while ((command = pending.poll()) != null) {
+            if (command.id == id) {
+                complete(command, exitCode);
+                break;
+            }
+            Log.w(TAG, "Missing completion for command " + command.id + ": " + command.command);
+            complete(command, -1);
+        }
+
+        synchronized (writeLock) {
+            if (latestInFlightId != 0 && latestInFlightId <= id) {
+                latestInFlightId = 0;
+                sendHeld();
+            }
+        }
+    }
+
+    private void complete(PendingCommand command, int exitCode) {
+        if (exitCode != 0) {
+            Log.w(TAG, "Injector command failed with exit code: " + exitCode + ", command: " + command.command);
+        }
+        if (command.callback != null) {
+            command.callback.onCommandComplete(command.id, exitCode, System.nanoTime() - command.submitTimeNs);
+        }
+    }
+
+    private void failPending() {
+        PendingCommand command;
+        while ((command = pending.poll()) != null) {
+            complete(command, -1);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.deviceapp;
+
+import android.content.Context;
+import android.util.Log;
+import android.view.MotionEvent;
+
+/**
+ * Fallback backend for builds without INJECT_EVENTS in the app process. Commands are streamed
+ * to one long-lived InjectorProcess under app_process, which injects them the way the "input"
+ * shell tool would, without paying app_process startup for every command.
+ */
+public class ShellInputInjector implements InputInjector {
+    private static final String TAG = "ShellInputInjector";
+
+    private final ShellInjectionEngine shellEngine;
+    private final ShellInjectionEngine.Callback commandCallback = (commandId, exitCode, latencyNs) -> {
+        if (exitCode == 0) {
+            Log.d(TAG, "Command " + commandId + " completed in " + (latencyNs / 1000000) + " ms");
+        }
+    };
+
+    public ShellInputInjector(Context context) {
+        this(context.getPackageCodePath());
+    }
+
+    ShellInputInjector(String classPath) {
+        shellEngine = new ShellInjectionEngine(classPath);
+    }
+
+    @Override
+    public String getName() {
+        return "shell";
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    public void tap(float x, float y) {
+        execute("tap " + x + " " + y);
+    }
+
+    @Override
+    public void longPress(float x, float y, long durationMs) {
+        execute("longpress " + x + " " + y + " " + durationMs);
+    }
+
+    @Override
+    public void swipe(float startX, float startY, float endX, float endY, long durationMs) {
+        execute("swipe " + startX + " " + startY + " " + endX + " " + endY + " " + durationMs);
+    }
+
+    @Override
+    public void keyEvent(int keyCode) {
+        execute("key " + keyCode);
+    }
+
+    @Override
+    public void text(String text) {
+        // Typed through KeyCharacterMap in the injector, so nothing but line breaks needs escaping
+        execute("text " + escapeText(text));
+    }
+
+    @Override
+    public void keys(int[] keyCodes, int metaState) {
+        // One command: the injector holds the modifiers down around the whole sequence
+        StringBuilder command = new StringBuilder("keys ").append(metaState);
+        for (int keyCode : keyCodes) {
+            command.append(' ').append(keyCode);
+        }
+        execute(command.toString());
+    }
+
+    // Commands are one per line, so backslashes and line breaks are escaped
+    static String escapeText(String text) {
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                escaped.append("\\\\");
+            } else if (c == '\n') {
+                escaped.append("\\n");
+            } else if (c == '\r') {
+                escaped.append("\\r");
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    static String unescapeText(String escaped) {
+        StringBuilder text = new StringBuilder(escaped.length());
+        for (int i = 0; i < escaped.length(); i++) {
+            char c = escaped.charAt(i);
+            if (c == '\\' && i + 1 < escaped.length()) {
+                char next = escaped.charAt(++i);
+                text.append(next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                text.append(c);
+            }
+        }
+        return text.toString();
+    }
+
+    @Override
+    public void motion(int action, TouchPointers pointers) {
+        int count = pointers.getCount();
+        if (count == 0) {
+            return;
+        }
+        // The whole pointer set, so the injector can rebuild the multi-touch MotionEvent
+        StringBuilder command = new StringBuilder("motion ").append(action)
+                .append(' ').append(pointers.getDownTime()).append(' ').append(count);
+        for (int i = 0; i < count; i++) {
+            command.append(' ').append(pointers.getId(i))
+                    .append(' ').append(pointers.getX(i))
+                    .append(' ').append(pointers.getY(i));
+        }
+        if ((action & MotionEvent.ACTION_MASK) == MotionEvent.ACTION_MOVE) {
+            // Only the newest position matters; moves wait for the one in flight to finish
+            executeLatest(command.toString());
+        } else {
+            execute(command.toString());
+        }
+    }
+
+    @Override
+    public void release() {
+        shellEngine.shutdown();
+    }
+
+    protected void execute(String command) {
+        // Non-blocking: completion and exit code are reported through commandCallback
+        shellEngine.submit(command, commandCallback);
+    }
+
+    protected void executeLatest(String command) {
+        shellEngine.submitLatest(command, commandCallback);
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.deviceapp;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Parsing of WebSocket signaling messages. Uses the JsonParser tree model directly rather
+ * than Gson.fromJson(message, JsonObject.class), which goes through the reflective adapter
+ * lookup on every call. No Android dependencies, so the benchmarks module can build it.
+ */
+public final class SignalingMessages {
+    private SignalingMessages() {}
+
+    /** Parse a signaling message; throws JsonParseException or IllegalStateException if it isn't a JSON object. */
+    public static JsonObject parse(String message) {
+        return JsonParser.parseString(message).getAsJsonObject();
+    }
+
+    /** The "type" field, or null if it is missing or not a string. */
+    public static String getType(JsonObject message) {
+        JsonElement type = message.get("type");
+        return type != null && type.isJsonPrimitive() ? type.getAsString() : null;
+    }
+}
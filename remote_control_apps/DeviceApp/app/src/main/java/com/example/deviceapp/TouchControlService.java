@@ -1,20 +1,66 @@
 package com.example.deviceapp;
 
+import android.content.Context;
 import android.util.Log;
-import java.io.IOException;
+import android.view.MotionEvent;
 
 public class TouchControlService {
     private static final String TAG = "TouchControlService";
+    // Per-event logging is formatted only when enabled with "adb shell setprop log.tag.TouchControlService DEBUG"
+    private static final boolean DEBUG = Log.isLoggable(TAG, Log.DEBUG);
+    private static final long LONG_PRESS_DURATION_MS = 1000;
+    private static final long DEFAULT_SWIPE_DURATION_MS = 500;
     
-    public TouchControlService() {
-        Log.d(TAG, "TouchControlService initialized");
+    private final Context context;
+    private final InputInjector fixedInjector;
+    private final GestureStateMachine gestureStateMachine = new GestureStateMachine(this::getInjector);
+    
+    public TouchControlService(Context context) {
+        this.context = context.getApplicationContext();
+        this.fixedInjector = null;
+        Log.d(TAG, "TouchControlService initialized with injector: " + getInjector().getName());
+    }
+    
+    // Pin a specific backend, e.g. FakeInputInjector in tests
+    public TouchControlService(InputInjector injector) {
+        this.context = null;
+        this.fixedInjector = injector;
+        Log.d(TAG, "TouchControlService initialized with injector: " + injector.getName());
+    }
+    
+    private InputInjector getInjector() {
+        // Resolve per event so a backend upgrade (accessibility connecting later) is picked up
+        return fixedInjector != null ? fixedInjector : InputInjectors.getDefault(context);
+    }
+    
+    public void release() {
+        cancelGestures();
+        // The default injector is process-wide and outlives a single session
+        if (fixedInjector != null) {
+            fixedInjector.release();
+        }
+    }
+    
+    // Don't leave a finger stuck on the screen if the controller went away mid-drag
+    public void cancelGestures() {
+        synchronized (gestureStateMachine) {
+            gestureStateMachine.cancelAll();
+        }
     }
     
     public void handleControlEvent(ControlEvent event) {
         try {
-            Log.d(TAG, "Handling control event: " + event.type + " at (" + event.x + ", " + event.y + ")");
+            if (DEBUG) {
+                Log.d(TAG, "Handling control event: " + event.type + " at (" + event.x + ", " + event.y + ")");
+            }
             
-            if (event.isSpecialKey()) {
+            if (event.isStreamingTouch()) {
+                handleStreamingTouch(event);
+            } else if (ControlEvent.TYPE_TEXT.equals(event.type)) {
+                handleText(event);
+            } else if (ControlEvent.TYPE_KEYS.equals(event.type)) {
+                handleKeys(event);
+            } else if (event.isSpecialKey()) {
                 handleSpecialKey(event.getSpecialKeyCode());
             } else {
                 handleTouch(event);
@@ -26,15 +72,16 @@ public class TouchControlService {
     
     private void handleTouch(ControlEvent event) {
         try {
-            if ("click".equals(event.type)) {
-                executeShellTouch((int) event.x, (int) event.y);
-            } else if ("long_click".equals(event.type)) {
-                executeShellLongTouch((int) event.x, (int) event.y);
-            } else if ("swipe".equals(event.type) && event.endX != null && event.endY != null) {
-                executeShellSwipe(
-                    (int) event.x, (int) event.y,
-                    (int) event.endX.doubleValue(), (int) event.endY.doubleValue(),
-                    event.duration != null ? event.duration : 500
+            InputInjector injector = getInjector();
+            if (ControlEvent.TYPE_CLICK.equals(event.type)) {
+                injector.tap((float) event.x, (float) event.y);
+            } else if (ControlEvent.TYPE_LONG_CLICK.equals(event.type)) {
+                injector.longPress((float) event.x, (float) event.y, LONG_PRESS_DURATION_MS);
+            } else if (ControlEvent.TYPE_SWIPE.equals(event.type) && event.endX != null && event.endY != null) {
+                injector.swipe(
+                    (float) event.x, (float) event.y,
+                    event.endX.floatValue(), event.endY.floatValue(),
+                    event.duration != null ? event.duration : DEFAULT_SWIPE_DURATION_MS
                 );
             }
         } catch (Exception e) {
@@ -42,45 +89,103 @@ public class TouchControlService {
         }
     }
     
-    private void handleSpecialKey(int keyCode) {
-        try {
-            executeShellKeyEvent(keyCode);
-        } catch (Exception e) {
-            Log.e(TAG, "Error executing key event", e);
+    private void handleStreamingTouch(ControlEvent event) {
+        float x = (float) event.x;
+        float y = (float) event.y;
+        synchronized (gestureStateMachine) {
+            switch (event.type) {
+                case ControlEvent.TYPE_DOWN:
+                    gestureStateMachine.onDown(event.pointerId, x, y);
+                    break;
+                case ControlEvent.TYPE_MOVE:
+                    gestureStateMachine.onMove(event.pointerId, x, y);
+                    break;
+                case ControlEvent.TYPE_UP:
+                    gestureStateMachine.onUp(event.pointerId, x, y);
+                    break;
+                case ControlEvent.TYPE_CANCEL:
+                    gestureStateMachine.cancelAll();
+                    break;
+                case ControlEvent.TYPE_TOUCH:
+                    if (event.pointerCount > 0) {
+                        gestureStateMachine.onPointers(event.action, event.pointerId,
+                                event.pointers, event.pointerCount);
+                    }
+                    break;
+                default:
+                    break;
+            }
         }
     }
     
-    private void executeShellTouch(int x, int y) throws IOException, InterruptedException {
-        String command = String.format("input tap %d %d", x, y);
-        executeShellCommand(command);
-        Log.d(TAG, "Executed touch at (" + x + ", " + y + ")");
+    /** Inject one move carrying the first count pointers; used by MotionCoalescer. */
+    public void handleMoveBatch(ControlEvent.Pointer[] pointers, int count) {
+        try {
+            synchronized (gestureStateMachine) {
+                gestureStateMachine.onPointers(MotionEvent.ACTION_MOVE, -1, pointers, count);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error injecting move batch", e);
+        }
     }
     
-    private void executeShellLongTouch(int x, int y) throws IOException, InterruptedException {
-        // Simulate long touch with swipe command (same start and end point, longer duration)
-        String command = String.format("input swipe %d %d %d %d 1000", x, y, x, y);
-        executeShellCommand(command);
-        Log.d(TAG, "Executed long touch at (" + x + ", " + y + ")");
+    private void handleText(ControlEvent event) {
+        if (event.text == null || event.text.isEmpty()) {
+            return;
+        }
+        int repeat = clampRepeat(event.repeat, ControlEvent.MAX_TEXT_LENGTH / event.text.length());
+        if (repeat == 0) {
+            Log.w(TAG, "Dropping text event of " + event.text.length() + " chars, over the limit");
+            return;
+        }
+        String text = event.text;
+        if (repeat > 1) {
+            StringBuilder builder = new StringBuilder(text.length() * repeat);
+            for (int i = 0; i < repeat; i++) {
+                builder.append(text);
+            }
+            text = builder.toString();
+        }
+        try {
+            getInjector().text(text);
+        } catch (Exception e) {
+            Log.e(TAG, "Error injecting text", e);
+        }
     }
     
-    private void executeShellSwipe(int startX, int startY, int endX, int endY, int duration) 
-            throws IOException, InterruptedException {
-        String command = String.format("input swipe %d %d %d %d %d", startX, startY, endX, endY, duration);
-        executeShellCommand(command);
-        Log.d(TAG, "Executed swipe from (" + startX + ", " + startY + ") to (" + endX + ", " + endY + ")");
+    private void handleKeys(ControlEvent event) {
+        if (event.keyCodes == null || event.keyCodes.length == 0) {
+            return;
+        }
+        int repeat = clampRepeat(event.repeat, ControlEvent.MAX_KEY_COUNT / event.keyCodes.length);
+        if (repeat == 0) {
+            Log.w(TAG, "Dropping keys event of " + event.keyCodes.length + " keys, over the limit");
+            return;
+        }
+        int[] keyCodes = event.keyCodes;
+        if (repeat > 1) {
+            keyCodes = new int[keyCodes.length * repeat];
+            for (int i = 0; i < repeat; i++) {
+                System.arraycopy(event.keyCodes, 0, keyCodes, i * event.keyCodes.length, event.keyCodes.length);
+            }
+        }
+        try {
+            getInjector().keys(keyCodes, KeyModifiers.toMetaState(event.modifiers));
+        } catch (Exception e) {
+            Log.e(TAG, "Error injecting key sequence", e);
+        }
     }
     
-    private void executeShellKeyEvent(int keyCode) throws IOException, InterruptedException {
-        String command = String.format("input keyevent %d", keyCode);
-        executeShellCommand(command);
-        Log.d(TAG, "Executed key event: " + keyCode);
+    // Requested repeat count, at least once and at most max (0 if even once is too much)
+    private static int clampRepeat(int repeat, int max) {
+        return Math.min(Math.max(repeat, 1), max);
     }
     
-    private void executeShellCommand(String command) throws IOException, InterruptedException {
-        Process process = Runtime.getRuntime().exec(command);
-        int exitCode = process.waitFor();
-        if (exitCode != 0) {
-            Log.w(TAG, "Shell command failed with exit code: " + exitCode + ", command: " + command);
+    private void handleSpecialKey(int keyCode) {
+        try {
+            getInjector().keyEvent(keyCode);
+        } catch (Exception e) {
+            Log.e(TAG, "Error executing key event", e);
         }
     }
-}
\ No newline at end of file
+}
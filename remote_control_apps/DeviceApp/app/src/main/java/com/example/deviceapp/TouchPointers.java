@@ -0,0 +1,85 @@
+package com.example.deviceapp;
+
+/**
+ * The set of pointers currently on the screen, in the order they went down, which is
+ * the pointer index order MotionEvent expects. Backed by fixed arrays so updating it per
+ * event allocates nothing. Not thread-safe; owned by GestureStateMachine.
+ */
+public class TouchPointers {
+    public static final int MAX_POINTERS = 10;
+    // MotionEvent pointer ids must be 0..31 (MotionEvent.PointerProperties, MAX_POINTER_ID in native code)
+    public static final int MAX_POINTER_ID = 31;
+
+    private final int[] ids = new int[MAX_POINTERS];
+    private final float[] xs = new float[MAX_POINTERS];
+    private final float[] ys = new float[MAX_POINTERS];
+    private int count;
+    private long downTime;
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getId(int index) {
+        return ids[index];
+    }
+
+    public float getX(int index) {
+        return xs[index];
+    }
+
+    public float getY(int index) {
+        return ys[index];
+    }
+
+    /** uptimeMillis of the first pointer going down. */
+    public long getDownTime() {
+        return downTime;
+    }
+
+    public int indexOf(int pointerId) {
+        for (int i = 0; i < count; i++) {
+            if (ids[i] == pointerId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Adds a pointer and returns its index, or -1 if the table is full. */
+    int add(int pointerId, float x, float y, long eventTime) {
+        if (count == MAX_POINTERS) {
+            return -1;
+        }
+        if (count == 0) {
+            downTime = eventTime;
+        }
+        ids[count] = pointerId;
+        xs[count] = x;
+        ys[count] = y;
+        return count++;
+    }
+
+    /** Returns true if the position actually changed. */
+    boolean update(int index, float x, float y) {
+        if (xs[index] == x && ys[index] == y) {
+            return false;
+        }
+        xs[index] = x;
+        ys[index] = y;
+        return true;
+    }
+
+    void remove(int index) {
+        for (int i = index; i < count - 1; i++) {
+            ids[i] = ids[i + 1];
+            xs[i] = xs[i + 1];
+            ys[i] = ys[i + 1];
+        }
+        count--;
+    }
+
+    void clear() {
+        count = 0;
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.deviceapp;
+
+import android.util.Log;
+
+import org.webrtc.CapturerObserver;
+import org.webrtc.VideoFrame;
+import org.webrtc.VideoSource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fans one capturer's frames out to every attached VideoSource, so each viewer gets its own
+ * encoder while the screen is captured once.
+ *
+ * Frames arrive on the capture thread and are owned by the capturer, which releases them
+ * when onFrameCaptured returns. The distributor holds its own reference while it hands a
+ * frame around, so a sink that releases too much cannot pull the texture from under the
+ * sinks after it. Attaching and detaching are safe from any thread. Delivery holds the
+ * distributor's lock, so detach waits for a frame in progress, after which the source may
+ * be disposed.
+ */
+public class VideoFrameDistributor implements CapturerObserver {
+    private static final String TAG = "VideoFrameDistributor";
+
+    private final List<VideoSource> sources = new ArrayList<>();
+    private boolean started;
+    private long deliveredFrames;
+    private long droppedFrames;
+
+    /** Start sending frames to source; it is told capture has started if it already has. */
+    public synchronized void attach(VideoSource source) {
+        if (sources.contains(source)) {
+            return;
+        }
+        sources.add(source);
+        if (started) {
+            source.getCapturerObserver().onCapturerStarted(true);
+        }
+        Log.d(TAG, "Attached video source, " + sources.size() + " viewers");
+    }
+
+    /** Stop sending frames to source; returns once no frame is being delivered to it. */
+    public synchronized void detach(VideoSource source) {
+        if (sources.remove(source)) {
+            Log.d(TAG, "Detached video source, " + sources.size() + " viewers");
+        }
+    }
+
+    public synchronized boolean hasViewers() {
+        return !sources.isEmpty();
+    }
+
+    public synchronized int getViewerCount() {
+        return sources.size();
+    }
+
+    public synchronized String getStats() {
+        return sources.size() + " viewers, delivered " + deliveredFrames + ", dropped " + droppedFrames;
+    }
+
+    @Override
+    public synchronized void onCapturerStarted(boolean success) {
+        started = success;
+        for (VideoSource source : sources) {
+            source.getCapturerObserver().onCapturerStarted(success);
+        }
+    }
+
+    @Override
+    public synchronized void onCapturerStopped() {
+        started = false;
+        for (VideoSource source : sources) {
+            source.getCapturerObserver().onCapturerStopped();
+        }
+    }
+
+    @Override
+    public synchronized void onFrameCaptured(VideoFrame frame) {
+        if (sources.isEmpty()) {
+            // Nobody is watching; the capturer still owns and releases the frame
+            droppedFrames++;
+            return;
+        }
+        frame.retain();
+        try {
+            // Indexed, so the per-frame loop creates no iterator
+            for (int i = 0; i < sources.size(); i++) {
+                VideoSource source = sources.get(i);
+                try {
+                    // The source copies or retains what it keeps, the frame stays ours
+                    source.getCapturerObserver().onFrameCaptured(frame);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error sending frame to VideoSource", e);
+                }
+            }
+            deliveredFrames++;
+        } finally {
+            frame.release();
+        }
+    }
+}
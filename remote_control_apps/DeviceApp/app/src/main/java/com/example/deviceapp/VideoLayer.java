@@ -0,0 +1,88 @@
+package com.example.deviceapp;
+
+import org.webrtc.RtpParameters;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The resolution ladder a viewer can pick from with select_layer. With simulcast each layer
+ * is its own encoding (identified by rid); without it the single encoding is reconfigured to
+ * the chosen layer, so switching works with any controller.
+ */
+public final class VideoLayer {
+    public static final VideoLayer FULL = new VideoLayer("f", 1.0, 12000000, 1000000, 60);
+    // The single-encoding default: half resolution at up to 8 Mbps and 60 fps
+    public static final VideoLayer HALF = new VideoLayer("h", 2.0, 8000000, 1000000, 60);
+    public static final VideoLayer QUARTER = new VideoLayer("q", 4.0, 2000000, 300000, 30);
+
+    // Highest resolution first
+    static final VideoLayer[] LAYERS = {FULL, HALF, QUARTER};
+    static final VideoLayer DEFAULT = HALF;
+
+    public final String rid;
+    public final double scaleResolutionDownBy;
+    public final int maxBitrateBps;
+    public final int minBitrateBps;
+    public final int maxFramerate;
+
+    private VideoLayer(String rid, double scaleResolutionDownBy, int maxBitrateBps, int minBitrateBps,
+                       int maxFramerate) {
+        this.rid = rid;
+        this.scaleResolutionDownBy = scaleResolutionDownBy;
+        this.maxBitrateBps = maxBitrateBps;
+        this.minBitrateBps = minBitrateBps;
+        this.maxFramerate = maxFramerate;
+    }
+
+    /** The layer with this rid, or null. */
+    public static VideoLayer forRid(String rid) {
+        for (VideoLayer layer : LAYERS) {
+            if (layer.rid.equals(rid)) {
+                return layer;
+            }
+        }
+        return null;
+    }
+
+    /** One encoding per layer, for a simulcast transceiver. */
+    static List<RtpParameters.Encoding> simulcastEncodings() {
+        List<RtpParameters.Encoding> encodings = new ArrayList<>(LAYERS.length);
+        for (VideoLayer layer : LAYERS) {
+            RtpParameters.Encoding encoding = new RtpParameters.Encoding(layer.rid, true, layer.scaleResolutionDownBy);
+            layer.applyTo(encoding);
+            encodings.add(encoding);
+        }
+        return encodings;
+    }
+
+    /**
+     * Configure a sender's encodings for a viewer that selected this layer. A simulcast sender
+     * keeps this layer and the smaller ones active, since anything above it would be encoded
+     * for nobody; a single encoding takes this layer's settings. That includes a simulcast
+     * sender the answer cut down to its first encoding.
+     */
+    void applyToSender(List<RtpParameters.Encoding> encodings) {
+        if (encodings.size() == 1) {
+            applyTo(encodings.get(0));
+            return;
+        }
+        for (RtpParameters.Encoding encoding : encodings) {
+            VideoLayer layer = forRid(encoding.rid);
+            if (layer != null) {
+                layer.applyTo(encoding);
+                encoding.active = layer.scaleResolutionDownBy >= scaleResolutionDownBy;
+            }
+        }
+    }
+
+    private void applyTo(RtpParameters.Encoding encoding) {
+        encoding.maxBitrateBps = maxBitrateBps;
+        encoding.minBitrateBps = minBitrateBps;
+        encoding.maxFramerate = maxFramerate;
+        encoding.scaleResolutionDownBy = scaleResolutionDownBy;
+        // Enable adaptive bitrate for network conditions
+        // google-webrtc-1.0.32006 version don't have this attribute and it can adjust bps auto.
+//        encoding.adaptive = true;
+    }
+}
@@ -1,110 +1,136 @@
 package com.example.deviceapp;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import org.webrtc.*;
 import org.java_websocket.WebSocket;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.google.gson.Gson;
+import java.io.File;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class WebRTCManager {
     private static final String TAG = "WebRTCManager";
+    // Per-message logging is formatted only when enabled with "adb shell setprop log.tag.WebRTCManager DEBUG"
+    private static final boolean DEBUG = Log.isLoggable(TAG, Log.DEBUG);
     
     private PeerConnectionFactory peerConnectionFactory;
     private PeerConnection peerConnection;
     private VideoSource videoSource;
     private VideoTrack videoTrack;
     private DataChannel dataChannel;
-    private WebSocket webSocket;
+    private DataChannel motionChannel;
+    private RtpTransceiver videoTransceiver;
+    private final PeerConnectionPool peerConnectionPool;
+    // Replaced when a controller resumes the session over a new connection
+    private volatile WebSocket webSocket;
+    private String sessionToken;
+    private long resumeGraceMs;
     private Gson gson = new Gson();
     private ScreenCaptureService screenCaptureService;
     private TouchControlService touchControlService;
+    private MotionCoalescer motionCoalescer;
+    private InputDispatcher inputDispatcher;
+    private final ControlEventCodec controlEventCodec = new ControlEventCodec();
+    // Receive path state, only touched on the DataChannel callback thread (shared by both lanes,
+    // whose callbacks all arrive on the WebRTC network thread)
+    private final ControlEventJsonParser controlEventJsonParser = new ControlEventJsonParser();
+    private final ControlEventPool controlEventPool = new ControlEventPool();
+    private byte[] messageScratch = new byte[512];
+    private final CoordinateTransform coordinateTransform = new CoordinateTransform();
+    private final InputLatencyTracer latencyTracer = new InputLatencyTracer();
+    private final ClockSync clockSync = new ClockSync(this::sendControlMessage);
+    private final ControlEventRecorder eventRecorder = new ControlEventRecorder();
+    private final ControlEventReplayer eventReplayer;
+    private final File recordingsDir;
 
-    private final static int FRAME_RATE = 60; // Increased to 60 fps for lower latency
-    private final static int MAX_BITRATE = 8000000; // Increased to 8 Mbps for better quality and lower latency
-    private final static int MIN_BITRATE = 1000000; // Minimum 1 Mbps for consistent quality
+    // Encoding settings per layer are in VideoLayer; the viewer picks one with select_layer
+    private static final String MSG_LAYER_SELECTED = "layer_selected";
+    private boolean simulcast;
+    private VideoLayer selectedLayer = VideoLayer.DEFAULT;
+    
+    // Fast connect: one offer carrying every host candidate instead of trickling them
+    private static final String MSG_ICE_CANDIDATES = "ice_candidates";
+    // Host-only gathering on a LAN finishes well within this
+    private static final long FAST_CONNECT_GATHER_CAP_MS = 300;
+    private final Handler gatherCapHandler = new Handler(Looper.getMainLooper());
+    private final Runnable gatherCapRunnable = () -> sendPendingOffer("gathering cap");
+    private boolean fastConnect;
+    // Guarded by "this"
+    private boolean offerPending;
+    private boolean offerSent;
+    private long offerStartNs;
+    // Gathered after a capped offer went out; sent as one batch when gathering completes
+    private final List<IceCandidate> lateCandidates = new ArrayList<>();
+    // Remote candidates that arrived before the remote description, guarded by "this"
+    private final List<IceCandidate> pendingRemoteCandidates = new ArrayList<>();
+    
+    // Reliable ordered lane for clicks, keys and gesture boundaries
+    static final String CONTROL_CHANNEL_LABEL = "control";
+    // Unreliable unordered lane for moves, a lost sample is superseded by the next one
+    static final String MOTION_CHANNEL_LABEL = "motion";
+    
+    // DataChannel control format negotiation
+    private static final String MSG_CONTROL_FORMATS = "control_formats";
+    private static final String MSG_CONTROL_FORMAT = "control_format";
+    
+    // Recording and replay of the control-event stream, for input-path benchmarks
+    private static final String MSG_RECORD_CONTROL = "record_control";
+    private static final String MSG_RECORD_STATUS = "record_status";
+    private static final String MSG_REPLAY = "replay";
+    private static final String RECORDINGS_DIR = "recordings";
     
     private static final String[] MANDATORY_FIELDS = {
         "OfferToReceiveAudio",
         "OfferToReceiveVideo"
     };
     
-    public WebRTCManager(Context context, ScreenCaptureService screenCaptureService) {
+    public WebRTCManager(Context context, ScreenCaptureService screenCaptureService,
+                         PeerConnectionPool peerConnectionPool) {
         this.screenCaptureService = screenCaptureService;
-        this.touchControlService = new TouchControlService();
-        initializePeerConnectionFactory(context);
+        this.peerConnectionPool = peerConnectionPool;
+        this.touchControlService = new TouchControlService(context);
+        this.motionCoalescer = new MotionCoalescer(touchControlService, latencyTracer);
+        latencyTracer.setReporter(this::sendControlMessage);
+        latencyTracer.setClockSync(clockSync);
+        // DataChannel -> dispatcher thread -> coalescer -> injector
+        this.inputDispatcher = new InputDispatcher(motionCoalescer, controlEventPool);
+        this.eventReplayer = new ControlEventReplayer(touchControlService);
+        this.recordingsDir = new File(context.getFilesDir(), RECORDINGS_DIR);
+        // Shared and normally already warm, see SharedPeerConnectionFactory
+        this.peerConnectionFactory = SharedPeerConnectionFactory.acquire(context);
     }
     
-    private void initializePeerConnectionFactory(Context context) {
-        // Fast initialization - disable internal tracer for performance
-        PeerConnectionFactory.InitializationOptions initializationOptions =
-                PeerConnectionFactory.InitializationOptions.builder(context)
-                        .setEnableInternalTracer(false)  // Disable for faster startup
-                        .createInitializationOptions();
-        PeerConnectionFactory.initialize(initializationOptions);
-        
-        // Create shared EGL context for consistent rendering
-        EglBase rootEglBase = EglBase.create();
-        
-        // Configure video encoder/decoder factories with proper hardware acceleration
-        VideoEncoderFactory encoderFactory = new DefaultVideoEncoderFactory(
-                rootEglBase.getEglBaseContext(), true, true);
-        VideoDecoderFactory decoderFactory = new DefaultVideoDecoderFactory(
-                rootEglBase.getEglBaseContext());
-        
-        PeerConnectionFactory.Options options = new PeerConnectionFactory.Options();
-        options.networkIgnoreMask = 0; // Don't ignore any network types
-        
-        peerConnectionFactory = PeerConnectionFactory.builder()
-                .setOptions(options)
-                .setVideoEncoderFactory(encoderFactory)
-                .setVideoDecoderFactory(decoderFactory)
-                .createPeerConnectionFactory();
-        
-        Log.d(TAG, "PeerConnectionFactory initialized with fast config");
+    public void createPeerConnection(WebSocket webSocket) {
+        createPeerConnection(webSocket, false);
     }
     
-    public void createPeerConnection(WebSocket webSocket) {
+    // With simulcast every layer is encoded, for controllers (or relays) that can receive them
+    public void createPeerConnection(WebSocket webSocket, boolean simulcast) {
         this.webSocket = webSocket;
+        this.simulcast = simulcast;
+        // Start with every simulcast layer on; the answer may keep only the first (full) one
+        this.selectedLayer = simulcast ? VideoLayer.FULL : VideoLayer.DEFAULT;
         
-        // Empty ICE servers for local network optimization
-        List<PeerConnection.IceServer> iceServers = new ArrayList<>();
-        
-        PeerConnection.RTCConfiguration rtcConfig = new PeerConnection.RTCConfiguration(iceServers);
-        rtcConfig.tcpCandidatePolicy = PeerConnection.TcpCandidatePolicy.DISABLED;
-        rtcConfig.bundlePolicy = PeerConnection.BundlePolicy.MAXBUNDLE;
-        rtcConfig.rtcpMuxPolicy = PeerConnection.RtcpMuxPolicy.REQUIRE;
-        rtcConfig.continualGatheringPolicy = PeerConnection.ContinualGatheringPolicy.GATHER_ONCE; // Fast gathering
-        
-        // Aggressive low latency optimizations
-        rtcConfig.iceConnectionReceivingTimeout = 500; // Reduced to 500ms for faster connection
-        rtcConfig.keyType = PeerConnection.KeyType.ECDSA; // Faster key exchange
-        rtcConfig.iceCandidatePoolSize = 0; // No pre-gathering for faster start
-        rtcConfig.iceTransportsType = PeerConnection.IceTransportsType.ALL;
-        rtcConfig.sdpSemantics = PeerConnection.SdpSemantics.UNIFIED_PLAN; // Modern standard
+        // Normally pre-built with its certificate, DataChannels and video transceiver
+        PeerConnectionPool.Connection pooled = peerConnectionPool.take(new PeerConnectionObserver(), simulcast);
+        peerConnection = pooled.peerConnection;
+        dataChannel = pooled.controlChannel;
+        motionChannel = pooled.motionChannel;
+        videoTransceiver = pooled.videoTransceiver;
         
-        // Additional ultra-low latency optimizations
-        rtcConfig.iceBackupCandidatePairPingInterval = 1000; // Faster backup candidate checking
-        rtcConfig.iceCheckMinInterval = 100; // Faster ICE connectivity checks
-//        rtcConfig.iceUnwritableTimeout = 1000; // Faster timeout for unwritable connections
-//        rtcConfig.iceWritableTimeout = 1000; // Faster timeout for writable connections
-
-        peerConnection = peerConnectionFactory.createPeerConnection(rtcConfig, new PeerConnectionObserver());
-        
-        // Create data channel for control events
-        DataChannel.Init dataChannelInit = new DataChannel.Init();
-        dataChannelInit.ordered = true;
-        dataChannel = peerConnection.createDataChannel("control", dataChannelInit);
-        
-        // Set up observer for the locally created data channel
+        // Set up observers for the locally created data channels; both feed the same pipeline
         setupDataChannelObserver(dataChannel);
+        setupDataChannelObserver(motionChannel);
         
         // Create video track from screen capture - only do this once during peer connection creation
         createVideoTrack();
@@ -125,48 +151,43 @@ public class WebRTCManager {
             // Enable video track
             videoTrack.setEnabled(true);
             
-            // Use modern addTrack API instead of deprecated addStream
-            // Create stream labels list for track association
-            List<String> streamLabels = Arrays.asList("local_stream");
-            
-            // Add track to peer connection with stream labels
-            RtpSender sender = peerConnection.addTrack(videoTrack, streamLabels);
+            // The pooled transceiver already carries the stream label, so only the track is attached
+            RtpSender sender = videoTransceiver.getSender();
             
-            if (sender != null) {
-                Log.d(TAG, "Video track added successfully via addTrack, sender: " + sender.id());
+            if (sender != null && sender.setTrack(videoTrack, false)) {
+                Log.d(TAG, "Video track attached to transceiver, sender: " + sender.id());
                 
                 // Configure sender parameters for screen sharing
                 RtpParameters parameters = sender.getParameters();
                 if (parameters != null) {
                     // Set up encoding parameters for low latency screen sharing
-                    for (RtpParameters.Encoding encoding : parameters.encodings) {
-                        encoding.maxBitrateBps = MAX_BITRATE;
-                        encoding.minBitrateBps = MIN_BITRATE;
-                        encoding.maxFramerate = FRAME_RATE;
-                        // TODO: need to set the value by setting button.
-                        encoding.scaleResolutionDownBy = 2.0; // No downscaling
-                        // Enable adaptive bitrate for network conditions
-                        // google-webrtc-1.0.32006 version don't have this attribute and it can adjust bps auto.
-//                        encoding.adaptive = true;
-                    }
+                    selectedLayer.applyToSender(parameters.encodings);
                     sender.setParameters(parameters);
-                    Log.d(TAG, "Configured sender parameters for screen sharing");
+                    // Video-pixel touch coordinates must be scaled back up by the same factor
+                    coordinateTransform.setEncoderScale(selectedLayer.scaleResolutionDownBy);
+                    Log.d(TAG, "Configured sender parameters for screen sharing, " + parameters.encodings.size()
+                            + " encodings, layer " + selectedLayer.rid);
                 }
             } else {
-                Log.e(TAG, "Failed to add video track - sender is null");
+                Log.e(TAG, "Failed to attach video track to transceiver");
             }
             
             // Connect screen capture service to video source
-            screenCaptureService.setVideoSource(videoSource);
+            screenCaptureService.attachVideoSource(videoSource);
             
-            Log.d(TAG, "Video track created and added to peer connection using addTrack API");
+            Log.d(TAG, "Video track created and attached to peer connection");
         } catch (Exception e) {
             Log.e(TAG, "Error creating video track", e);
         }
     }
     
-    public void createOfferWithVideo() {
-        Log.d(TAG, "Creating offer - fast mode");
+    // With fastConnect the offer waits for host candidate gathering and embeds the candidates
+    public void createOfferWithVideo(boolean fastConnect) {
+        Log.d(TAG, "Creating offer - fast mode" + (fastConnect ? ", candidates embedded" : ""));
+        this.fastConnect = fastConnect;
+        synchronized (this) {
+            offerStartNs = System.nanoTime();
+        }
         
         // Create offer with explicit send-only constraints for screen sharing
         MediaConstraints constraints = new MediaConstraints();
@@ -181,10 +202,8 @@ public class WebRTCManager {
                 // Only show in debug mode
 //                Log.d(TAG, "Original Offer SDP: " + sessionDescription.description);
 
-                // Optimize SDP for low latency screen sharing
-                String modifiedSdp = sessionDescription.description
-                    .replace("a=sendrecv", "a=sendonly")
-                        .replace("a=fmtp:96", "a=fmtp:96 max-fr=60;max-fs=8160"); // Limit frame size
+                // Optimize SDP for low latency screen sharing: send-only, frame size limits
+                String modifiedSdp = SdpMunger.mungeOffer(sessionDescription.description);
 //                    // Force VP8 codec for lower latency (VP8 has better low-latency performance than H.264)
                         // RK3568 cannot support VP8 encoder!
 //                    .replace("a=rtpmap:96 H264/90000", "a=rtpmap:96 VP8/90000")
@@ -216,8 +235,12 @@ public class WebRTCManager {
                     @Override
                     public void onSetSuccess() {
                         Log.d(TAG, "Local description set successfully");
+                        if (fastConnect) {
+                            holdOfferForCandidates();
+                            return;
+                        }
                         // Send offer to client
-                        sendOffer(fixedSessionDescription);
+                        sendOffer(fixedSessionDescription, true);
                     }
                     
                     @Override
@@ -245,15 +268,89 @@ public class WebRTCManager {
         }, constraints);
     }
     
-    private void sendOffer(SessionDescription offer) {
+    private void sendOffer(SessionDescription offer, boolean trickle) {
         JsonObject offerMessage = new JsonObject();
         offerMessage.addProperty("type", "offer");
         offerMessage.addProperty("sdp", offer.description);
+        if (!trickle) {
+            // Candidates are in the SDP; any late ones follow in a single ice_candidates
+            offerMessage.addProperty("trickle", false);
+        }
         
-        webSocket.send(gson.toJson(offerMessage));
+        sendSignaling(offerMessage);
         Log.d(TAG, "Sent offer to client");
     }
     
+    private void holdOfferForCandidates() {
+        synchronized (this) {
+            offerPending = true;
+        }
+        // Gathering completing from here on finds offerPending set and sends the offer itself
+        if (peerConnection.iceGatheringState() == PeerConnection.IceGatheringState.COMPLETE) {
+            sendPendingOffer("gathering complete");
+        } else {
+            gatherCapHandler.postDelayed(gatherCapRunnable, FAST_CONNECT_GATHER_CAP_MS);
+        }
+    }
+    
+    // The local description picks up candidates as they are gathered, so send it as it is now.
+    // Never called with the monitor held.
+    private void sendPendingOffer(String reason) {
+        synchronized (this) {
+            if (!offerPending) {
+                return;
+            }
+            offerPending = false;
+            offerSent = true;
+            gatherCapHandler.removeCallbacks(gatherCapRunnable);
+        }
+        // Outside the lock: from the cap timer this blocks on the WebRTC signaling thread, which
+        // takes the lock in onIceCandidate. A candidate gathered meanwhile may also go out late,
+        // a harmless duplicate.
+        SessionDescription offer = peerConnection.getLocalDescription();
+        String sdp = offer.description;
+        int candidates = 0;
+        for (int i = sdp.indexOf("a=candidate:"); i >= 0; i = sdp.indexOf("a=candidate:", i + 1)) {
+            candidates++;
+        }
+        sendOffer(offer, false);
+        Log.d(TAG, "Offer sent on " + reason + " with " + candidates + " candidates after "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - offerStartNs) + " ms");
+    }
+    
+    private synchronized void onFastConnectCandidate(IceCandidate candidate) {
+        // Until the offer goes out, candidates end up in its SDP
+        if (offerSent) {
+            lateCandidates.add(candidate);
+        }
+    }
+    
+    private void onFastConnectGatheringComplete() {
+        boolean pending;
+        JsonArray candidates = new JsonArray();
+        synchronized (this) {
+            pending = offerPending;
+            if (!pending) {
+                for (IceCandidate candidate : lateCandidates) {
+                    candidates.add(toJson(candidate));
+                }
+                lateCandidates.clear();
+            }
+        }
+        if (pending) {
+            sendPendingOffer("gathering complete");
+            return;
+        }
+        if (candidates.size() == 0) {
+            return;
+        }
+        JsonObject message = new JsonObject();
+        message.addProperty("type", MSG_ICE_CANDIDATES);
+        message.add("candidates", candidates);
+        sendSignaling(message);
+        Log.d(TAG, "Sent " + candidates.size() + " late ICE candidates in one batch");
+    }
+    
     public void handleOffer(JsonObject offerJson) {
         try {
             // This method now handles offers from clients (but in our new flow, device creates offers)
@@ -272,6 +369,7 @@ public class WebRTCManager {
                 @Override
                 public void onSetSuccess() {
                     Log.d(TAG, "Remote description set successfully");
+                    addPendingRemoteCandidates();
                     createAnswer();
                 }
                 
@@ -306,6 +404,7 @@ public class WebRTCManager {
                 @Override
                 public void onSetSuccess() {
                     Log.d(TAG, "Remote answer set successfully");
+                    addPendingRemoteCandidates();
                 }
                 
                 @Override
@@ -372,37 +471,167 @@ public class WebRTCManager {
         answerMessage.addProperty("type", "answer");
         answerMessage.addProperty("sdp", answer.description);
         
-        webSocket.send(gson.toJson(answerMessage));
+        sendSignaling(answerMessage);
         Log.d(TAG, "Sent answer to client");
     }
     
     public void handleIceCandidate(JsonObject candidateJson) {
         try {
-            String candidate = candidateJson.get("candidate").getAsString();
-            String sdpMid = candidateJson.get("sdpMid").getAsString();
-            int sdpMLineIndex = candidateJson.get("sdpMLineIndex").getAsInt();
-            
-            IceCandidate iceCandidate = new IceCandidate(sdpMid, sdpMLineIndex, candidate);
-            peerConnection.addIceCandidate(iceCandidate);
-            
+            addRemoteCandidate(candidateJson);
             Log.d(TAG, "Added ICE candidate");
         } catch (Exception e) {
             Log.e(TAG, "Error handling ICE candidate", e);
         }
     }
     
+    // A controller's candidates in one message: {"type": "ice_candidates", "candidates": [...]}
+    public void handleIceCandidates(JsonObject candidatesJson) {
+        try {
+            JsonArray candidates = candidatesJson.getAsJsonArray("candidates");
+            for (int i = 0; i < candidates.size(); i++) {
+                addRemoteCandidate(candidates.get(i).getAsJsonObject());
+            }
+            Log.d(TAG, "Added " + candidates.size() + " ICE candidates");
+        } catch (Exception e) {
+            Log.e(TAG, "Error handling ICE candidates", e);
+        }
+    }
+    
+    private void addRemoteCandidate(JsonObject candidateJson) {
+        String candidate = candidateJson.get("candidate").getAsString();
+        String sdpMid = candidateJson.get("sdpMid").getAsString();
+        int sdpMLineIndex = candidateJson.get("sdpMLineIndex").getAsInt();
+        
+        IceCandidate iceCandidate = new IceCandidate(sdpMid, sdpMLineIndex, candidate);
+        synchronized (this) {
+            // addIceCandidate fails without a remote description, so hold on to it until then
+            if (peerConnection.getRemoteDescription() == null) {
+                pendingRemoteCandidates.add(iceCandidate);
+                return;
+            }
+        }
+        peerConnection.addIceCandidate(iceCandidate);
+    }
+    
+    private void addPendingRemoteCandidates() {
+        List<IceCandidate> pending;
+        synchronized (this) {
+            pending = new ArrayList<>(pendingRemoteCandidates);
+            pendingRemoteCandidates.clear();
+        }
+        for (IceCandidate candidate : pending) {
+            peerConnection.addIceCandidate(candidate);
+        }
+        if (!pending.isEmpty()) {
+            Log.d(TAG, "Added " + pending.size() + " ICE candidates held for the remote description");
+        }
+    }
+    
+    /** Token a controller presents to resume this session, kept for graceMs after signaling drops. */
+    public void setSession(String token, long graceMs) {
+        this.sessionToken = token;
+        this.resumeGraceMs = graceMs;
+    }
+    
+    public String getSessionToken() {
+        return sessionToken;
+    }
+    
+    public long getResumeGraceMs() {
+        return resumeGraceMs;
+    }
+    
+    /** Continue signaling for this session over a new connection. */
+    public void rebind(WebSocket webSocket) {
+        this.webSocket = webSocket;
+    }
+    
+    /** The connection this session currently signals over. */
+    public WebSocket getWebSocket() {
+        return webSocket;
+    }
+    
+    public PeerConnection.IceConnectionState getIceConnectionState() {
+        return peerConnection != null ? peerConnection.iceConnectionState() : null;
+    }
+    
+    /** Switch this viewer to another layer; takes effect without renegotiation. */
+    public void selectLayer(String rid) {
+        VideoLayer layer = VideoLayer.forRid(rid);
+        if (layer == null) {
+            Log.w(TAG, "Unknown video layer: " + rid);
+            return;
+        }
+        RtpSender sender = videoTransceiver != null ? videoTransceiver.getSender() : null;
+        if (sender == null) {
+            Log.w(TAG, "Cannot select video layer - no video sender");
+            return;
+        }
+        try {
+            RtpParameters parameters = sender.getParameters();
+            layer.applyToSender(parameters.encodings);
+            if (!sender.setParameters(parameters)) {
+                Log.e(TAG, "Failed to apply video layer " + rid);
+                return;
+            }
+            selectedLayer = layer;
+            // Touch coordinates in video pixels now refer to this layer's resolution
+            coordinateTransform.setEncoderScale(layer.scaleResolutionDownBy);
+            Log.d(TAG, "Selected video layer " + rid + " (" + parameters.encodings.size() + " encodings)");
+            
+            JsonObject message = new JsonObject();
+            message.addProperty("type", MSG_LAYER_SELECTED);
+            message.addProperty("layer", layer.rid);
+            message.addProperty("scaleResolutionDownBy", layer.scaleResolutionDownBy);
+            message.addProperty("maxBitrateBps", layer.maxBitrateBps);
+            message.addProperty("maxFramerate", layer.maxFramerate);
+            message.addProperty("simulcast", simulcast && parameters.encodings.size() > 1);
+            sendSignaling(message);
+        } catch (Exception e) {
+            Log.e(TAG, "Error selecting video layer", e);
+        }
+    }
+    
     public void cleanup() {
+        synchronized (this) {
+            offerPending = false;
+            gatherCapHandler.removeCallbacks(gatherCapRunnable);
+        }
+        eventRecorder.stop();
+        eventReplayer.stop();
+        if (inputDispatcher != null) {
+            inputDispatcher.release();
+        }
+        clockSync.stop();
+        latencyTracer.setReporter(null);
+        Log.d(TAG, "Input latency: " + latencyTracer.getStats() + ", clock: " + clockSync.getStats());
+        if (motionCoalescer != null) {
+            motionCoalescer.release();
+        }
+        if (touchControlService != null) {
+            touchControlService.release();
+        }
         if (videoTrack != null) {
             videoTrack.dispose();
         }
         if (videoSource != null) {
+            // Other viewers keep the capture; stop feeding this source before it goes away
+            screenCaptureService.detachVideoSource(videoSource);
             videoSource.dispose();
         }
+        if (dataChannel != null) {
+            dataChannel.dispose();
+        }
+        if (motionChannel != null) {
+            motionChannel.dispose();
+        }
         if (peerConnection != null) {
-            peerConnection.close();
+            // The factory outlives this session, so release the native connection as well
+            peerConnection.dispose();
         }
         if (peerConnectionFactory != null) {
-            peerConnectionFactory.dispose();
+            peerConnectionFactory = null;
+            SharedPeerConnectionFactory.release();
         }
     }
     
@@ -425,11 +654,18 @@ public class WebRTCManager {
         @Override
         public void onIceGatheringChange(PeerConnection.IceGatheringState iceGatheringState) {
             Log.d(TAG, "ICE gathering state changed: " + iceGatheringState);
+            if (fastConnect && iceGatheringState == PeerConnection.IceGatheringState.COMPLETE) {
+                onFastConnectGatheringComplete();
+            }
         }
         
         @Override
         public void onIceCandidate(IceCandidate iceCandidate) {
             Log.d(TAG, "New ICE candidate: " + iceCandidate.toString());
+            if (fastConnect) {
+                onFastConnectCandidate(iceCandidate);
+                return;
+            }
             sendIceCandidate(iceCandidate);
         }
         
@@ -466,16 +702,31 @@ public class WebRTCManager {
     }
     
     private void sendIceCandidate(IceCandidate candidate) {
-        JsonObject candidateMessage = new JsonObject();
+        JsonObject candidateMessage = toJson(candidate);
         candidateMessage.addProperty("type", "ice_candidate");
-        candidateMessage.addProperty("candidate", candidate.sdp);
-        candidateMessage.addProperty("sdpMid", candidate.sdpMid);
-        candidateMessage.addProperty("sdpMLineIndex", candidate.sdpMLineIndex);
         
-        webSocket.send(gson.toJson(candidateMessage));
+        sendSignaling(candidateMessage);
         Log.d(TAG, "Sent ICE candidate to client");
     }
     
+    // Signaling may be down while the session waits to be resumed; media doesn't need it
+    private void sendSignaling(JsonObject message) {
+        WebSocket socket = webSocket;
+        if (socket == null || !socket.isOpen()) {
+            Log.w(TAG, "Signaling connection closed, dropping " + message.get("type"));
+            return;
+        }
+        socket.send(gson.toJson(message));
+    }
+    
+    private static JsonObject toJson(IceCandidate candidate) {
+        JsonObject json = new JsonObject();
+        json.addProperty("candidate", candidate.sdp);
+        json.addProperty("sdpMid", candidate.sdpMid);
+        json.addProperty("sdpMLineIndex", candidate.sdpMLineIndex);
+        return json;
+    }
+    
     private void setupDataChannelObserver(DataChannel dataChannel) {
         dataChannel.registerObserver(new DataChannel.Observer() {
             @Override
@@ -483,22 +734,50 @@ public class WebRTCManager {
             
             @Override
             public void onStateChange() {
-                Log.d(TAG, "Data channel state: " + dataChannel.state());
+                Log.d(TAG, "Data channel " + dataChannel.label() + " state: " + dataChannel.state());
+                if (!MOTION_CHANNEL_LABEL.equals(dataChannel.label())) {
+                    if (dataChannel.state() == DataChannel.State.OPEN) {
+                        announceControlFormats(dataChannel);
+                        clockSync.start();
+                    } else if (dataChannel.state() == DataChannel.State.CLOSED) {
+                        clockSync.stop();
+                        // Queued behind any pending moves, so none of them can restart the gesture
+                        ControlEvent cancel = controlEventPool.acquire();
+                        cancel.type = ControlEvent.TYPE_CANCEL;
+                        inputDispatcher.enqueue(cancel);
+                    }
+                }
             }
             
             @Override
             public void onMessage(DataChannel.Buffer buffer) {
+                long receiveTimeNs = System.nanoTime();
                 try {
-                    // Convert ByteBuffer to String
-                    byte[] data = new byte[buffer.data.remaining()];
-                    buffer.data.get(data);
-                    String message = new String(data, StandardCharsets.UTF_8);
-                    
-                    Log.d(TAG, "Received data channel message: " + message);
+                    // Fast path: binary events and plain JSON touch/click events are parsed
+                    // into a pooled event without allocating
+                    ControlEvent event = controlEventPool.acquire();
+                    event.receiveTimeNs = receiveTimeNs;
+                    boolean binary = buffer.binary && ControlEventCodec.isBinaryEvent(buffer.data);
+                    boolean parsed = binary
+                            ? controlEventCodec.decode(buffer.data, event)
+                            : controlEventJsonParser.parse(buffer.data, event);
+                    if (parsed) {
+                        coordinateTransform.map(event);
+                        if (eventRecorder.isRecording()) {
+                            eventRecorder.record(event);
+                        }
+                        // Injection happens on the dispatcher thread, which recycles the event
+                        inputDispatcher.enqueue(event);
+                        return;
+                    }
+                    controlEventPool.release(event);
+                    if (binary) {
+                        Log.w(TAG, "Dropping malformed binary control event");
+                        return;
+                    }
                     
-                    // Parse and handle control event
-                    ControlEvent event = gson.fromJson(message, ControlEvent.class);
-                    touchControlService.handleControlEvent(event);
+                    // Slow path: control messages and anything the fast parser doesn't know
+                    handleJsonMessage(buffer.data, receiveTimeNs);
                     
                 } catch (Exception e) {
                     Log.e(TAG, "Error handling data channel message", e);
@@ -506,4 +785,156 @@ public class WebRTCManager {
             }
         });
     }
-}
\ No newline at end of file
+    
+    private void handleJsonMessage(ByteBuffer data, long receiveTimeNs) {
+        // Convert ByteBuffer to String, reusing the scratch array
+        int length = data.remaining();
+        if (messageScratch.length < length) {
+            messageScratch = new byte[Math.max(length, messageScratch.length * 2)];
+        }
+        data.get(messageScratch, 0, length);
+        String message = new String(messageScratch, 0, length, StandardCharsets.UTF_8);
+        
+        if (DEBUG) {
+            Log.d(TAG, "Received data channel message: " + message);
+        }
+        
+        // Parse and handle control event
+        ControlEvent event = gson.fromJson(message, ControlEvent.class);
+        event.receiveTimeNs = receiveTimeNs;
+        if (MSG_CONTROL_FORMAT.equals(event.type)) {
+            handleControlFormat(gson.fromJson(message, JsonObject.class));
+            return;
+        }
+        if (ClockSync.MSG_CLOCK_REPLY.equals(event.type)) {
+            clockSync.onReply(gson.fromJson(message, JsonObject.class), receiveTimeNs);
+            return;
+        }
+        if (ClockSync.MSG_CLOCK_PROBE.equals(event.type)) {
+            clockSync.onProbe(gson.fromJson(message, JsonObject.class), receiveTimeNs);
+            return;
+        }
+        if (MSG_RECORD_CONTROL.equals(event.type)) {
+            handleRecordControl(gson.fromJson(message, JsonObject.class));
+            return;
+        }
+        if (MSG_REPLAY.equals(event.type)) {
+            handleReplay(gson.fromJson(message, JsonObject.class));
+            return;
+        }
+        event.pointerCount = event.pointers != null ? event.pointers.length : 0;
+        coordinateTransform.map(event);
+        if (eventRecorder.isRecording()) {
+            eventRecorder.record(event);
+        }
+        inputDispatcher.enqueue(event);
+    }
+    
+    // Tell the controller which encodings we accept; JSON always works as a fallback
+    private void announceControlFormats(DataChannel dataChannel) {
+        JsonObject formats = new JsonObject();
+        formats.addProperty("type", MSG_CONTROL_FORMATS);
+        JsonArray list = new JsonArray();
+        list.add(ControlEventCodec.FORMAT_JSON);
+        list.add(ControlEventCodec.FORMAT_BINARY);
+        formats.add("formats", list);
+        JsonArray lanes = new JsonArray();
+        lanes.add(CONTROL_CHANNEL_LABEL);
+        lanes.add(MOTION_CHANNEL_LABEL);
+        formats.add("lanes", lanes);
+        
+        sendOnDataChannel(dataChannel, formats);
+        Log.d(TAG, "Announced control formats to client");
+    }
+    
+    // Device -> controller messages (latency reports, acks) go on the reliable lane
+    private void sendControlMessage(JsonObject message) {
+        DataChannel channel = dataChannel;
+        if (channel != null && channel.state() == DataChannel.State.OPEN) {
+            sendOnDataChannel(channel, message);
+        }
+    }
+    
+    private void sendOnDataChannel(DataChannel channel, JsonObject message) {
+        byte[] bytes = gson.toJson(message).getBytes(StandardCharsets.UTF_8);
+        channel.send(new DataChannel.Buffer(ByteBuffer.wrap(bytes), false));
+    }
+    
+    private void handleControlFormat(JsonObject json) {
+        String format = json.has("format") ? json.get("format").getAsString() : ControlEventCodec.FORMAT_JSON;
+        if (json.has("baseTimestamp")) {
+            controlEventCodec.setBaseTimestamp(json.get("baseTimestamp").getAsLong());
+        }
+        if (json.has("latencyAcks")) {
+            latencyTracer.setAcksEnabled(json.get("latencyAcks").getAsBoolean());
+        }
+        if (json.has("latencyReportMs")) {
+            latencyTracer.setSummaryIntervalMs(json.get("latencyReportMs").getAsLong());
+        }
+        if (json.has("coordinateSpace")) {
+            coordinateTransform.setCoordinateSpace(
+                    CoordinateTransform.parseSpace(json.get("coordinateSpace").getAsString()));
+        }
+        Log.d(TAG, "Client selected control format: " + format
+                + ", base timestamp: " + controlEventCodec.getBaseTimestamp());
+    }
+    
+    private void handleRecordControl(JsonObject json) {
+        String action = json.has("action") ? json.get("action").getAsString() : "";
+        JsonObject status = new JsonObject();
+        status.addProperty("type", MSG_RECORD_STATUS);
+        if ("start".equals(action)) {
+            String name = recordingName(json);
+            try {
+                eventRecorder.start(recordingFile(name));
+                status.addProperty("name", name);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to start recording " + name, e);
+                status.addProperty("error", e.getMessage());
+            }
+        } else if ("stop".equals(action)) {
+            long events = eventRecorder.getEventCount();
+            File file = eventRecorder.stop();
+            if (file != null) {
+                status.addProperty("name", file.getName());
+                status.addProperty("events", events);
+            }
+        } else {
+            Log.w(TAG, "Unknown record_control action: " + action);
+            return;
+        }
+        status.addProperty("recording", eventRecorder.isRecording());
+        sendControlMessage(status);
+    }
+    
+    private void handleReplay(JsonObject json) {
+        if (json.has("action") && "stop".equals(json.get("action").getAsString())) {
+            eventReplayer.stop();
+            return;
+        }
+        String name = recordingName(json);
+        File file = recordingFile(name);
+        boolean realtime = !json.has("realtime") || json.get("realtime").getAsBoolean();
+        if (!file.isFile()) {
+            JsonObject error = new JsonObject();
+            error.addProperty("type", ControlEventReplayer.MSG_REPLAY_RESULT);
+            error.addProperty("name", name);
+            error.addProperty("error", "No such recording");
+            sendControlMessage(error);
+            return;
+        }
+        if (!eventReplayer.start(file, realtime, result -> sendControlMessage(result.toJson()))) {
+            Log.w(TAG, "Replay already running, ignoring replay of " + name);
+        }
+    }
+    
+    // Recording names become file names, so only a safe subset of characters is kept
+    private static String recordingName(JsonObject json) {
+        String name = json.has("name") ? json.get("name").getAsString().replaceAll("[^A-Za-z0-9_-]", "") : "";
+        return name.isEmpty() ? "session-" + System.currentTimeMillis() : name;
+    }
+    
+    private File recordingFile(String name) {
+        return new File(recordingsDir, name + ControlEventRecorder.FILE_EXTENSION);
+    }
+}
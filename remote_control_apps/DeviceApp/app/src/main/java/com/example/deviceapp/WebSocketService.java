@@ -6,12 +6,19 @@ import android.os.IBinder;
 import android.util.Log;
 
 import org.java_websocket.WebSocket;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.framing.Framedata;
 import org.java_websocket.handshake.ClientHandshake;
 import org.java_websocket.server.WebSocketServer;
 
+import org.webrtc.PeerConnection;
+
 import java.net.InetSocketAddress;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
@@ -19,10 +26,31 @@ import com.google.gson.JsonObject;
 public class WebSocketService extends Service {
     private static final String TAG = "WebSocketService";
     private static final int PORT = 4321;
+    // Threads shared by the per-connection signaling executors
+    private static final int SIGNALING_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
     
     private WebSocketServer server;
     private final Map<WebSocket, String> clients = new ConcurrentHashMap<>();
     private final Map<WebSocket, WebRTCManager> webRTCManagers = new ConcurrentHashMap<>();
+    // Signaling runs off the WebSocket thread, in order per connection and in parallel across them
+    private final Map<WebSocket, SerialExecutor> signalingExecutors = new ConcurrentHashMap<>();
+    private final AtomicInteger signalingThreadCount = new AtomicInteger();
+    private final ExecutorService signalingPool = Executors.newFixedThreadPool(SIGNALING_THREADS,
+            runnable -> new Thread(runnable, "Signaling-" + signalingThreadCount.incrementAndGet()));
+    // Factory warm-up, pool refills and their release, in that order
+    private final SerialExecutor lifecycleExecutor = new SerialExecutor("Lifecycle", signalingPool);
+    private PeerConnectionPool peerConnectionPool;
+    // Sessions whose WebSocket dropped, waiting for their controller to resume them
+    private final SessionRegistry sessionRegistry = new SessionRegistry(lifecycleExecutor);
+    // Orders a session moving to a new connection against its old connection's close
+    private final Object sessionLock = new Object();
+    private volatile boolean destroying;
+    // Answers UDP discovery so controllers don't have to probe the subnet over WebSocket
+    private volatile DiscoveryBeacon discoveryBeacon;
+    // Ping-frame heartbeats, per-connection RTT, and reaping of connections that stop answering
+    private final HeartbeatMonitor heartbeatMonitor = new HeartbeatMonitor();
+    // Never changes, so serialize it once for every connect and ping
+    private String deviceInfoMessage;
     private Gson gson = new Gson();
     private ScreenCaptureService screenCaptureService;
     
@@ -33,8 +61,20 @@ public class WebSocketService extends Service {
         super.onCreate();
         Log.d(TAG, "WebSocketService created");
         instance = this;
+        // Pick the input injection backend up front so the first event doesn't pay for it
+        InputInjectors.getDefault(this);
+        // Likewise build the shared PeerConnectionFactory now; held until onDestroy
+        lifecycleExecutor.execute(() -> SharedPeerConnectionFactory.acquire(this));
+        // Then certificates and idle peer connections, so start_webrtc finds one ready
+        peerConnectionPool = new PeerConnectionPool(this, lifecycleExecutor);
+        peerConnectionPool.start();
+        deviceInfoMessage = buildDeviceInfoMessage();
         stopExistingServer();
         startWebSocketServer();
+        heartbeatMonitor.start();
+        discoveryBeacon = new DiscoveryBeacon(this, PORT);
+        discoveryBeacon.start();
+        updateDiscoveryLoad();
     }
     
     @Override
@@ -55,7 +95,19 @@ public class WebSocketService extends Service {
     public void onDestroy() {
         super.onDestroy();
         instance = null;
+        destroying = true;
+        heartbeatMonitor.stop();
+        discoveryBeacon.stop();
         stopExistingServer();
+        sessionRegistry.expireAll();
+        // Queued behind the warm-up and any refill still running
+        lifecycleExecutor.execute(peerConnectionPool::release);
+        lifecycleExecutor.shutdownAfter(() -> {
+            SharedPeerConnectionFactory.release();
+            // Last, as the serial executors hand their tasks to the pool one at a time
+            signalingPool.shutdown();
+        });
+        InputInjectors.releaseDefault();
     }
     
     public static WebSocketService getInstance() {
@@ -83,15 +135,14 @@ public class WebSocketService extends Service {
                 public void onOpen(WebSocket conn, ClientHandshake handshake) {
                     Log.d(TAG, "New client connected: " + conn.getRemoteSocketAddress());
                     clients.put(conn, "");
+                    heartbeatMonitor.add(conn);
+                    updateDiscoveryLoad();
+                    signalingExecutors.put(conn, new SerialExecutor(
+                            "Signaling " + conn.getRemoteSocketAddress(), signalingPool));
                     
                     // Send device info
-                    JsonObject deviceInfo = new JsonObject();
-                    deviceInfo.addProperty("type", "device_info");
-                    deviceInfo.addProperty("device_name", android.os.Build.MODEL);
-                    deviceInfo.addProperty("device_id", android.os.Build.SERIAL);
-                    
                     try {
-                        conn.send(gson.toJson(deviceInfo));
+                        conn.send(deviceInfoMessage);
                         Log.d(TAG, "Sent initial device info to new client");
                     } catch (Exception e) {
                         Log.e(TAG, "Error sending initial device info", e);
@@ -103,21 +154,69 @@ public class WebSocketService extends Service {
                     Log.d(TAG, "Client disconnected: " + conn.getRemoteSocketAddress() + 
                           ", code: " + code + ", reason: " + reason + ", remote: " + remote);
                     clients.remove(conn);
+                    HeartbeatMonitor.Stats heartbeatStats = heartbeatMonitor.remove(conn);
+                    if (heartbeatStats != null) {
+                        Log.d(TAG, "Heartbeat " + heartbeatStats);
+                    }
+                    updateDiscoveryLoad();
 
-                    // Clean up WebRTC connection but keep reference for potential reconnection
-                    WebRTCManager webRTCManager = webRTCManagers.remove(conn);
-                    if (webRTCManager != null) {
-                        Log.d(TAG, "Cleaning up WebRTC for disconnected client");
-                        webRTCManager.cleanup();
+                    // Clean up after any signaling still queued for this connection
+                    SerialExecutor executor = signalingExecutors.remove(conn);
+                    Runnable cleanup = () -> {
+                        WebRTCManager finished = null;
+                        synchronized (sessionLock) {
+                            // Absent if a resume on another connection already took the session
+                            WebRTCManager webRTCManager = webRTCManagers.remove(conn);
+                            if (webRTCManager != null) {
+                                PeerConnection.IceConnectionState iceState = webRTCManager.getIceConnectionState();
+                                // Only a dropped connection (1006, which heartbeat reaping uses too) is
+                                // worth resuming; any close the controller sent means it is done, and a
+                                // failed media path has nothing left to resume
+                                if (code != CloseFrame.ABNORMAL_CLOSE || destroying
+                                        || iceState == PeerConnection.IceConnectionState.FAILED
+                                        || iceState == PeerConnection.IceConnectionState.CLOSED) {
+                                    sessionRegistry.end(webRTCManager);
+                                    finished = webRTCManager;
+                                } else {
+                                    // Likely a network blip; keep the peer connection for the controller to resume
+                                    sessionRegistry.detach(webRTCManager);
+                                }
+                            }
+                        }
+                        if (finished != null) {
+                            Log.d(TAG, "Cleaning up WebRTC for disconnected client");
+                            finished.cleanup();
+                        }
+                        updateDiscoveryLoad();
+                        if (executor != null) {
+                            Log.d(TAG, executor.getStats());
+                        }
+                    };
+                    if (executor != null) {
+                        executor.shutdownAfter(cleanup);
+                    } else {
+                        cleanup.run();
                     }
                 }
 
                 @Override
                 public void onMessage(WebSocket conn, String message) {
                     Log.d(TAG, "Received message: " + message);
-                    handleMessage(conn, message);
+                    heartbeatMonitor.onActivity(conn);
+                    SerialExecutor executor = signalingExecutors.get(conn);
+                    if (executor != null) {
+                        executor.execute(() -> handleMessage(conn, message));
+                    } else {
+                        Log.w(TAG, "Message from unknown or closed connection, dropping");
+                    }
                 }
 
+                @Override
+                public void onWebsocketPong(WebSocket conn, Framedata f) {
+                    super.onWebsocketPong(conn, f);
+                    heartbeatMonitor.onPong(conn, f);
+                }
+                
                 @Override
                 public void onError(WebSocket conn, Exception ex) {
                     Log.e(TAG, "WebSocket error", ex);
@@ -150,6 +249,8 @@ public class WebSocketService extends Service {
         
             // Enable address reuse to prevent "Address already in use" errors
             server.setReuseAddr(true);
+            // HeartbeatMonitor pings and reaps instead of the library's lost-connection timer
+            server.setConnectionLostTimeout(0);
         
             server.start();
             Log.d(TAG, "Starting WebSocket server on port " + PORT);
@@ -169,8 +270,12 @@ public class WebSocketService extends Service {
     
     private void handleMessage(WebSocket conn, String message) {
         try {
-            JsonObject json = gson.fromJson(message, JsonObject.class);
-            String type = json.get("type").getAsString();
+            JsonObject json = SignalingMessages.parse(message);
+            String type = SignalingMessages.getType(json);
+            if (type == null) {
+                Log.w(TAG, "Message without a type: " + message);
+                return;
+            }
             
             switch (type) {
                 case "ping":
@@ -188,9 +293,21 @@ public class WebSocketService extends Service {
                 case "ice_candidate":
                     handleIceCandidate(conn, json);
                     break;
+                case "ice_candidates":
+                    handleIceCandidates(conn, json);
+                    break;
                 case "control_event":
                     handleControlEvent(conn, json);
                     break;
+                case "select_layer":
+                    handleSelectLayer(conn, json);
+                    break;
+                case "resume_session":
+                    handleResumeSession(conn, json);
+                    break;
+                case "get_connection_stats":
+                    handleGetConnectionStats(conn);
+                    break;
                 default:
                     Log.w(TAG, "Unknown message type: " + type);
             }
@@ -205,13 +322,8 @@ public class WebSocketService extends Service {
         
         // Check if connection is still open before sending response
         if (conn.isOpen()) {
-            JsonObject deviceInfo = new JsonObject();
-            deviceInfo.addProperty("type", "device_info");
-            deviceInfo.addProperty("device_name", android.os.Build.MODEL);
-            deviceInfo.addProperty("device_id", android.os.Build.SERIAL);
-            
             try {
-                conn.send(gson.toJson(deviceInfo));
+                conn.send(deviceInfoMessage);
                 Log.d(TAG, "Sent device info response");
             } catch (Exception e) {
                 Log.e(TAG, "Error sending device info response", e);
@@ -221,6 +333,29 @@ public class WebSocketService extends Service {
         }
     }
     
+    private static String buildDeviceInfoMessage() {
+        JsonObject deviceInfo = new JsonObject();
+        deviceInfo.addProperty("type", "device_info");
+        deviceInfo.addProperty("device_name", android.os.Build.MODEL);
+        deviceInfo.addProperty("device_id", android.os.Build.SERIAL);
+        return deviceInfo.toString();
+    }
+    
+    private void handleGetConnectionStats(WebSocket conn) {
+        HeartbeatMonitor.Stats stats = heartbeatMonitor.getStats(conn);
+        if (stats == null) {
+            return;
+        }
+        JsonObject response = stats.toJson();
+        WebRTCManager webRTCManager = webRTCManagers.get(conn);
+        if (webRTCManager != null) {
+            response.addProperty("iceState", String.valueOf(webRTCManager.getIceConnectionState()));
+        }
+        response.addProperty("clients", clients.size());
+        response.addProperty("reapedConnections", heartbeatMonitor.getReapedConnections());
+        conn.send(gson.toJson(response));
+    }
+    
     private void handleStartWebRTC(WebSocket conn, JsonObject json) {
         Log.d(TAG, "Fast WebRTC initialization starting");
         
@@ -230,24 +365,118 @@ public class WebSocketService extends Service {
         }
         
         // Clean up any existing WebRTC manager for this connection only if it's a reconnection
-        WebRTCManager existingManager = webRTCManagers.get(conn);
+        WebRTCManager existingManager;
+        synchronized (sessionLock) {
+            existingManager = webRTCManagers.remove(conn);
+            if (existingManager != null) {
+                sessionRegistry.end(existingManager);
+            }
+        }
         if (existingManager != null) {
             Log.d(TAG, "Cleaning up existing WebRTC manager for fast reconnection");
             existingManager.cleanup();
-            webRTCManagers.remove(conn);
         }
         
         // Create and initialize WebRTC manager in optimized sequence
-        WebRTCManager webRTCManager = new WebRTCManager(this, screenCaptureService);
+        WebRTCManager webRTCManager = new WebRTCManager(this, screenCaptureService, peerConnectionPool);
         webRTCManagers.put(conn, webRTCManager);
         
         // Create peer connection and offer in single operation
-        webRTCManager.createPeerConnection(conn);
-        webRTCManager.createOfferWithVideo();
+        boolean simulcast = json.has("simulcast") && json.get("simulcast").getAsBoolean();
+        webRTCManager.createPeerConnection(conn, simulcast);
+        long graceMs = json.has("resume_grace_ms") ? json.get("resume_grace_ms").getAsLong()
+                : SessionRegistry.DEFAULT_GRACE_MS;
+        startSession(conn, webRTCManager, graceMs);
+        // LAN controllers can take every candidate in the offer and skip trickling
+        boolean fastConnect = json.has("fast_connect") && json.get("fast_connect").getAsBoolean();
+        webRTCManager.createOfferWithVideo(fastConnect);
         
+        updateDiscoveryLoad();
         Log.d(TAG, "Fast WebRTC initialization completed - offer sent");
     }
     
+    // Give the controller a token it can present with resume_session after a drop
+    private void startSession(WebSocket conn, WebRTCManager webRTCManager, long graceMs) {
+        String token = sessionRegistry.newToken();
+        graceMs = Math.max(0, Math.min(graceMs, SessionRegistry.MAX_GRACE_MS));
+        webRTCManager.setSession(token, graceMs);
+        sessionRegistry.attach(webRTCManager);
+        
+        JsonObject session = new JsonObject();
+        session.addProperty("type", "session");
+        session.addProperty("token", token);
+        session.addProperty("resume_grace_ms", graceMs);
+        conn.send(gson.toJson(session));
+    }
+    
+    private void handleResumeSession(WebSocket conn, JsonObject json) {
+        String token = json.has("token") ? json.get("token").getAsString() : null;
+        WebRTCManager webRTCManager;
+        WebSocket staleConn = null;
+        WebRTCManager existingManager = null;
+        synchronized (sessionLock) {
+            webRTCManager = sessionRegistry.resume(token);
+            if (webRTCManager != null) {
+                // After a blip the old connection is often still half-open and owns the session;
+                // take it over rather than wait for that connection to time out
+                WebSocket previousConn = webRTCManager.getWebSocket();
+                if (previousConn != null && previousConn != conn
+                        && webRTCManagers.remove(previousConn, webRTCManager)) {
+                    staleConn = previousConn;
+                }
+                existingManager = webRTCManagers.put(conn, webRTCManager);
+                if (existingManager == webRTCManager) {
+                    existingManager = null;
+                } else if (existingManager != null) {
+                    sessionRegistry.end(existingManager);
+                }
+                webRTCManager.rebind(conn);
+            }
+        }
+        
+        JsonObject response = new JsonObject();
+        if (webRTCManager == null) {
+            // Unknown or expired; the controller falls back to start_webrtc
+            Log.d(TAG, "Session resume rejected");
+            response.addProperty("type", "session_expired");
+            conn.send(gson.toJson(response));
+            return;
+        }
+        
+        if (staleConn != null) {
+            Log.d(TAG, "Session taken over from stale connection " + staleConn.getRemoteSocketAddress());
+            // No close handshake: a half-open peer would never answer it
+            staleConn.closeConnection(CloseFrame.ABNORMAL_CLOSE, "Session resumed on another connection");
+        }
+        if (existingManager != null) {
+            existingManager.cleanup();
+        }
+        updateDiscoveryLoad();
+        Log.d(TAG, "Session resumed by " + conn.getRemoteSocketAddress()
+                + ", ICE: " + webRTCManager.getIceConnectionState());
+        
+        response.addProperty("type", "session_resumed");
+        response.addProperty("token", token);
+        response.addProperty("ice_state", String.valueOf(webRTCManager.getIceConnectionState()));
+        conn.send(gson.toJson(response));
+    }
+    
+    private void updateDiscoveryLoad() {
+        DiscoveryBeacon beacon = discoveryBeacon;
+        if (beacon != null) {
+            beacon.updateLoad(clients.size(), webRTCManagers.size());
+        }
+    }
+    
+    private void handleSelectLayer(WebSocket conn, JsonObject json) {
+        WebRTCManager webRTCManager = webRTCManagers.get(conn);
+        if (webRTCManager == null || !json.has("layer")) {
+            Log.w(TAG, "Cannot select video layer - no WebRTC session or layer");
+            return;
+        }
+        webRTCManager.selectLayer(json.get("layer").getAsString());
+    }
+    
     private void handleOffer(WebSocket conn, JsonObject json) {
         Log.d(TAG, "Handling WebRTC offer");
         
@@ -259,9 +488,10 @@ public class WebSocketService extends Service {
         // Create WebRTC manager for this connection if not exists
         WebRTCManager webRTCManager = webRTCManagers.get(conn);
         if (webRTCManager == null) {
-            webRTCManager = new WebRTCManager(this, screenCaptureService);
+            webRTCManager = new WebRTCManager(this, screenCaptureService, peerConnectionPool);
             webRTCManager.createPeerConnection(conn);
             webRTCManagers.put(conn, webRTCManager);
+            startSession(conn, webRTCManager, SessionRegistry.DEFAULT_GRACE_MS);
         }
         
         // Handle the offer
@@ -291,6 +521,15 @@ public class WebSocketService extends Service {
         }
     }
     
+    private void handleIceCandidates(WebSocket conn, JsonObject json) {
+        WebRTCManager webRTCManager = webRTCManagers.get(conn);
+        if (webRTCManager != null) {
+            webRTCManager.handleIceCandidates(json);
+        } else {
+            Log.w(TAG, "No WebRTC manager found for ICE candidates");
+        }
+    }
+    
     private void handleControlEvent(WebSocket conn, JsonObject json) {
         // Handle control events from mobile app
         Log.d(TAG, "Handling control event");
@@ -0,0 +1,61 @@
+package com.example.deviceapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayDeque;
+
+import org.junit.Test;
+
+public class AccessibilityInputInjectorTest {
+    private static final long SAMPLE_INTERVAL_MS = 8;
+    // Between a segment ending and its onCompleted callback dispatching the next one
+    private static final long CALLBACK_DELAY_MS = 12;
+
+    private final AccessibilityInputInjector.PendingSpan span = new AccessibilityInputInjector.PendingSpan();
+
+    @Test
+    public void segmentSpansFirstToLastSample() {
+        span.onSample(100);
+        span.onSample(108);
+        assertEquals(8, span.takeDurationMs());
+        // Nothing since: the shortest stroke the gesture API accepts
+        assertEquals(1, span.takeDurationMs());
+    }
+
+    @Test
+    public void steadyDragStaysCloseBehindTheController() {
+        // Replays the dispatch loop: a segment goes out when the previous one completes, and
+        // each completion arrives its duration plus the callback delay after it was sent
+        ArrayDeque<Long> waiting = new ArrayDeque<>();
+        ArrayDeque<Long> inFlight = new ArrayDeque<>();
+        long completeAtMs = -1;
+        long maxDurationMs = 0;
+        long maxLagMs = 0;
+        for (long now = 0; now <= 3000; now++) {
+            if (now % SAMPLE_INTERVAL_MS == 0) {
+                span.onSample(now);
+                waiting.add(now);
+            }
+            if (completeAtMs >= 0 && now >= completeAtMs) {
+                // The pointer has reached every sample of the completed segment
+                while (!inFlight.isEmpty()) {
+                    maxLagMs = Math.max(maxLagMs, now - CALLBACK_DELAY_MS - inFlight.poll());
+                }
+                completeAtMs = -1;
+            }
+            if (completeAtMs < 0 && !waiting.isEmpty()) {
+                long durationMs = span.takeDurationMs();
+                maxDurationMs = Math.max(maxDurationMs, durationMs);
+                inFlight.addAll(waiting);
+                waiting.clear();
+                completeAtMs = now + durationMs + CALLBACK_DELAY_MS;
+            }
+        }
+
+        assertTrue("segment of " + maxDurationMs + " ms", maxDurationMs <= AccessibilityInputInjector.MAX_SEGMENT_MS);
+        // A sample waits for the segment in flight, then plays within its own segment
+        long bound = 2 * AccessibilityInputInjector.MAX_SEGMENT_MS + CALLBACK_DELAY_MS;
+        assertTrue("pointer trails by " + maxLagMs + " ms", maxLagMs <= bound);
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.deviceapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.JsonObject;
+
+import org.junit.Test;
+
+public class ClockSyncTest {
+    // Device clock (ms) when the test starts, as System.nanoTime() would have it
+    private static final double DEVICE_START_MS = 1_000_000;
+
+    private final ClockSync clockSync = new ClockSync(message -> { });
+    private long nextId = 1;
+
+    @Test
+    public void offsetAndRttFromSymmetricExchange() {
+        assertFalse(clockSync.isSynchronized());
+
+        exchange(DEVICE_START_MS, 5.0, 0.5, 0, 250.0);
+
+        assertTrue(clockSync.isSynchronized());
+        assertEquals(250.0, clockSync.getOffsetMs(toNs(DEVICE_START_MS)), 1e-3);
+        assertEquals(10.0, clockSync.getRttMs(), 1e-3);
+        assertEquals(0, clockSync.getDriftPpm(), 0);
+    }
+
+    @Test
+    public void lowestRttSampleWins() {
+        exchange(DEVICE_START_MS, 2.0, 0, 0, 100.0);
+        // Queueing on the way back only: RTT grows and the naive offset is 20 ms off
+        exchange(DEVICE_START_MS + 100, 2.0, 0, 40.0, 100.0);
+
+        assertEquals(100.0, clockSync.getOffsetMs(toNs(DEVICE_START_MS + 100)), 1e-3);
+        assertEquals(4.0, clockSync.getRttMs(), 1e-3);
+    }
+
+    @Test
+    public void driftIsFittedOverLongBaseline() {
+        double drift = 50e-6;
+        for (int i = 0; i <= 12; i++) {
+            // Shrinking RTT so every sample is the window's best pick
+            exchange(DEVICE_START_MS + i * 5000, 5.0 - i * 0.1, 0, 0, 30.0, drift);
+        }
+
+        assertEquals(50.0, clockSync.getDriftPpm(), 0.01);
+        double deviceMs = DEVICE_START_MS + 120_000;
+        assertEquals(30.0 + drift * deviceMs, clockSync.getOffsetMs(toNs(deviceMs)), 1e-3);
+    }
+
+    @Test
+    public void shortBaselineDoesNotFitDrift() {
+        for (int i = 0; i < 8; i++) {
+            exchange(DEVICE_START_MS + i * 100, 5.0 - i * 0.1, 0, 0, 30.0, 50e-6);
+        }
+
+        assertEquals(0, clockSync.getDriftPpm(), 0);
+    }
+
+    @Test
+    public void deviceAndControllerTimeMapBothWays() {
+        exchange(DEVICE_START_MS, 5.0, 0, 0, -1234.5);
+
+        long deviceNs = toNs(DEVICE_START_MS + 2000);
+        double controllerMs = clockSync.toControllerTimeMs(deviceNs);
+        assertEquals(DEVICE_START_MS + 2000 - 1234.5, controllerMs, 1e-3);
+        assertEquals(deviceNs, clockSync.toDeviceTimeNs(Math.round(controllerMs)), 1_000_000);
+    }
+
+    @Test
+    public void inconsistentRepliesAreDiscarded() {
+        JsonObject reply = reply(1, DEVICE_START_MS, 0, 0);
+        reply.remove("t3");
+        clockSync.onReply(reply, toNs(DEVICE_START_MS + 1));
+        // Received before it was sent
+        clockSync.onReply(reply(2, DEVICE_START_MS, 0, 0), toNs(DEVICE_START_MS - 1));
+
+        assertFalse(clockSync.isSynchronized());
+    }
+
+    private void exchange(double sendMs, double oneWayMs, double processingMs, double returnQueueMs,
+                          double offsetMs) {
+        exchange(sendMs, oneWayMs, processingMs, returnQueueMs, offsetMs, 0);
+    }
+
+    // One probe sent at device time sendMs to a controller whose clock reads
+    // deviceMs * (1 + drift) + offsetMs
+    private void exchange(double sendMs, double oneWayMs, double processingMs, double returnQueueMs,
+                          double offsetMs, double drift) {
+        double arriveMs = sendMs + oneWayMs;
+        double t2 = arriveMs * (1 + drift) + offsetMs;
+        double t3 = (arriveMs + processingMs) * (1 + drift) + offsetMs;
+        double receiveMs = arriveMs + processingMs + oneWayMs + returnQueueMs;
+        clockSync.onReply(reply(nextId++, sendMs, t2, t3), toNs(receiveMs));
+    }
+
+    private static JsonObject reply(long id, double sendMs, double t2, double t3) {
+        JsonObject reply = new JsonObject();
+        reply.addProperty("type", ClockSync.MSG_CLOCK_REPLY);
+        reply.addProperty("id", id);
+        reply.addProperty("t1", Math.round(sendMs * 1000));
+        reply.addProperty("t2", t2);
+        reply.addProperty("t3", t3);
+        return reply;
+    }
+
+    private static long toNs(double ms) {
+        return Math.round(ms * 1_000_000);
+    }
+}
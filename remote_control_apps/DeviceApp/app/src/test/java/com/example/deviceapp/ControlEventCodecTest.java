@@ -0,0 +1,139 @@
+package com.example.deviceapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class ControlEventCodecTest {
+    private static final long BASE_TIMESTAMP = 1640995200000L;
+
+    private final ControlEventCodec codec = new ControlEventCodec();
+
+    @Test
+    public void multiPointerTouchRoundTrips() {
+        ControlEvent event = new ControlEvent(ControlEvent.TYPE_TOUCH, 410.5, 880.25, BASE_TIMESTAMP + 16);
+        event.action = 5;
+        event.pointerId = 1;
+        event.seq = 0xfffffffeL;
+        setPointer(event, 0, 0, 410.5, 880.25);
+        setPointer(event, 1, 1, 620.0, 902.75);
+
+        ControlEvent decoded = roundTrip(event);
+
+        assertSame(ControlEvent.TYPE_TOUCH, decoded.type);
+        assertEquals(5, decoded.action);
+        assertEquals(1, decoded.pointerId);
+        assertEquals(BASE_TIMESTAMP + 16, decoded.timestamp);
+        assertEquals(0xfffffffeL, decoded.seq);
+        assertEquals(410.5, decoded.x, 0);
+        assertEquals(880.25, decoded.y, 0);
+        assertEquals(2, decoded.pointerCount);
+        assertEquals(1, decoded.pointers[1].id);
+        assertEquals(620.0, decoded.pointers[1].x, 0);
+        assertEquals(902.75, decoded.pointers[1].y, 0);
+        assertNull(decoded.endX);
+        assertFalse(decoded.normalized);
+    }
+
+    @Test
+    public void normalizedSwipeRoundTrips() {
+        ControlEvent event = new ControlEvent(ControlEvent.TYPE_SWIPE, 0.25, 0.75, BASE_TIMESTAMP);
+        event.normalized = true;
+        event.endX = 0.5;
+        event.endY = 0.125;
+        event.duration = 300;
+
+        ControlEvent decoded = roundTrip(event);
+
+        assertSame(ControlEvent.TYPE_SWIPE, decoded.type);
+        assertTrue(decoded.normalized);
+        assertEquals(0.5, decoded.endX, 0);
+        assertEquals(0.125, decoded.endY, 0);
+        assertEquals(300, (int) decoded.duration);
+        assertEquals(0, decoded.seq);
+    }
+
+    @Test
+    public void coordinatesKeepQ16Precision() {
+        ControlEvent event = new ControlEvent(ControlEvent.TYPE_MOVE, 1079.123456, -0.000001, BASE_TIMESTAMP);
+
+        ControlEvent decoded = roundTrip(event);
+
+        assertEquals(1079.123456, decoded.x, 1.0 / 65536);
+        assertEquals(-0.000001, decoded.y, 1.0 / 65536);
+    }
+
+    @Test
+    public void keyboardEventsHaveNoBinaryForm() {
+        ControlEvent event = new ControlEvent();
+        event.type = ControlEvent.TYPE_TEXT;
+        assertFalse(codec.encode(event, ByteBuffer.allocate(ControlEventCodec.MAX_MESSAGE_SIZE)));
+    }
+
+    @Test
+    public void malformedMessagesAreRejected() {
+        ByteBuffer message = encode(new ControlEvent(ControlEvent.TYPE_MOVE, 1, 2, BASE_TIMESTAMP));
+        ControlEvent out = new ControlEvent();
+
+        ByteBuffer truncated = message.duplicate();
+        truncated.limit(ControlEventCodec.HEADER_SIZE - 1);
+        assertFalse(codec.decode(truncated, out));
+
+        ByteBuffer wrongVersion = copy(message);
+        wrongVersion.put(0, (byte) 2);
+        assertFalse(ControlEventCodec.isBinaryEvent(wrongVersion));
+        assertFalse(codec.decode(wrongVersion, out));
+
+        ByteBuffer unknownType = copy(message);
+        unknownType.put(1, (byte) 99);
+        assertFalse(codec.decode(unknownType, out));
+
+        ByteBuffer missingPointers = copy(message);
+        missingPointers.put(5, (byte) 2);
+        assertFalse(codec.decode(missingPointers, out));
+    }
+
+    @Test
+    public void decodeDoesNotConsumeBuffer() {
+        ByteBuffer message = encode(new ControlEvent(ControlEvent.TYPE_DOWN, 1, 2, BASE_TIMESTAMP));
+        int position = message.position();
+
+        assertTrue(codec.decode(message, new ControlEvent()));
+        assertEquals(position, message.position());
+    }
+
+    private ControlEvent roundTrip(ControlEvent event) {
+        ControlEvent decoded = new ControlEvent();
+        assertTrue(codec.decode(encode(event), decoded));
+        return decoded;
+    }
+
+    private ByteBuffer encode(ControlEvent event) {
+        codec.setBaseTimestamp(BASE_TIMESTAMP);
+        ByteBuffer buffer = ByteBuffer.allocate(ControlEventCodec.MAX_MESSAGE_SIZE);
+        assertTrue(codec.encode(event, buffer));
+        buffer.flip();
+        return buffer;
+    }
+
+    private static ByteBuffer copy(ByteBuffer buffer) {
+        ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+        copy.put(buffer.duplicate());
+        copy.flip();
+        return copy;
+    }
+
+    private static void setPointer(ControlEvent event, int index, int id, double x, double y) {
+        ControlEvent.Pointer pointer = event.obtainPointer(index);
+        pointer.id = id;
+        pointer.x = x;
+        pointer.y = y;
+        event.pointerCount = index + 1;
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.deviceapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The DataChannel receive path (acquire a pooled event, decode into it, release it) must not
+ * allocate once warm. Counted with the JVM's per-thread allocation counter, so this runs on
+ * the host JVM only.
+ */
+public class ControlEventReceivePathTest {
+    private static final String JSON_MOVE = "{\"type\":\"move\",\"pointerId\":0,\"x\":410.5,\"y\":880.25,"
+            + "\"seq\":1042,\"timestamp\":1640995200016}";
+    private static final String JSON_TOUCH = "{\"type\":\"touch\",\"action\":2,\"pointerId\":1,\"pointers\":["
+            + "{\"id\":0,\"x\":410.5,\"y\":880.25},{\"id\":1,\"x\":620.0,\"y\":902.75},"
+            + "{\"id\":2,\"x\":300.0,\"y\":1200.5}],\"timestamp\":1640995200016}";
+
+    private static final int WARMUP_CYCLES = 200000;
+    private static final int MEASURED_CYCLES = 10000;
+    private static final int MEASURED_ROUNDS = 3;
+
+    private com.sun.management.ThreadMXBean threads;
+    private final ControlEventPool pool = new ControlEventPool();
+    private final ControlEventJsonParser jsonParser = new ControlEventJsonParser();
+    private final ControlEventCodec codec = new ControlEventCodec();
+
+    @Before
+    public void setUp() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue("No per-thread allocation counter on this JVM",
+                bean instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @Test
+    public void jsonMoveIsAllocationFree() {
+        assertEquals(0, allocatedBytes(utf8(JSON_MOVE), false));
+    }
+
+    @Test
+    public void jsonTouchIsAllocationFree() {
+        assertEquals(0, allocatedBytes(utf8(JSON_TOUCH), false));
+    }
+
+    @Test
+    public void binaryMoveIsAllocationFree() {
+        assertEquals(0, allocatedBytes(binary(JSON_MOVE), true));
+    }
+
+    @Test
+    public void binaryTouchIsAllocationFree() {
+        assertEquals(0, allocatedBytes(binary(JSON_TOUCH), true));
+    }
+
+    // Fewest bytes allocated by MEASURED_CYCLES receive cycles in any of MEASURED_ROUNDS after
+    // warm-up. A real per-event allocation shows up in every round; a stray one from the JIT
+    // finishing a background compile does not.
+    private long allocatedBytes(ByteBuffer message, boolean binary) {
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP_CYCLES; i++) {
+            receive(message, binary);
+        }
+        long missesBefore = pool.getMisses();
+        // Calibrate: the counter query itself may allocate on some JVMs
+        long calibrationStart = threads.getThreadAllocatedBytes(threadId);
+        long overhead = threads.getThreadAllocatedBytes(threadId) - calibrationStart;
+
+        long fewest = Long.MAX_VALUE;
+        for (int round = 0; round < MEASURED_ROUNDS && fewest > 0; round++) {
+            long start = threads.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < MEASURED_CYCLES; i++) {
+                receive(message, binary);
+            }
+            fewest = Math.min(fewest, threads.getThreadAllocatedBytes(threadId) - start - overhead);
+        }
+        assertEquals("Pool misses", missesBefore, pool.getMisses());
+        return fewest;
+    }
+
+    // One method per path, so the JIT never sees the other path as a cold branch mid-measurement
+    private void receive(ByteBuffer message, boolean binary) {
+        if (binary) {
+            receiveBinary(message);
+        } else {
+            receiveJson(message);
+        }
+    }
+
+    private void receiveJson(ByteBuffer message) {
+        ControlEvent event = pool.acquire();
+        if (!jsonParser.parse(message, event)) {
+            throw new AssertionError("Failed to parse sample event");
+        }
+        pool.release(event);
+    }
+
+    private void receiveBinary(ByteBuffer message) {
+        ControlEvent event = pool.acquire();
+        if (!codec.decode(message, event)) {
+            throw new AssertionError("Failed to decode sample event");
+        }
+        pool.release(event);
+    }
+
+    private ByteBuffer binary(String json) {
+        ControlEvent source = new ControlEvent();
+        assertTrue(jsonParser.parse(utf8(json), source));
+        codec.setBaseTimestamp(source.timestamp - 1000);
+        ByteBuffer buffer = ByteBuffer.allocate(ControlEventCodec.MAX_MESSAGE_SIZE);
+        assertTrue(codec.encode(source, buffer));
+        buffer.flip();
+        return buffer;
+    }
+
+    private static ByteBuffer utf8(String json) {
+        return ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
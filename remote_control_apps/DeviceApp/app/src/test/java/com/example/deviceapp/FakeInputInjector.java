@@ -0,0 +1,93 @@
+package com.example.deviceapp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * In-memory backend that records what would have been injected, so tests can drive the
+ * control path without touching the real input system.
+ */
+public class FakeInputInjector implements InputInjector {
+    private final List<String> events = new ArrayList<>();
+    private boolean available = true;
+
+    @Override
+    public String getName() {
+        return "fake";
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return available;
+    }
+
+    public void setAvailable(boolean available) {
+        this.available = available;
+    }
+
+    @Override
+    public synchronized void tap(float x, float y) {
+        record(String.format(Locale.US, "tap %.1f %.1f", x, y));
+    }
+
+    @Override
+    public synchronized void longPress(float x, float y, long durationMs) {
+        record(String.format(Locale.US, "long_press %.1f %.1f %d", x, y, durationMs));
+    }
+
+    @Override
+    public synchronized void swipe(float startX, float startY, float endX, float endY, long durationMs) {
+        record(String.format(Locale.US, "swipe %.1f %.1f %.1f %.1f %d", startX, startY, endX, endY, durationMs));
+    }
+
+    @Override
+    public synchronized void keyEvent(int keyCode) {
+        record("key " + keyCode);
+    }
+
+    @Override
+    public synchronized void text(String text) {
+        record("text " + text);
+    }
+
+    @Override
+    public synchronized void keys(int[] keyCodes, int metaState) {
+        StringBuilder event = new StringBuilder("keys ").append(metaState);
+        for (int keyCode : keyCodes) {
+            event.append(' ').append(keyCode);
+        }
+        record(event.toString());
+    }
+
+    @Override
+    public synchronized void motion(int action, TouchPointers pointers) {
+        StringBuilder event = new StringBuilder("motion ").append(action);
+        for (int i = 0; i < pointers.getCount(); i++) {
+            event.append(String.format(Locale.US, " %d:%.1f,%.1f",
+                    pointers.getId(i), pointers.getX(i), pointers.getY(i)));
+        }
+        record(event.toString());
+    }
+
+    @Override
+    public void release() {
+        clear();
+    }
+
+    public synchronized List<String> getEvents() {
+        return new ArrayList<>(events);
+    }
+
+    public synchronized int getEventCount() {
+        return events.size();
+    }
+
+    public synchronized void clear() {
+        events.clear();
+    }
+
+    protected synchronized void record(String event) {
+        events.add(event);
+    }
+}
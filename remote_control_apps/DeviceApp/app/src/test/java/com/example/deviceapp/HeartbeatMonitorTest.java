@@ -0,0 +1,79 @@
+package com.example.deviceapp;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class HeartbeatMonitorTest {
+    private static final long MS = 1_000_000;
+
+    private final HeartbeatMonitor.Stats stats = new HeartbeatMonitor.Stats("test");
+
+    @Test
+    public void pongIsTimedAgainstItsOwnPing() {
+        assertEquals(0, stats.onHeartbeat());
+        long sequence = stats.onPing(0);
+        stats.onPong(sequence, 3 * MS);
+
+        assertEquals(1, stats.pongsReceived);
+        assertEquals(3.0, stats.lastRttMs, 1e-9);
+        assertEquals(0, stats.onHeartbeat());
+    }
+
+    @Test
+    public void latePongIsNotCreditedToTheNextPing() {
+        long first = stats.onPing(0);
+        assertEquals(1, stats.onHeartbeat());
+        long second = stats.onPing(5000 * MS);
+        // The first ping's pong turns up half a second after the second ping
+        stats.onPong(first, 5500 * MS);
+
+        assertEquals(0, stats.pongsReceived);
+        assertEquals(1, stats.latePongs);
+        assertEquals(1, stats.missed);
+
+        stats.onPong(second, 5508 * MS);
+        assertEquals(1, stats.pongsReceived);
+        assertEquals(508.0, stats.lastRttMs, 1e-9);
+        assertEquals(0, stats.missed);
+    }
+
+    @Test
+    public void duplicatePongIsIgnored() {
+        long sequence = stats.onPing(0);
+        stats.onPong(sequence, 2 * MS);
+        stats.onPong(sequence, 9 * MS);
+
+        assertEquals(1, stats.pongsReceived);
+        assertEquals(1, stats.latePongs);
+        assertEquals(2.0, stats.lastRttMs, 1e-9);
+    }
+
+    @Test
+    public void unansweredPingsCountUpAtEachHeartbeat() {
+        for (int i = 1; i <= 3; i++) {
+            stats.onPing(i * 5000 * MS);
+            assertEquals(i, stats.onHeartbeat());
+        }
+        // Any message resets the streak; the ping still outstanding counts again
+        stats.onPing(20000 * MS);
+        stats.onActivity();
+        assertEquals(1, stats.onHeartbeat());
+    }
+
+    @Test
+    public void rttIsSmoothedAndJitterTracked() {
+        long[] rttsMs = {10, 18, 10};
+        for (int i = 0; i < rttsMs.length; i++) {
+            long sentNs = i * 5000 * MS;
+            stats.onHeartbeat();
+            stats.onPong(stats.onPing(sentNs), sentNs + rttsMs[i] * MS);
+        }
+
+        assertEquals(10.0, stats.minRttMs, 1e-9);
+        // 10, then 10 + (18 - 10) / 8 = 11, then 11 + (10 - 11) / 8
+        assertEquals(10.875, stats.srttMs, 1e-9);
+        // 8 / 16 = 0.5, then 0.5 + (8 - 0.5) / 16
+        assertEquals(0.96875, stats.jitterMs, 1e-9);
+    }
+}
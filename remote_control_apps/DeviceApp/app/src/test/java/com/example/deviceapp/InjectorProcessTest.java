@@ -0,0 +1,49 @@
+package com.example.deviceapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class InjectorProcessTest {
+    private final FakeInputInjector injector = new FakeInputInjector();
+    private final InjectorProcess process = new InjectorProcess(injector);
+
+    @Test
+    public void commandsFromTheInjectorAreReplayed() {
+        ShellInputInjector shell = new ShellInputInjector("test.apk") {
+            @Override
+            protected void execute(String command) {
+                assertTrue(command, process.run(command));
+            }
+        };
+        shell.tap(10f, 20f);
+        shell.swipe(1f, 2f, 3f, 4f, 300);
+        shell.keys(new int[] {29, 31}, 0x1000);
+        shell.text("line one\nback\\slash 100%s");
+
+        assertEquals(Arrays.asList(
+                "tap 10.0 20.0",
+                "swipe 1.0 2.0 3.0 4.0 300",
+                "keys 4096 29 31",
+                "text line one\nback\\slash 100%s"), injector.getEvents());
+    }
+
+    @Test
+    public void motionRebuildsThePointerSet() {
+        assertTrue(process.run("motion 2 1000 2 0 10.5 20.0 3 30.0 40.0"));
+
+        assertEquals(Arrays.asList("motion 2 0:10.5,20.0 3:30.0,40.0"), injector.getEvents());
+    }
+
+    @Test
+    public void malformedCommandsFail() {
+        assertFalse(process.run("fly 1 2"));
+        assertFalse(process.run("tap 1"));
+        assertFalse(process.run("key x"));
+        assertEquals(0, injector.getEventCount());
+    }
+}
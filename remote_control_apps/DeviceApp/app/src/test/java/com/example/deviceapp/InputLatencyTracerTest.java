@@ -0,0 +1,41 @@
+package com.example.deviceapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class InputLatencyTracerTest {
+    private final List<JsonObject> messages = new ArrayList<>();
+    private final InputLatencyTracer tracer = new InputLatencyTracer();
+
+    @Test
+    public void statsCoverEventsFromBeforeTheLastSummary() {
+        tracer.setReporter(messages::add);
+        tracer.setSummaryIntervalMs(1);
+
+        // Far enough past the tracer's start that the first event sends a summary
+        long receiveNs = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        record(receiveNs, 1000);
+        // Ends together with the first, so it stays in the interval still being collected
+        record(receiveNs - TimeUnit.MILLISECONDS.toNanos(2), 3000);
+        assertEquals(1, messages.size());
+
+        long firstUpper = Math.min(LatencyHistogram.bucketUpperBound(LatencyHistogram.bucketIndex(1000)), 3000);
+        String stats = tracer.getStats();
+        assertTrue(stats, stats.endsWith("device_total p50/p99 us: " + firstUpper + "/3000"));
+        // Reading the stats must not lose anything either
+        assertEquals(stats, tracer.getStats());
+    }
+
+    private void record(long receiveNs, long deviceUs) {
+        long endNs = receiveNs + TimeUnit.MICROSECONDS.toNanos(deviceUs);
+        tracer.recordInjection(0, 0, receiveNs, 0, receiveNs, endNs);
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.deviceapp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import android.view.KeyEvent;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class KeyModifiersTest {
+    @Test
+    public void namesMapToMetaStateIgnoringCaseAndUnknowns() {
+        int metaState = KeyModifiers.toMetaState(new String[] {"CTRL", "shift", "hyper", null});
+
+        assertEquals(KeyEvent.META_CTRL_ON | KeyEvent.META_CTRL_LEFT_ON
+                | KeyEvent.META_SHIFT_ON | KeyEvent.META_SHIFT_LEFT_ON, metaState);
+        assertEquals(0, KeyModifiers.toMetaState(null));
+        assertEquals(0, KeyModifiers.toMetaState(new String[0]));
+    }
+
+    @Test
+    public void metaStateMapsToModifierKeysInFixedOrder() {
+        int[] keyCodes = new int[KeyModifiers.MAX_MODIFIERS];
+        int count = KeyModifiers.toKeyCodes(KeyModifiers.toMetaState(new String[] {"meta", "alt", "shift"}), keyCodes);
+
+        assertArrayEquals(new int[] {KeyEvent.KEYCODE_SHIFT_LEFT, KeyEvent.KEYCODE_ALT_LEFT, KeyEvent.KEYCODE_META_LEFT},
+                Arrays.copyOf(keyCodes, count));
+    }
+
+    @Test
+    public void pressingModifierKeysRebuildsMetaState() {
+        int metaState = KeyModifiers.toMetaState(new String[] {"shift", "ctrl", "alt", "meta"});
+        int[] keyCodes = new int[KeyModifiers.MAX_MODIFIERS];
+        int count = KeyModifiers.toKeyCodes(metaState, keyCodes);
+
+        assertEquals(KeyModifiers.MAX_MODIFIERS, count);
+        assertEquals(metaState, KeyModifiers.metaStateOf(keyCodes, count));
+        // Part way through pressing the chord only the keys so far are held
+        assertEquals(KeyModifiers.toMetaState(new String[] {"shift"}), KeyModifiers.metaStateOf(keyCodes, 1));
+        assertEquals(0, KeyModifiers.metaStateOf(keyCodes, 0));
+    }
+}
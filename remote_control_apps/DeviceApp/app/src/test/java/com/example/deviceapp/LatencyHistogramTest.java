@@ -0,0 +1,122 @@
+package com.example.deviceapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+    private static final long MAX_VALUE = (1L << 30) - 1;
+
+    @Test
+    public void smallValuesHaveExactBuckets() {
+        for (long value = 0; value < 32; value++) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertEquals(value, index);
+            assertEquals(value, LatencyHistogram.bucketUpperBound(index));
+        }
+    }
+
+    @Test
+    public void bucketsAreContiguousAndWithinResolution() {
+        int previousIndex = LatencyHistogram.bucketIndex(0);
+        for (long value = 1; value <= 1 << 20; value++) {
+            assertBucketHolds(value);
+            int index = LatencyHistogram.bucketIndex(value);
+            // Increasing values never skip a bucket
+            assertTrue("Gap before " + value, index == previousIndex || index == previousIndex + 1);
+            previousIndex = index;
+        }
+        for (int bit = 20; bit < 30; bit++) {
+            long power = 1L << bit;
+            assertBucketHolds(power - 1);
+            assertBucketHolds(power);
+            assertBucketHolds(power + 1);
+        }
+        assertBucketHolds(MAX_VALUE);
+    }
+
+    @Test
+    public void percentilesAreUpperBoundsOfTheirBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500, histogram.getMean());
+        assertEquals(1000, histogram.getMax());
+        assertWithinResolution(500, histogram.getPercentile(50));
+        assertWithinResolution(990, histogram.getPercentile(99));
+        assertEquals(1000, histogram.getPercentile(100));
+        assertEquals(1, histogram.getPercentile(0));
+    }
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(0, histogram.getMean());
+    }
+
+    @Test
+    public void valuesAreClampedToRange() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(MAX_VALUE, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(MAX_VALUE, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void drainToMovesEverythingAndClearsSource() {
+        LatencyHistogram source = new LatencyHistogram();
+        LatencyHistogram target = new LatencyHistogram();
+        target.record(10);
+        source.record(20);
+        source.record(5000);
+
+        source.drainTo(target);
+
+        assertEquals(0, source.getCount());
+        assertEquals(0, source.getMax());
+        assertEquals(3, target.getCount());
+        assertEquals((10 + 20 + 5000) / 3, target.getMean());
+        assertEquals(5000, target.getMax());
+        assertEquals(20, target.getPercentile(50));
+    }
+
+    @Test
+    public void addToCopiesWithoutClearingSource() {
+        LatencyHistogram source = new LatencyHistogram();
+        LatencyHistogram target = new LatencyHistogram();
+        target.record(10);
+        source.record(20);
+        source.record(5000);
+
+        source.addTo(target);
+
+        assertEquals(2, source.getCount());
+        assertEquals(5000, source.getMax());
+        assertEquals(3, target.getCount());
+        assertEquals((10 + 20 + 5000) / 3, target.getMean());
+        assertEquals(5000, target.getMax());
+    }
+
+    private static void assertBucketHolds(long value) {
+        int index = LatencyHistogram.bucketIndex(value);
+        long upper = LatencyHistogram.bucketUpperBound(index);
+        assertTrue(value + " above its bucket " + upper, value <= upper);
+        if (index > 0) {
+            assertTrue(value + " belongs in an earlier bucket", value > LatencyHistogram.bucketUpperBound(index - 1));
+        }
+        assertWithinResolution(value, upper);
+    }
+
+    // Buckets are 1/16 of their power-of-two range wide, so an upper bound is within 1/16
+    private static void assertWithinResolution(long value, long reported) {
+        assertTrue("Reported " + reported + " for " + value, reported >= value && reported - value <= value / 16);
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.deviceapp;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class SdpMungerTest {
+    @Test
+    public void sendrecvBecomesSendonly() {
+        assertEquals("m=video 9 UDP/TLS/RTP/SAVPF 96\r\na=sendonly\r\na=rtcp-mux\r\n",
+                SdpMunger.mungeOffer("m=video 9 UDP/TLS/RTP/SAVPF 96\r\na=sendrecv\r\na=rtcp-mux\r\n"));
+    }
+
+    @Test
+    public void frameLimitsArePrependedToH264Parameters() {
+        assertEquals("a=fmtp:96 max-fr=60;max-fs=8160;level-asymmetry-allowed=1;packetization-mode=1\r\n",
+                SdpMunger.mungeOffer("a=fmtp:96 level-asymmetry-allowed=1;packetization-mode=1\r\n"));
+    }
+
+    @Test
+    public void frameLimitsAreAddedToEmptyFmtp() {
+        assertEquals("a=fmtp:96 max-fr=60;max-fs=8160\r\n", SdpMunger.mungeOffer("a=fmtp:96\r\n"));
+    }
+
+    @Test
+    public void otherPayloadTypesAreUntouched() {
+        String sdp = "a=fmtp:97 apt=96\r\na=fmtp:960 foo=1\r\na=sendrecv-extra\r\n";
+        assertEquals(sdp, SdpMunger.mungeOffer(sdp));
+    }
+
+    @Test
+    public void lineEndingsArePreserved() {
+        assertEquals("a=sendonly\na=fmtp:96 max-fr=60;max-fs=8160;apt=1",
+                SdpMunger.mungeOffer("a=sendrecv\na=fmtp:96 apt=1"));
+    }
+}
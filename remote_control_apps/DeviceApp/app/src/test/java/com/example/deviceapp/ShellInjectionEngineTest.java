@@ -0,0 +1,150 @@
+package com.example.deviceapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ShellInjectionEngineTest {
+    private final PipedInputStream engineInput = new PipedInputStream();
+    private final PipedOutputStream injectorOutput = new PipedOutputStream();
+    private final PipedInputStream injectorInput = new PipedInputStream();
+    private final PipedOutputStream engineOutput = new PipedOutputStream();
+    private BufferedReader commands;
+
+    private final BlockingQueue<Long> completed = new LinkedBlockingQueue<>();
+    private final ShellInjectionEngine.Callback callback =
+            (commandId, exitCode, latencyNs) -> completed.add(commandId);
+
+    // Stands in for InjectorProcess, with the test on the other end of its pipes
+    private final ShellInjectionEngine engine = new ShellInjectionEngine("test.apk") {
+        @Override
+        Process launch() {
+            return new Process() {
+                @Override
+                public OutputStream getOutputStream() {
+                    return engineOutput;
+                }
+
+                @Override
+                public InputStream getInputStream() {
+                    return engineInput;
+                }
+
+                @Override
+                public InputStream getErrorStream() {
+                    return InputStream.nullInputStream();
+                }
+
+                @Override
+                public int waitFor() {
+                    return 0;
+                }
+
+                @Override
+                public int exitValue() {
+                    return 0;
+                }
+
+                @Override
+                public void destroy() {
+                }
+            };
+        }
+    };
+
+    @Before
+    public void connect() throws IOException {
+        engineInput.connect(injectorOutput);
+        injectorInput.connect(engineOutput);
+        commands = new BufferedReader(new InputStreamReader(injectorInput, StandardCharsets.UTF_8));
+    }
+
+    @After
+    public void shutdown() {
+        engine.shutdown();
+    }
+
+    @Test
+    public void movesWaitForTheOneInFlightAndOnlyTheNewestIsSent() throws Exception {
+        engine.submitLatest("move 1", callback);
+        assertEquals("1 move 1", commands.readLine());
+
+        engine.submitLatest("move 2", callback);
+        engine.submitLatest("move 3", callback);
+        assertEquals(1, engine.getReplacedCount());
+
+        complete(1);
+        assertEquals(1L, (long) completed.poll(5, TimeUnit.SECONDS));
+        assertEquals("2 move 3", commands.readLine());
+    }
+
+    @Test
+    public void heldMoveGoesOutAheadOfTheNextCommand() throws Exception {
+        engine.submitLatest("move 1", callback);
+        engine.submitLatest("move 2", callback);
+        engine.submit("up", callback);
+
+        assertEquals("1 move 1", commands.readLine());
+        assertEquals("2 move 2", commands.readLine());
+        assertEquals("3 up", commands.readLine());
+        assertEquals(0, engine.getReplacedCount());
+    }
+
+    @Test
+    public void burstLargerThanThePipesDoesNotDeadlock() throws Exception {
+        // Answers every command as it reads it; the pipes hold 1 KB, far less than the burst
+        Thread injector = new Thread(() -> {
+            try {
+                String line;
+                while ((line = commands.readLine()) != null) {
+                    complete(Long.parseLong(line.substring(0, line.indexOf(' '))));
+                }
+            } catch (IOException e) {
+                // Engine shut down
+            }
+        });
+        injector.setDaemon(true);
+        injector.start();
+
+        int count = 2000;
+        Thread submitter = new Thread(() -> {
+            for (int i = 0; i < count; i++) {
+                // Latest-only moves make the reader take the engine's lock on completions
+                if (i % 10 == 0) {
+                    engine.submitLatest("move " + i, callback);
+                } else {
+                    engine.submit("tap " + i, callback);
+                }
+            }
+        });
+        submitter.start();
+        submitter.join(10000);
+        assertFalse("submit blocked", submitter.isAlive());
+
+        long expected = count - engine.getReplacedCount();
+        for (long i = 0; i < expected; i++) {
+            assertNotNull("completion " + i + " of " + expected, completed.poll(10, TimeUnit.SECONDS));
+        }
+    }
+
+    private void complete(long id) throws IOException {
+        injectorOutput.write((ShellInjectionEngine.DONE_MARKER + " " + id + " 0\n").getBytes(StandardCharsets.UTF_8));
+        injectorOutput.flush();
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.deviceapp;
+
+import static org.junit.Assert.assertEquals;
+
+import android.view.KeyEvent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ShellInputInjectorTest {
+    private final List<String> commands = new ArrayList<>();
+    private final ShellInputInjector injector = new ShellInputInjector("test.apk") {
+        @Override
+        protected void execute(String command) {
+            commands.add(command);
+        }
+
+        @Override
+        protected void executeLatest(String command) {
+            commands.add("latest " + command);
+        }
+    };
+
+    @Test
+    public void textKeepsSpacesAndPercentSigns() {
+        injector.text("100%sure 5% off");
+
+        assertEquals(Arrays.asList("text 100%sure 5% off"), commands);
+    }
+
+    @Test
+    public void lineBreaksAndBackslashesAreEscaped() {
+        String text = "a\\n\nb\r";
+        assertEquals("a\\\\n\\nb\\r", ShellInputInjector.escapeText(text));
+        assertEquals(text, ShellInputInjector.unescapeText(ShellInputInjector.escapeText(text)));
+    }
+
+    @Test
+    public void modifiedKeysAreOneCommand() {
+        injector.keys(new int[] {29, 31, 50}, KeyEvent.META_CTRL_ON);
+
+        assertEquals(Arrays.asList("keys " + KeyEvent.META_CTRL_ON + " 29 31 50"), commands);
+    }
+
+    @Test
+    public void motionCarriesEveryPointer() {
+        TouchPointers pointers = new TouchPointers();
+        pointers.add(0, 10f, 20f, 1000);
+        pointers.add(3, 30.5f, 40f, 1016);
+        injector.motion(5 | (1 << 8), pointers);
+
+        assertEquals(Arrays.asList("motion 261 1000 2 0 10.0 20.0 3 30.5 40.0"), commands);
+    }
+
+    @Test
+    public void onlyMovesAreCoalesced() {
+        TouchPointers pointers = new TouchPointers();
+        pointers.add(0, 10f, 20f, 1000);
+        injector.motion(0, pointers);
+        injector.motion(2, pointers);
+        injector.motion(1, pointers);
+
+        assertEquals(Arrays.asList(
+                "motion 0 1000 1 0 10.0 20.0",
+                "latest motion 2 1000 1 0 10.0 20.0",
+                "motion 1 1000 1 0 10.0 20.0"), commands);
+    }
+}
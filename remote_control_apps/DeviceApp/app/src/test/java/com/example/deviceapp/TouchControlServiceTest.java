@@ -0,0 +1,181 @@
+package com.example.deviceapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.view.MotionEvent;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class TouchControlServiceTest {
+    private FakeInputInjector injector;
+    private TouchControlService service;
+
+    @Before
+    public void setUp() {
+        injector = new FakeInputInjector();
+        service = new TouchControlService(injector);
+    }
+
+    @Test
+    public void streamedTwoFingerGestureInjectsMultiPointerSequence() {
+        service.handleControlEvent(touch(ControlEvent.TYPE_DOWN, 0, 100, 200));
+        service.handleControlEvent(touch(ControlEvent.TYPE_DOWN, 1, 300, 400));
+        service.handleControlEvent(touch(ControlEvent.TYPE_MOVE, 1, 310, 420));
+        service.handleControlEvent(touch(ControlEvent.TYPE_UP, 0, 100, 200));
+        service.handleControlEvent(touch(ControlEvent.TYPE_UP, 1, 310, 420));
+
+        assertEquals(Arrays.asList(
+                "motion " + MotionEvent.ACTION_DOWN + " 0:100.0,200.0",
+                "motion " + pointerAction(MotionEvent.ACTION_POINTER_DOWN, 1) + " 0:100.0,200.0 1:300.0,400.0",
+                "motion " + MotionEvent.ACTION_MOVE + " 0:100.0,200.0 1:310.0,420.0",
+                "motion " + pointerAction(MotionEvent.ACTION_POINTER_UP, 0) + " 0:100.0,200.0 1:310.0,420.0",
+                "motion " + MotionEvent.ACTION_UP + " 1:310.0,420.0"),
+                injector.getEvents());
+    }
+
+    @Test
+    public void multiPointerTouchEventsInjectOneMotionEach() {
+        service.handleControlEvent(multiTouch(MotionEvent.ACTION_DOWN, 0, pointer(0, 10, 20)));
+        service.handleControlEvent(multiTouch(MotionEvent.ACTION_POINTER_DOWN, 1,
+                pointer(0, 10, 20), pointer(1, 50, 60)));
+        service.handleControlEvent(multiTouch(MotionEvent.ACTION_MOVE, 0,
+                pointer(0, 15, 25), pointer(1, 55, 65)));
+        service.handleControlEvent(multiTouch(MotionEvent.ACTION_POINTER_UP, 1,
+                pointer(0, 15, 25), pointer(1, 55, 65)));
+        service.handleControlEvent(multiTouch(MotionEvent.ACTION_UP, 0, pointer(0, 15, 25)));
+
+        assertEquals(Arrays.asList(
+                "motion " + MotionEvent.ACTION_DOWN + " 0:10.0,20.0",
+                "motion " + pointerAction(MotionEvent.ACTION_POINTER_DOWN, 1) + " 0:10.0,20.0 1:50.0,60.0",
+                "motion " + MotionEvent.ACTION_MOVE + " 0:15.0,25.0 1:55.0,65.0",
+                "motion " + pointerAction(MotionEvent.ACTION_POINTER_UP, 1) + " 0:15.0,25.0 1:55.0,65.0",
+                "motion " + MotionEvent.ACTION_UP + " 0:15.0,25.0"),
+                injector.getEvents());
+    }
+
+    @Test
+    public void repairsLostDownAndDropsStrayUp() {
+        // Move without a down starts the pointer, a repeated down is a move
+        service.handleControlEvent(touch(ControlEvent.TYPE_MOVE, 0, 100, 200));
+        service.handleControlEvent(touch(ControlEvent.TYPE_DOWN, 0, 110, 210));
+        service.handleControlEvent(touch(ControlEvent.TYPE_UP, 0, 110, 210));
+        service.handleControlEvent(touch(ControlEvent.TYPE_UP, 0, 110, 210));
+
+        assertEquals(Arrays.asList(
+                "motion " + MotionEvent.ACTION_DOWN + " 0:100.0,200.0",
+                "motion " + MotionEvent.ACTION_MOVE + " 0:110.0,210.0",
+                "motion " + MotionEvent.ACTION_UP + " 0:110.0,210.0"),
+                injector.getEvents());
+    }
+
+    @Test
+    public void pointerIdsOutsideMotionEventRangeAreIgnored() {
+        service.handleControlEvent(touch(ControlEvent.TYPE_DOWN, TouchPointers.MAX_POINTER_ID + 1, 100, 200));
+        service.handleControlEvent(touch(ControlEvent.TYPE_MOVE, 255, 110, 210));
+        service.handleControlEvent(touch(ControlEvent.TYPE_DOWN, -1, 100, 200));
+        service.handleControlEvent(multiTouch(MotionEvent.ACTION_POINTER_DOWN, 40,
+                pointer(TouchPointers.MAX_POINTER_ID, 10, 20), pointer(40, 50, 60)));
+
+        assertEquals(Arrays.asList(
+                "motion " + MotionEvent.ACTION_DOWN + " " + TouchPointers.MAX_POINTER_ID + ":10.0,20.0"),
+                injector.getEvents());
+    }
+
+    @Test
+    public void unchangedMoveIsNotInjected() {
+        service.handleControlEvent(touch(ControlEvent.TYPE_DOWN, 0, 100, 200));
+        service.handleControlEvent(touch(ControlEvent.TYPE_MOVE, 0, 100, 200));
+
+        assertEquals(1, injector.getEventCount());
+    }
+
+    @Test
+    public void cancelGesturesLiftsActivePointers() {
+        service.handleControlEvent(touch(ControlEvent.TYPE_DOWN, 0, 100, 200));
+        service.cancelGestures();
+        service.cancelGestures();
+
+        assertEquals(Arrays.asList(
+                "motion " + MotionEvent.ACTION_DOWN + " 0:100.0,200.0",
+                "motion " + MotionEvent.ACTION_CANCEL + " 0:100.0,200.0"),
+                injector.getEvents());
+    }
+
+    @Test
+    public void wholeGesturesAndKeysGoStraightToInjector() {
+        service.handleControlEvent(new ControlEvent(ControlEvent.TYPE_CLICK, 10, 20, 0));
+        ControlEvent swipe = new ControlEvent(ControlEvent.TYPE_SWIPE, 10, 20, 0);
+        swipe.endX = 30.0;
+        swipe.endY = 40.0;
+        swipe.duration = 250;
+        service.handleControlEvent(swipe);
+        service.handleControlEvent(new ControlEvent(ControlEvent.TYPE_CLICK, -1, -1, 0));
+
+        assertEquals(Arrays.asList(
+                "tap 10.0 20.0",
+                "swipe 10.0 20.0 30.0 40.0 250",
+                "key 4"),
+                injector.getEvents());
+    }
+
+    @Test
+    public void keysAreRepeatedAndCapped() {
+        ControlEvent keys = new ControlEvent();
+        keys.type = ControlEvent.TYPE_KEYS;
+        keys.keyCodes = new int[] {29, 30};
+        keys.modifiers = new String[] {"ctrl"};
+        keys.repeat = 2;
+        service.handleControlEvent(keys);
+
+        keys.repeat = ControlEvent.MAX_KEY_COUNT;
+        service.handleControlEvent(keys);
+
+        int ctrl = KeyModifiers.toMetaState(new String[] {"ctrl"});
+        assertEquals("keys " + ctrl + " 29 30 29 30", injector.getEvents().get(0));
+        String capped = injector.getEvents().get(1);
+        assertEquals(ControlEvent.MAX_KEY_COUNT, capped.split(" ").length - 2);
+    }
+
+    @Test
+    public void oversizedTextIsDropped() {
+        ControlEvent text = new ControlEvent();
+        text.type = ControlEvent.TYPE_TEXT;
+        text.text = String.join("", Collections.nCopies(ControlEvent.MAX_TEXT_LENGTH + 1, "a"));
+        service.handleControlEvent(text);
+
+        assertTrue(injector.getEvents().isEmpty());
+    }
+
+    private static ControlEvent touch(String type, int pointerId, double x, double y) {
+        ControlEvent event = new ControlEvent(type, x, y, 0);
+        event.pointerId = pointerId;
+        return event;
+    }
+
+    private static ControlEvent multiTouch(int action, int actionPointerId, ControlEvent.Pointer... pointers) {
+        ControlEvent event = new ControlEvent();
+        event.type = ControlEvent.TYPE_TOUCH;
+        event.action = action;
+        event.pointerId = actionPointerId;
+        event.pointers = pointers;
+        event.pointerCount = pointers.length;
+        return event;
+    }
+
+    private static ControlEvent.Pointer pointer(int id, double x, double y) {
+        ControlEvent.Pointer pointer = new ControlEvent.Pointer();
+        pointer.id = id;
+        pointer.x = x;
+        pointer.y = y;
+        return pointer;
+    }
+
+    private static int pointerAction(int action, int index) {
+        return action | (index << MotionEvent.ACTION_POINTER_INDEX_SHIFT);
+    }
+}
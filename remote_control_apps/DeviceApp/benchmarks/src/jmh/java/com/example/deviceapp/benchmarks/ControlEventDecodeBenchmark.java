@@ -0,0 +1,75 @@
+package com.example.deviceapp.benchmarks;
+
+import com.example.deviceapp.ControlEvent;
+import com.example.deviceapp.ControlEventCodec;
+import com.example.deviceapp.ControlEventJsonParser;
+import com.example.deviceapp.ControlEventPool;
+import com.google.gson.Gson;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * DataChannel control-event decoding as in WebRTCManager's onMessage: a pooled event filled
+ * by the binary codec or the allocation-free JSON parser, against plain Gson. The
+ * DataChannel.Buffer is stood in for by a heap ByteBuffer holding the message.
+ */
+@State(Scope.Thread)
+public class ControlEventDecodeBenchmark {
+    @Param({"move", "touch"})
+    public String event;
+
+    private final Gson gson = new Gson();
+    private final ControlEventCodec codec = new ControlEventCodec();
+    private final ControlEventJsonParser jsonParser = new ControlEventJsonParser();
+    private final ControlEventPool pool = new ControlEventPool();
+    private String json;
+    private ByteBuffer jsonBuffer;
+    private ByteBuffer binaryBuffer;
+
+    @Setup
+    public void setUp() {
+        json = "move".equals(event) ? SampleMessages.JSON_MOVE : SampleMessages.JSON_TOUCH;
+        jsonBuffer = ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8));
+
+        ControlEvent source = gson.fromJson(json, ControlEvent.class);
+        source.pointerCount = source.pointers != null ? source.pointers.length : 0;
+        codec.setBaseTimestamp(source.timestamp - 1000);
+        binaryBuffer = ByteBuffer.allocate(ControlEventCodec.MAX_MESSAGE_SIZE);
+        if (!codec.encode(source, binaryBuffer)) {
+            throw new IllegalStateException("Sample event has no binary form");
+        }
+        binaryBuffer.flip();
+    }
+
+    @Benchmark
+    public ControlEvent gson() {
+        // Previous path: decode the bytes to a String, then reflective Gson binding
+        String message = new String(jsonBuffer.array(), 0, jsonBuffer.remaining(), StandardCharsets.UTF_8);
+        return gson.fromJson(message, ControlEvent.class);
+    }
+
+    @Benchmark
+    public double jsonParser() {
+        ControlEvent out = pool.acquire();
+        jsonParser.parse(jsonBuffer, out);
+        double x = out.x + out.pointerCount;
+        pool.release(out);
+        return x;
+    }
+
+    @Benchmark
+    public double binaryCodec() {
+        ControlEvent out = pool.acquire();
+        codec.decode(binaryBuffer, out);
+        double x = out.x + out.pointerCount;
+        pool.release(out);
+        return x;
+    }
+}
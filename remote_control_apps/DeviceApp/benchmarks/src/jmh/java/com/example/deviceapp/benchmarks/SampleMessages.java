@@ -0,0 +1,92 @@
+package com.example.deviceapp.benchmarks;
+
+/** Representative payloads, shaped like what the device and controller exchange. */
+final class SampleMessages {
+    // A send-only H.264 screen-share offer with a data channel, as libwebrtc generates it
+    static final String OFFER_SDP = String.join("\r\n",
+            "v=0",
+            "o=- 4611731400430051336 2 IN IP4 127.0.0.1",
+            "s=-",
+            "t=0 0",
+            "a=group:BUNDLE 0 1",
+            "a=extmap-allow-mixed",
+            "a=msid-semantic: WMS",
+            "m=video 9 UDP/TLS/RTP/SAVPF 96 97 98 99 100 101 127",
+            "c=IN IP4 0.0.0.0",
+            "a=rtcp:9 IN IP4 0.0.0.0",
+            "a=ice-ufrag:Fx3b",
+            "a=ice-pwd:6vXyWbS9n8k3lNqS3vGLKkTt",
+            "a=ice-options:trickle renomination",
+            "a=fingerprint:sha-256 7B:8B:F0:65:5F:78:E2:51:3B:AC:6F:F3:3F:46:1B:35:DC:B8:5F:64:1A:24:C2:43:F0:A1:58:D0:A1:2C:19:08",
+            "a=setup:actpass",
+            "a=mid:0",
+            "a=extmap:1 urn:ietf:params:rtp-hdrext:toffset",
+            "a=extmap:2 http://www.webrtc.org/experiments/rtp-hdrext/abs-send-time",
+            "a=extmap:3 urn:3gpp:video-orientation",
+            "a=extmap:4 http://www.ietf.org/id/draft-holmer-rmcat-transport-wide-cc-extensions-01",
+            "a=extmap:5 http://www.webrtc.org/experiments/rtp-hdrext/playout-delay",
+            "a=extmap:6 http://www.webrtc.org/experiments/rtp-hdrext/video-content-type",
+            "a=extmap:7 http://www.webrtc.org/experiments/rtp-hdrext/video-timing",
+            "a=extmap:8 http://www.webrtc.org/experiments/rtp-hdrext/color-space",
+            "a=extmap:9 urn:ietf:params:rtp-hdrext:sdes:mid",
+            "a=sendrecv",
+            "a=msid:- screen_video_track",
+            "a=rtcp-mux",
+            "a=rtcp-rsize",
+            "a=rtpmap:96 H264/90000",
+            "a=rtcp-fb:96 goog-remb",
+            "a=rtcp-fb:96 transport-cc",
+            "a=rtcp-fb:96 ccm fir",
+            "a=rtcp-fb:96 nack",
+            "a=rtcp-fb:96 nack pli",
+            "a=fmtp:96 level-asymmetry-allowed=1;packetization-mode=1;profile-level-id=42e01f",
+            "a=rtpmap:97 rtx/90000",
+            "a=fmtp:97 apt=96",
+            "a=rtpmap:98 VP8/90000",
+            "a=rtcp-fb:98 goog-remb",
+            "a=rtcp-fb:98 transport-cc",
+            "a=rtcp-fb:98 ccm fir",
+            "a=rtcp-fb:98 nack",
+            "a=rtcp-fb:98 nack pli",
+            "a=rtpmap:99 rtx/90000",
+            "a=fmtp:99 apt=98",
+            "a=rtpmap:100 red/90000",
+            "a=rtpmap:101 rtx/90000",
+            "a=fmtp:101 apt=100",
+            "a=rtpmap:127 ulpfec/90000",
+            "a=ssrc-group:FID 1729395126 2356816735",
+            "a=ssrc:1729395126 cname:vXyKZ5l8cT9Rj1hO",
+            "a=ssrc:1729395126 msid:- screen_video_track",
+            "a=ssrc:2356816735 cname:vXyKZ5l8cT9Rj1hO",
+            "a=ssrc:2356816735 msid:- screen_video_track",
+            "m=application 9 UDP/DTLS/SCTP webrtc-datachannel",
+            "c=IN IP4 0.0.0.0",
+            "a=ice-ufrag:Fx3b",
+            "a=ice-pwd:6vXyWbS9n8k3lNqS3vGLKkTt",
+            "a=ice-options:trickle renomination",
+            "a=fingerprint:sha-256 7B:8B:F0:65:5F:78:E2:51:3B:AC:6F:F3:3F:46:1B:35:DC:B8:5F:64:1A:24:C2:43:F0:A1:58:D0:A1:2C:19:08",
+            "a=setup:actpass",
+            "a=mid:1",
+            "a=sctp-port:5000",
+            "a=max-message-size:262144",
+            "");
+
+    static final String ANSWER = "{\"type\":\"answer\",\"sdp\":\""
+            + OFFER_SDP.replace("a=sendrecv", "a=recvonly").replace("\r\n", "\\r\\n") + "\"}";
+
+    static final String ICE_CANDIDATE = "{\"type\":\"ice_candidate\",\"candidate\":"
+            + "\"candidate:3885250869 1 udp 2122260223 192.168.1.23 50731 typ host generation 0 ufrag Fx3b network-id 1\","
+            + "\"sdpMid\":\"0\",\"sdpMLineIndex\":0}";
+
+    static final String PING = "{\"type\":\"ping\"}";
+
+    // DataChannel control events
+    static final String JSON_MOVE = "{\"type\":\"move\",\"pointerId\":0,\"x\":410.5,\"y\":880.25,"
+            + "\"seq\":1042,\"timestamp\":1640995200016}";
+
+    static final String JSON_TOUCH = "{\"type\":\"touch\",\"action\":2,\"pointerId\":1,\"pointers\":["
+            + "{\"id\":0,\"x\":410.5,\"y\":880.25},{\"id\":1,\"x\":620.0,\"y\":902.75},"
+            + "{\"id\":2,\"x\":300.0,\"y\":1200.5}],\"timestamp\":1640995200016}";
+
+    private SampleMessages() {}
+}
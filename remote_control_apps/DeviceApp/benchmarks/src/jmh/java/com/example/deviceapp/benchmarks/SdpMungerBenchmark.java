@@ -0,0 +1,27 @@
+package com.example.deviceapp.benchmarks;
+
+import com.example.deviceapp.SdpMunger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Offer rewriting from WebRTCManager.createOfferWithVideo. chainedReplace is the previous
+ * two String.replace calls, kept as a baseline.
+ */
+@State(Scope.Thread)
+public class SdpMungerBenchmark {
+    private final String sdp = SampleMessages.OFFER_SDP;
+
+    @Benchmark
+    public String chainedReplace() {
+        return sdp.replace("a=sendrecv", "a=sendonly")
+                .replace("a=fmtp:96", "a=fmtp:96 max-fr=60;max-fs=8160");
+    }
+
+    @Benchmark
+    public String sdpMunger() {
+        return SdpMunger.mungeOffer(sdp);
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.deviceapp.benchmarks;
+
+import com.example.deviceapp.SignalingMessages;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Parsing of WebSocket signaling messages as in WebSocketService.handleMessage, up to the
+ * type switch. gsonFromJson is the previous Gson.fromJson(message, JsonObject.class) path.
+ */
+@State(Scope.Thread)
+public class SignalingParseBenchmark {
+    @Param({"answer", "ice_candidate", "ping"})
+    public String message;
+
+    private final Gson gson = new Gson();
+    private String payload;
+
+    @Setup
+    public void setUp() {
+        switch (message) {
+            case "answer":
+                payload = SampleMessages.ANSWER;
+                break;
+            case "ice_candidate":
+                payload = SampleMessages.ICE_CANDIDATE;
+                break;
+            default:
+                payload = SampleMessages.PING;
+        }
+    }
+
+    @Benchmark
+    public String gsonFromJson() {
+        JsonObject json = gson.fromJson(payload, JsonObject.class);
+        return json.get("type").getAsString();
+    }
+
+    @Benchmark
+    public String signalingMessages() {
+        return SignalingMessages.getType(SignalingMessages.parse(payload));
+    }
+}
@@ -11,6 +11,12 @@ class DeviceDiscoveryService {
   static const int _timeoutSeconds = 8;
   static const String _targetIP = '192.168.10.182';  // 直接指定目标设备IP
   
+  // UDP discovery beacon on the device (DiscoveryBeacon.java)
+  static const int _discoveryPort = 4322;
+  static const String _multicastGroup = '239.255.43.21';
+  static const String _discoveryQuery = 'WRTC_DISCOVER';
+  static const Duration _discoveryWindow = Duration(milliseconds: 800);
+  
   final NetworkInfo _networkInfo = NetworkInfo();
   final StreamController<Device> _deviceController = StreamController<Device>.broadcast();
   
@@ -20,6 +26,13 @@ class DeviceDiscoveryService {
     final List<Device> devices = [];
     
     try {
+      // Ask devices on the LAN to announce themselves; no WebSocket probing needed
+      devices.addAll(await _discoverByBeacon());
+      if (devices.isNotEmpty) {
+        debugPrint('Found ${devices.length} devices via UDP discovery');
+        return devices;
+      }
+      
       // 直接连接到指定的设备IP
       debugPrint('Connecting directly to: $_targetIP:$_defaultPort');
       
@@ -81,6 +94,55 @@ class DeviceDiscoveryService {
     return devices;
   }
   
+  Future<List<Device>> _discoverByBeacon() async {
+    final Map<String, Device> found = {};
+    RawDatagramSocket? socket;
+    try {
+      socket = await RawDatagramSocket.bind(InternetAddress.anyIPv4, 0);
+      socket.broadcastEnabled = true;
+      final RawDatagramSocket querySocket = socket;
+      final done = Completer<void>();
+      querySocket.listen((event) {
+        if (event != RawSocketEvent.read) return;
+        final datagram = querySocket.receive();
+        if (datagram == null) return;
+        try {
+          final json = jsonDecode(utf8.decode(datagram.data));
+          if (json['type'] != 'device_announce') return;
+          final ipAddress = datagram.address.address;
+          final String deviceId = json['device_id'] ?? '';
+          final device = Device(
+            id: deviceId.isNotEmpty ? deviceId : ipAddress,
+            name: json['device_name'] ?? 'Unknown Device',
+            ipAddress: ipAddress,
+            port: json['port'] ?? _defaultPort,
+          );
+          if (!found.containsKey(ipAddress)) {
+            found[ipAddress] = device;
+            _deviceController.add(device);
+            debugPrint('Discovered $device, sessions: ${json['sessions']}');
+          }
+        } catch (e) {
+          debugPrint('Error parsing discovery reply: $e');
+        }
+      }, onDone: () {
+        if (!done.isCompleted) done.complete();
+      });
+      
+      // Multicast first; broadcast reaches devices on networks that filter multicast
+      final query = utf8.encode(_discoveryQuery);
+      querySocket.send(query, InternetAddress(_multicastGroup), _discoveryPort);
+      querySocket.send(query, InternetAddress('255.255.255.255'), _discoveryPort);
+      
+      await done.future.timeout(_discoveryWindow, onTimeout: () {});
+    } catch (e) {
+      debugPrint('UDP discovery failed: $e');
+    } finally {
+      socket?.close();
+    }
+    return found.values.toList();
+  }
+  
   Future<Device?> _scanDevice(String ipAddress, int port) async {
     try {
       // Create WebSocket connection
@@ -80,7 +80,12 @@ class WebRTCService {
     // Handle data channel
     _peerConnection!.onDataChannel = (RTCDataChannel channel) {
       debugPrint('Received data channel: ${channel.label}');
-      _dataChannel = channel;
+      // The device also announces an unreliable 'motion' lane for streamed moves. Clicks,
+      // swipes and long presses must stay on the reliable 'control' lane, so pick by label.
+      if (channel.label == 'control') {
+        _dataChannel = channel;
+        channel.onMessage = (message) => _handleDataChannelMessage(channel, message);
+      }
     };
     
     // Handle connection state changes
@@ -229,6 +234,31 @@ class WebRTCService {
     debugPrint('Added ICE candidate');
   }
   
+  // The device estimates our clock offset with probes; echo each one with our receive and
+  // send times, in the same clock as ControlEvent.timestamp
+  void _handleDataChannelMessage(RTCDataChannel channel, RTCDataChannelMessage message) {
+    final receivedMs = DateTime.now().microsecondsSinceEpoch / 1000.0;
+    if (message.isBinary) return;
+
+    final Map<String, dynamic> json;
+    try {
+      json = jsonDecode(message.text) as Map<String, dynamic>;
+    } catch (e) {
+      debugPrint('Ignoring malformed data channel message: $e');
+      return;
+    }
+    if (json['type'] != 'clock_probe') return;
+
+    final reply = {
+      'type': 'clock_reply',
+      'id': json['id'],
+      't1': json['t1'],
+      't2': receivedMs,
+      't3': DateTime.now().microsecondsSinceEpoch / 1000.0,
+    };
+    channel.send(RTCDataChannelMessage(jsonEncode(reply)));
+  }
+  
   void sendControlEvent(ControlEvent event) {
     if (_dataChannel?.state == RTCDataChannelState.RTCDataChannelOpen) {
       final jsonString = jsonEncode(event.toJson());